@@ -0,0 +1,62 @@
+package pers.yzx.geometry;
+
+import pers.yzx.matrix.Bound;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MultiPolygon {
+    private final List<Polygon> polygons;
+
+    public MultiPolygon(List<Polygon> polygons) {
+        this.polygons = polygons;
+    }
+
+    public List<Polygon> getPolygons() {
+        return polygons;
+    }
+
+    /**
+     * Returns the rings of every part, each outer ring followed by its holes.
+     */
+    public List<List<Point>> getRings() {
+        List<List<Point>> rings = new ArrayList<>();
+        for (Polygon polygon : polygons) {
+            rings.addAll(polygon.getRings());
+        }
+        return rings;
+    }
+
+    public Bound getBound(int resolution) {
+        double top = -Double.MAX_VALUE;
+        double left = Double.MAX_VALUE;
+        double bottom = Double.MAX_VALUE;
+        double right = -Double.MAX_VALUE;
+
+        for (Polygon polygon : polygons) {
+            for (Point point : polygon.getPoints()) {
+                top = Math.max(top, point.getY());
+                left = Math.min(left, point.getX());
+                bottom = Math.min(bottom, point.getY());
+                right = Math.max(right, point.getX());
+            }
+        }
+
+        return Bound.adjustBound(left, top, right, bottom, resolution);
+    }
+
+    /**
+     * test point is inside any part, outside its holes
+     *
+     * @param point 被测试点
+     * @return true if point in one of the polygons
+     */
+    public boolean isInside(Point point) {
+        for (Polygon polygon : polygons) {
+            if (polygon.isInside(point)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,19 +2,49 @@ package pers.yzx.geometry;
 
 import pers.yzx.matrix.Bound;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Polygon {
     private final List<Point> points;
+    private final List<List<Point>> holes;
 
     public Polygon(List<Point> points) {
         this.points = points;
+        this.holes = Collections.emptyList();
     }
 
+    /**
+     * @param points the outer ring
+     * @param holes  the inner rings, cut out of the outer one
+     */
+    public Polygon(List<Point> points, List<List<Point>> holes) {
+        this.points = points;
+        this.holes = holes;
+    }
+
+    /**
+     * Returns the outer ring.
+     */
     public List<Point> getPoints() {
         return points;
     }
 
+    public List<List<Point>> getHoles() {
+        return holes;
+    }
+
+    /**
+     * Returns the outer ring followed by the holes.
+     */
+    public List<List<Point>> getRings() {
+        List<List<Point>> rings = new ArrayList<>(holes.size() + 1);
+        rings.add(points);
+        rings.addAll(holes);
+        return rings;
+    }
+
     public Bound getBound(int resolution) {
         double top = -Double.MAX_VALUE;
         double left = Double.MAX_VALUE;
@@ -39,6 +69,14 @@ public class Polygon {
      * @return true if point in polygon
      */
     public boolean isInside(Point point) {
+        int crossTime = crossTime(points, point);
+        for (List<Point> hole : holes) {
+            crossTime += crossTime(hole, point);
+        }
+        return crossTime % 2 == 1;
+    }
+
+    private static int crossTime(List<Point> points, Point point) {
         int crossTime = 0;
         int pointSize = points.size();
         for (int i = 0; i < pointSize; i++) {
@@ -58,6 +96,6 @@ public class Polygon {
                 ++crossTime;
             }
         }
-        return crossTime % 2 == 1;
+        return crossTime;
     }
 }
@@ -0,0 +1,239 @@
+package pers.yzx.geometry;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A polygon indexed once for many point-in-polygon queries.
+ * <p>
+ * A query is first rejected against the bounding box, then, when the polygon was prepared with a
+ * raster, answered from the cell of the box holding the point unless an edge passes through that cell.
+ * Otherwise the crossings are counted over the edges of the horizontal slab holding the point only. An
+ * edge is crossed by the points whose y lies in {@code [yMin, yMax)}, so that unlike
+ * {@link Polygon#isInside(Point)} a ray through a vertex is counted right; the holes of the polygon are
+ * cut out by the even-odd rule. Points on the boundary may be found on either side.
+ */
+public class PreparedPolygon {
+    private static final byte OUTSIDE = 0;
+    private static final byte INSIDE = 1;
+    private static final byte BOUNDARY = 2;
+    private static final int MAX_SLAB_COUNT = 1 << 16;
+    private static final int BATCH_BLOCK_SIZE = 1 << 12;
+
+    private final Polygon polygon;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    // non-horizontal edges of every ring
+    private final double[] x1s;
+    private final double[] y1s;
+    private final double[] x2s;
+    private final double[] y2s;
+    // the edges of slab s are slabEdges[slabStarts[s], slabStarts[s + 1])
+    private final int slabCount;
+    private final double slabScale;
+    private final int[] slabStarts;
+    private final int[] slabEdges;
+    // OUTSIDE, INSIDE or BOUNDARY for each cell of a rasterSize x rasterSize grid over the box, or null
+    private final int rasterSize;
+    private final double rasterScaleX;
+    private final double rasterScaleY;
+    private final byte[] raster;
+
+    public PreparedPolygon(Polygon polygon) {
+        this(polygon, 0);
+    }
+
+    /**
+     * @param polygon    the polygon to prepare
+     * @param rasterSize the number of rows and columns of the raster classifying the cells of the
+     *                   bounding box, or 0 for no raster
+     */
+    public PreparedPolygon(Polygon polygon, int rasterSize) {
+        if (rasterSize < 0)
+            throw new IllegalArgumentException("Illegal raster size: " + rasterSize);
+        this.polygon = polygon;
+        List<List<Point>> rings = polygon.getRings();
+        double left = Double.POSITIVE_INFINITY;
+        double bottom = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+        double top = Double.NEGATIVE_INFINITY;
+        int edgeCount = 0;
+        for (List<Point> ring : rings) {
+            for (int i = 0; i < ring.size(); i++) {
+                Point point = ring.get(i);
+                left = Math.min(left, point.getX());
+                right = Math.max(right, point.getX());
+                bottom = Math.min(bottom, point.getY());
+                top = Math.max(top, point.getY());
+                if (point.getY() != ring.get((i + 1) % ring.size()).getY()) {
+                    edgeCount++;
+                }
+            }
+        }
+        this.minX = left;
+        this.minY = bottom;
+        this.maxX = right;
+        this.maxY = top;
+        this.x1s = new double[edgeCount];
+        this.y1s = new double[edgeCount];
+        this.x2s = new double[edgeCount];
+        this.y2s = new double[edgeCount];
+        int e = 0;
+        for (List<Point> ring : rings) {
+            for (int i = 0; i < ring.size(); i++) {
+                Point p = ring.get(i);
+                Point q = ring.get((i + 1) % ring.size());
+                if (p.getY() != q.getY()) {
+                    x1s[e] = p.getX();
+                    y1s[e] = p.getY();
+                    x2s[e] = q.getX();
+                    y2s[e] = q.getY();
+                    e++;
+                }
+            }
+        }
+
+        this.slabCount = Math.max(1, Math.min(edgeCount, MAX_SLAB_COUNT));
+        this.slabScale = maxY > minY ? slabCount / (maxY - minY) : 0;
+        this.slabStarts = new int[slabCount + 1];
+        for (e = 0; e < edgeCount; e++) {
+            for (int s = slab(Math.min(y1s[e], y2s[e])), last = slab(Math.max(y1s[e], y2s[e])); s <= last; s++) {
+                slabStarts[s + 1]++;
+            }
+        }
+        for (int s = 0; s < slabCount; s++) {
+            slabStarts[s + 1] += slabStarts[s];
+        }
+        this.slabEdges = new int[slabStarts[slabCount]];
+        int[] positions = slabStarts.clone();
+        for (e = 0; e < edgeCount; e++) {
+            for (int s = slab(Math.min(y1s[e], y2s[e])), last = slab(Math.max(y1s[e], y2s[e])); s <= last; s++) {
+                slabEdges[positions[s]++] = e;
+            }
+        }
+
+        this.rasterSize = rasterSize;
+        this.rasterScaleX = maxX > minX ? rasterSize / (maxX - minX) : 0;
+        this.rasterScaleY = maxY > minY ? rasterSize / (maxY - minY) : 0;
+        this.raster = rasterScaleX == 0 || rasterScaleY == 0 || edgeCount == 0 ? null : classify();
+    }
+
+    private int slab(double y) {
+        return Math.max(0, Math.min(slabCount - 1, (int) ((y - minY) * slabScale)));
+    }
+
+    private int rasterColumn(double x) {
+        return Math.max(0, Math.min(rasterSize - 1, (int) ((x - minX) * rasterScaleX)));
+    }
+
+    private int rasterRow(double y) {
+        return Math.max(0, Math.min(rasterSize - 1, (int) ((y - minY) * rasterScaleY)));
+    }
+
+    /**
+     * Marks the cells an edge passes through, widened by half a row and a column against rounding, then
+     * classifies the other cells by their centre: no edge passing through them, all their points share
+     * its side. The horizontal edges, left out of the crossings, still divide the cells they pass through.
+     */
+    private byte[] classify() {
+        byte[] cells = new byte[rasterSize * rasterSize];
+        for (int e = 0; e < x1s.length; e++) {
+            double yLow = Math.min(y1s[e], y2s[e]);
+            double yHigh = Math.max(y1s[e], y2s[e]);
+            double inverseSlope = (x2s[e] - x1s[e]) / (y2s[e] - y1s[e]);
+            for (int row = rasterRow(yLow), lastRow = rasterRow(yHigh); row <= lastRow; row++) {
+                // the x range of the edge within the row
+                double rowLow = Math.max(yLow, minY + (row - 0.5) / rasterScaleY);
+                double rowHigh = Math.min(yHigh, minY + (row + 1.5) / rasterScaleY);
+                double xa = x1s[e] + (rowLow - y1s[e]) * inverseSlope;
+                double xb = x1s[e] + (rowHigh - y1s[e]) * inverseSlope;
+                markBoundary(cells, row, Math.min(xa, xb), Math.max(xa, xb));
+            }
+        }
+        for (List<Point> ring : polygon.getRings()) {
+            for (int i = 0; i < ring.size(); i++) {
+                Point p = ring.get(i);
+                Point q = ring.get((i + 1) % ring.size());
+                if (p.getY() == q.getY()) {
+                    double y = p.getY();
+                    for (int row = rasterRow(y - 0.5 / rasterScaleY), lastRow = rasterRow(y + 0.5 / rasterScaleY);
+                         row <= lastRow; row++) {
+                        markBoundary(cells, row, Math.min(p.getX(), q.getX()), Math.max(p.getX(), q.getX()));
+                    }
+                }
+            }
+        }
+        IntStream.range(0, rasterSize).parallel().forEach(row -> {
+            double y = minY + (row + 0.5) / rasterScaleY;
+            for (int column = 0; column < rasterSize; column++) {
+                int cell = row * rasterSize + column;
+                if (cells[cell] != BOUNDARY) {
+                    cells[cell] = crosses(minX + (column + 0.5) / rasterScaleX, y) ? INSIDE : OUTSIDE;
+                }
+            }
+        });
+        return cells;
+    }
+
+    private void markBoundary(byte[] cells, int row, double xLow, double xHigh) {
+        int from = Math.max(0, rasterColumn(xLow) - 1);
+        int to = Math.min(rasterSize - 1, rasterColumn(xHigh) + 1);
+        for (int column = from; column <= to; column++) {
+            cells[row * rasterSize + column] = BOUNDARY;
+        }
+    }
+
+    public Polygon getPolygon() {
+        return polygon;
+    }
+
+    public boolean contains(Point point) {
+        return contains(point.getX(), point.getY());
+    }
+
+    public boolean contains(double x, double y) {
+        if (!(x >= minX && x <= maxX && y >= minY && y <= maxY)) {
+            return false;
+        }
+        if (raster != null) {
+            byte cell = raster[rasterRow(y) * rasterSize + rasterColumn(x)];
+            if (cell != BOUNDARY) {
+                return cell == INSIDE;
+            }
+        }
+        return crosses(x, y);
+    }
+
+    /**
+     * Tests the points {@code (xs[i], ys[i])} into {@code out[i]}, by blocks on the fork/join pool.
+     */
+    public void contains(double[] xs, double[] ys, boolean[] out) {
+        if (xs.length != ys.length || xs.length != out.length)
+            throw new IllegalArgumentException("Lengths differ: " + xs.length + ", " + ys.length + ", " + out.length);
+        int blockCount = (xs.length + BATCH_BLOCK_SIZE - 1) / BATCH_BLOCK_SIZE;
+        IntStream.range(0, blockCount).parallel().forEach(b -> {
+            for (int i = b * BATCH_BLOCK_SIZE, end = Math.min(i + BATCH_BLOCK_SIZE, xs.length); i < end; i++) {
+                out[i] = contains(xs[i], ys[i]);
+            }
+        });
+    }
+
+    /**
+     * Counts the edges of the slab of the point crossed by a ray leaving it towards increasing x.
+     */
+    private boolean crosses(double x, double y) {
+        boolean inside = false;
+        int s = slab(y);
+        for (int k = slabStarts[s], end = slabStarts[s + 1]; k < end; k++) {
+            int e = slabEdges[k];
+            double y1 = y1s[e];
+            double y2 = y2s[e];
+            if ((y1 <= y) != (y2 <= y) && x < x1s[e] + (y - y1) * (x2s[e] - x1s[e]) / (y2 - y1)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -1,16 +1,22 @@
 package pers.yzx.matrix;
 
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import pers.yzx.geometry.Point;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 public abstract class AbstractMatrix<E> implements Matrix<E> {
     public static final int INVALID_FLAT_INDEX = -1;
     protected static final int DEFAULT_FLOOR_INDEX = 0;
     private static final double floorInterval = 3;
-    private static final int maxFloor = 10;
     int floorCount;
     Bound bound;
 
@@ -84,13 +90,13 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
     }
 
     protected void rangeCheck(int floorIndex, int rowIndex, int columnIndex) {
-        if (floorIndex > maxFloor || rowIndex >= bound.getRowCount() || columnIndex >= bound.getColumnCount() ||
+        if (floorIndex >= floorCount || rowIndex >= bound.getRowCount() || columnIndex >= bound.getColumnCount() ||
                 floorIndex < 0 || rowIndex < 0 || columnIndex < 0)
             throw new IndexOutOfBoundsException(outOfBoundsMsg(rowIndex, columnIndex));
     }
 
     void rangeCheck(int flatIndex) {
-        if (flatIndex < 0 || flatIndex > getCount()) {
+        if (flatIndex < 0 || flatIndex >= getCount()) {
             throw new IndexOutOfBoundsException(outOfBoundsMsg(flatIndex));
         }
     }
@@ -180,8 +186,8 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
     public Index getIndex(Matrix<?> matrix, Index matrixIndex) {
         double x = matrix.getTopLeftX() + matrixIndex.getColumnIndex() * matrix.getResolution();
         double y = matrix.getTopLeftY() - matrixIndex.getRowIndex() * matrix.getResolution();
-        int rowIndex = (int) ((x - bound.getTopLeftX()) / bound.getResolution());
-        int columnIndex = (int) ((bound.getTopLeftY() - y) / bound.getResolution());
+        int rowIndex = (int) Math.floor((bound.getTopLeftY() - y) / bound.getResolution());
+        int columnIndex = (int) Math.floor((x - bound.getTopLeftX()) / bound.getResolution());
         if (rowIndex < 0 || rowIndex >= bound.getRowCount() || columnIndex < 0 || columnIndex >= bound.getColumnCount()) {
             return null;
         }
@@ -212,6 +218,150 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
         return bound;
     }
 
+    @Override
+    public Matrix<E> getFloorMatrix(int floorIndex) {
+        if (floorIndex < 0 || floorIndex >= floorCount)
+            throw new IndexOutOfBoundsException("Floor index: " + floorIndex + ", floor size: " + floorCount);
+        return view(floorIndex, 1, 0, 0, bound);
+    }
+
+    @Override
+    public Matrix<E> view(Bound window) {
+        Bound clipped = bound.intersect(window);
+        if (clipped == null) {
+            return null;
+        }
+        int resolution = bound.getResolution();
+        int rowIndex = (int) Math.floor((bound.getTopLeftY() - clipped.getTopLeftY()) / resolution + 1e-9);
+        int columnIndex = (int) Math.floor((clipped.getTopLeftX() - bound.getTopLeftX()) / resolution + 1e-9);
+        int rowEnd = Math.min(bound.getRowCount(),
+                (int) Math.ceil((bound.getTopLeftY() - clipped.getBottomRightY()) / resolution - 1e-9));
+        int columnEnd = Math.min(bound.getColumnCount(),
+                (int) Math.ceil((clipped.getBottomRightX() - bound.getTopLeftX()) / resolution - 1e-9));
+        Bound viewBound = new Bound(bound.getTopLeftX() + columnIndex * resolution,
+                bound.getTopLeftY() - rowIndex * resolution, rowEnd - rowIndex, columnEnd - columnIndex, resolution);
+        return view(0, floorCount, rowIndex, columnIndex, viewBound);
+    }
+
+    /**
+     * Returns a view of the given floors, whose top left cell is the cell {@code (rowIndex, columnIndex)}
+     * of this matrix.
+     */
+    Matrix<E> view(int floorIndex, int floorCount, int rowIndex, int columnIndex, Bound viewBound) {
+        return new MatrixView<>(this, floorIndex, floorCount, rowIndex, columnIndex, viewBound);
+    }
+
+    /**
+     * Returns whether {@link #set(int, Object)} may be called concurrently for distinct cells, which lets
+     * the bulk operations write into this matrix from several threads.
+     */
+    boolean isParallelWritable() {
+        return false;
+    }
+
+    void checkShape(Matrix<?> matrix) {
+        if (matrix.getFloorCount() != getFloorCount() || matrix.getRowCount() != getRowCount() ||
+                matrix.getColumnCount() != getColumnCount()) {
+            throw new IllegalArgumentException("Shape mismatch: " + matrix.getFloorCount() + "x" +
+                    matrix.getRowCount() + "x" + matrix.getColumnCount() + ", expected " + getFloorCount() +
+                    "x" + getRowCount() + "x" + getColumnCount());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation sets the cells one by one in the calling thread.
+     */
+    @Override
+    public void fill(E element) {
+        for (int i = 0, count = getCount(); i < count; i++) {
+            set(i, element);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation replaces the cells one by one in the calling thread.
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        for (int i = 0, count = getCount(); i < count; i++) {
+            E e = get(i);
+            if (e != null) {
+                set(i, operator.apply(e));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation runs on the fork/join pool, by blocks of rows, when the target accepts
+     * concurrent writes, and in the calling thread otherwise.
+     */
+    @Override
+    public <R> void mapInto(Matrix<R> target, Function<? super E, ? extends R> function) {
+        Objects.requireNonNull(function);
+        checkShape(target);
+        if (target instanceof AbstractMatrix && ((AbstractMatrix<?>) target).isParallelWritable()) {
+            MatrixTasks.forEachBlock(this, (fromIndex, toIndex) -> mapInto(target, function, fromIndex, toIndex));
+        } else {
+            mapInto(target, function, 0, getCount());
+        }
+    }
+
+    private <R> void mapInto(Matrix<R> target, Function<? super E, ? extends R> function, int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            E e = get(i);
+            if (e != null) {
+                target.set(i, function.apply(e));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation reads the cells through {@link #get(int)} on the fork/join pool, by blocks of
+     * rows.
+     */
+    @Override
+    public <R> R reduce(R identity, BiFunction<R, ? super E, R> accumulator, BinaryOperator<R> combiner) {
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        return MatrixTasks.reduceBlocks(this, identity, (fromIndex, toIndex) -> {
+            R result = identity;
+            for (int i = fromIndex; i < toIndex; i++) {
+                E e = get(i);
+                if (e != null) {
+                    result = accumulator.apply(result, e);
+                }
+            }
+            return result;
+        }, combiner);
+    }
+
+    @Override
+    public void forEachCell(CellConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int rowCount = bound.getRowCount();
+        int columnCount = bound.getColumnCount();
+        int flatIndex = 0;
+        for (int f = 0; f < floorCount; f++) {
+            for (int i = 0; i < rowCount; i++) {
+                for (int j = 0; j < columnCount; j++) {
+                    E e = get(flatIndex++);
+                    if (e != null) {
+                        action.accept(f, i, j, e);
+                    }
+                }
+            }
+        }
+    }
+
     @Override
     public Spliterator<Cursor<Index, E>> spliterator() {
         return new MatrixSpliterator(this, 0, -1);
@@ -347,8 +497,8 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
         }
     }
 
-    class KeyIterator implements Iterator<Integer> {
-        private final Iterator<Index> indexItr = new IndexItr();
+    class KeyIterator implements IntIterator {
+        private final IndexItr indexItr = new IndexItr();
 
         @Override
         public boolean hasNext() {
@@ -356,8 +506,8 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
         }
 
         @Override
-        public Integer next() {
-            return getFlatIndex(indexItr.next());
+        public int nextInt() {
+            return indexItr.nextFlatIndex();
         }
 
         @Override
@@ -366,10 +516,20 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
         }
     }
 
+    /**
+     * Spliterator over the flat index range of a matrix.
+     * <p>
+     * Splits fall on floor boundaries while the range spans several floors and on row boundaries
+     * otherwise, so each part reads whole rows of the storage. When no cell of the matrix is
+     * {@code null} (its effective count equals its count when the spliterator is bound) every index of
+     * the range yields an element, and the spliterator reports {@link Spliterator#SIZED} and
+     * {@link Spliterator#SUBSIZED}.
+     */
     class MatrixSpliterator implements Spliterator<Cursor<Index, E>> {
         private final Matrix<E> matrix;
         private int index; // current index, modified on advance/split
         private int fence; // -1 until used; then one past last index
+        private boolean dense; // whether every cell holds an element, bound with the fence
 
         MatrixSpliterator(Matrix<E> matrix, int original, int fence) {
             this.matrix = matrix;
@@ -377,14 +537,20 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
             this.fence = fence;
         }
 
+        private MatrixSpliterator(Matrix<E> matrix, int original, int fence, boolean dense) {
+            this(matrix, original, fence);
+            this.dense = dense;
+        }
+
         private int getFence() { // initialize fence to size on first use
-            int hi; // (a specialized variant appears in method forEach)
+            int hi;
             Matrix<E> lst;
             if ((hi = fence) < 0) {
                 if ((lst = matrix) == null)
                     hi = fence = 0;
                 else {
                     hi = fence = lst.getCount();
+                    dense = lst.getEffectiveCount() == hi;
                 }
             }
             return hi;
@@ -392,8 +558,20 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
 
         public Spliterator<Cursor<Index, E>> trySplit() {
             int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid) ? null : // divide range in half unless too small
-                    new MatrixSpliterator(matrix, lo, index = mid);
+            if (lo >= mid) {
+                return null; // too small to divide
+            }
+            int floorSize = bound.getCount();
+            int alignedMid;
+            if (hi - lo > floorSize) {
+                alignedMid = mid - mid % floorSize;
+            } else {
+                alignedMid = mid - mid % bound.getColumnCount();
+            }
+            if (alignedMid > lo) {
+                mid = alignedMid;
+            }
+            return new MatrixSpliterator(matrix, lo, index = mid, dense);
         }
 
         @Override
@@ -405,8 +583,7 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
                 index = i + 1;
                 E e = matrix.get(i);
                 if (e != null) {
-                    Index index = getIndex(i);
-                    action.accept(new SimpleCursor<>(index, e));
+                    action.accept(new SimpleCursor<>(getIndex(i), e));
                     return true;
                 }
                 i += 1;
@@ -414,85 +591,90 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
             return false;
         }
 
+        @Override
+        public void forEachRemaining(Consumer<? super Cursor<Index, E>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            index = hi;
+            if (i >= hi) {
+                return;
+            }
+            int floorSize = bound.getCount();
+            int columnCount = bound.getColumnCount();
+            int floorIndex = i / floorSize;
+            int rowIndex = i % floorSize / columnCount;
+            int columnIndex = i % columnCount;
+            Matrix<E> m = matrix;
+            for (; i < hi; i++) {
+                E e = m.get(i);
+                if (e != null) {
+                    action.accept(new SimpleCursor<>(new Index(floorIndex, rowIndex, columnIndex), e));
+                }
+                if (++columnIndex == columnCount) {
+                    columnIndex = 0;
+                    if (++rowIndex == bound.getRowCount()) {
+                        rowIndex = 0;
+                        floorIndex++;
+                    }
+                }
+            }
+        }
 
         public long estimateSize() {
             return getFence() - index;
         }
 
         public int characteristics() {
-            return Spliterator.ORDERED | Spliterator.DISTINCT;
+            getFence();
+            return dense ? Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL |
+                    Spliterator.SIZED | Spliterator.SUBSIZED :
+                    Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
         }
     }
 
+    /**
+     * Walks the flat indices in storage order and skips the {@code null} cells, so matrices with a
+     * direct {@link #get(int)} are scanned without any intermediate {@link Index}.
+     */
     class IndexItr implements Iterator<Index> {
-        int floorCursor = 0;
-        int lastFloorRet = -1;
-        int lastRowRet = -1;
-        int lastColumnRet = -1;
-        private int rowCursor = 0;
-        private int columnCursor = 0;
+        int cursor = 0;       // flat index of next cell to inspect
+        int lastRet = -1;     // flat index of last cell returned; -1 if no such
 
         @Override
         public boolean hasNext() {
-            for (; floorCursor < floorCount; floorCursor++) {
-                for (; rowCursor < bound.getRowCount(); rowCursor++) {
-                    for (; columnCursor < bound.getColumnCount(); columnCursor++) {
-                        if (null != get(floorCursor, rowCursor, columnCursor)) {
-                            return true;
-                        }
-                    }
-                    columnCursor = 0;
-                }
-                rowCursor = 0;
+            int count = getCount();
+            while (cursor < count && null == get(cursor)) {
+                cursor++;
             }
-            return false;
+            return cursor < count;
+        }
+
+        int nextFlatIndex() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastRet = cursor++;
+            return lastRet;
         }
 
         @Override
         public Index next() {
-            Object o;
-            int floorIndex;
-            int rowIndex;
-            int columnIndex;
-            do {
-                floorIndex = floorCursor;
-                rowIndex = rowCursor;
-                columnIndex = columnCursor;
-
-                o = get(floorIndex, rowIndex, columnIndex);
-                if (columnCursor == bound.getColumnCount() - 1) {
-                    if (rowCursor == bound.getRowCount() - 1) {
-                        floorCursor++;
-                        rowCursor = 0;
-                    } else {
-                        rowCursor++;
-                    }
-                    columnCursor = 0;
-                } else {
-                    columnCursor++;
-                }
-            } while (null == o);
-
-            lastFloorRet = floorIndex;
-            lastRowRet = rowIndex;
-            lastColumnRet = columnIndex;
-            return new Index(floorIndex, rowIndex, columnIndex);
+            return getIndex(nextFlatIndex());
         }
 
         @Override
         public void remove() {
-            if (lastFloorRet < 0 || lastRowRet < 0 || lastColumnRet < 0) {
+            if (lastRet < 0) {
                 throw new IllegalStateException();
             }
-            set(lastFloorRet, lastRowRet, lastColumnRet, null);
-            lastFloorRet = -1;
-            lastRowRet = -1;
-            lastColumnRet = -1;
+            set(lastRet, null);
+            lastRet = -1;
         }
     }
 
     class MatrixIterator implements Iterator<Matrix.Cursor<Index, E>> {
-        private final Iterator<Index> indexItr = new IndexItr();
+        private final IndexItr indexItr = new IndexItr();
 
         @Override
         public boolean hasNext() {
@@ -501,8 +683,8 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
 
         @Override
         public Cursor<Index, E> next() {
-            Index index = indexItr.next();
-            return new SimpleCursor<>(index, get(index));
+            int flatIndex = indexItr.nextFlatIndex();
+            return new SimpleCursor<>(getIndex(flatIndex), get(flatIndex));
         }
 
         @Override
@@ -511,4 +693,3 @@ public abstract class AbstractMatrix<E> implements Matrix<E> {
         }
     }
 }
-
@@ -0,0 +1,163 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * Base class of the matrices that keep their cells in a primitive array instead of boxed elements.
+ * <p>
+ * Cells are laid out floor by floor in row-major order, so the position of a cell in the backing
+ * storage is exactly its flat index. Every cell holds a value (zero until it is written), hence, like
+ * {@link BitMatrix}, {@link #get(int, int, int)} never returns {@code null} and the effective count
+ * equals the count. Setting a {@code null} element resets the cell to zero.
+ *
+ * @param <E> the boxed type of the cells
+ */
+public abstract class AbstractPrimitiveMatrix<E extends Number> extends AbstractMatrix<E> {
+
+    AbstractPrimitiveMatrix(Bound bound, int floorCount) {
+        super(bound, floorCount);
+    }
+
+    /**
+     * Returns the primitive type of the cells.
+     *
+     * @return the cell type
+     */
+    public abstract CellType getCellType();
+
+    /**
+     * Returns the cell at the flat index widened (or narrowed) to a {@code double}.
+     *
+     * @param flatIndex flat index of the cell
+     * @return the cell value as a {@code double}
+     */
+    public abstract double getDouble(int flatIndex);
+
+    /**
+     * Stores a {@code double} into the cell at the flat index, applying the primitive conversion
+     * of the cell type.
+     *
+     * @param flatIndex flat index of the cell
+     * @param value     the new value
+     */
+    public abstract void setDouble(int flatIndex, double value);
+
+    public double getDouble(int rowIndex, int columnIndex) {
+        return getDouble(DEFAULT_FLOOR_INDEX, rowIndex, columnIndex);
+    }
+
+    public double getDouble(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return getDouble(getFlatIndex(floorIndex, rowIndex, columnIndex));
+    }
+
+    public void setDouble(int rowIndex, int columnIndex, double value) {
+        setDouble(DEFAULT_FLOOR_INDEX, rowIndex, columnIndex, value);
+    }
+
+    public void setDouble(int floorIndex, int rowIndex, int columnIndex, double value) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        setDouble(getFlatIndex(floorIndex, rowIndex, columnIndex), value);
+    }
+
+    @Override
+    public E get(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return get(getFlatIndex(floorIndex, rowIndex, columnIndex));
+    }
+
+    @Override
+    public void set(int floorIndex, int rowIndex, int columnIndex, E element) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        set(getFlatIndex(floorIndex, rowIndex, columnIndex), element);
+    }
+
+    /**
+     * Performs the given action on every cell, in flat index order, without boxing the values.
+     *
+     * @param action the action to be performed for each cell
+     */
+    public void forEachDouble(DoubleCellConsumer action) {
+        Objects.requireNonNull(action);
+        int rowCount = bound.getRowCount();
+        int columnCount = bound.getColumnCount();
+        int flatIndex = 0;
+        for (int f = 0; f < floorCount; f++) {
+            for (int i = 0; i < rowCount; i++) {
+                for (int j = 0; j < columnCount; j++) {
+                    action.accept(f, i, j, getDouble(flatIndex++));
+                }
+            }
+        }
+    }
+
+    @Override
+    boolean isParallelWritable() {
+        return true;
+    }
+
+    @Override
+    public void fill(E element) {
+        double value = element == null ? 0 : element.doubleValue();
+        MatrixTasks.forEachBlock(this, (fromIndex, toIndex) -> {
+            for (int i = fromIndex; i < toIndex; i++) {
+                setDouble(i, value);
+            }
+        });
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        MatrixTasks.forEachBlock(this, (fromIndex, toIndex) -> {
+            for (int i = fromIndex; i < toIndex; i++) {
+                set(i, operator.apply(get(i)));
+            }
+        });
+    }
+
+    /**
+     * Replaces every cell with the result of applying the operator to its value, without boxing. The
+     * cells are processed on the fork/join pool, by blocks of rows.
+     *
+     * @param operator the operator to apply to each cell
+     */
+    public void replaceAllDouble(DoubleUnaryOperator operator) {
+        Objects.requireNonNull(operator);
+        MatrixTasks.forEachBlock(this, (fromIndex, toIndex) -> {
+            for (int i = fromIndex; i < toIndex; i++) {
+                setDouble(i, operator.applyAsDouble(getDouble(i)));
+            }
+        });
+    }
+
+    @Override
+    public int getEffectiveCount() {
+        return getCount();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getCount() == 0;
+    }
+
+    @Override
+    public Iterator<Cursor<Index, E>> iterator() {
+        return new MatrixIterator();
+    }
+
+    @Override
+    public Iterator<Index> indexIterator() {
+        return new IndexItr();
+    }
+
+    @Override
+    public IntIterator keyIterator() {
+        return new KeyIterator();
+    }
+}
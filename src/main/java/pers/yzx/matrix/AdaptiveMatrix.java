@@ -0,0 +1,530 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * A matrix that stores each floor either as a hash table, like {@link SparseMatrix}, or as a flat array,
+ * like {@link ArrayMatrix}, and migrates the floor when its density crosses a threshold.
+ * <p>
+ * A sparse floor turns dense once more than {@code denseThreshold} of its cells are non-null, and a
+ * dense floor turns sparse once fewer than {@code sparseThreshold} are. The gap between the two
+ * thresholds keeps a floor from migrating back and forth around a single density, so the cost of a
+ * migration is spread over at least {@code (denseThreshold - sparseThreshold) * floor size} writes.
+ *
+ * @param <E> the type of the elements
+ */
+public class AdaptiveMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
+    public static final double DEFAULT_SPARSE_THRESHOLD = 0.125;
+    public static final double DEFAULT_DENSE_THRESHOLD = 0.25;
+    private final double sparseThreshold;
+    private final double denseThreshold;
+    /**
+     * The storage of each floor, exactly one of the dense array and the sparse table being non-null.
+     */
+    private final Object[][] denseData;
+    private final SparseMatrix.MyInt2ObjectOpenHashMap<E>[] sparseData;
+    private final int[] floorEffectiveCount;
+    private int sparseLimit;
+    private int denseLimit;
+    private int effectiveCount;
+
+    public AdaptiveMatrix(Bound bound) {
+        this(bound, 1, DEFAULT_SPARSE_THRESHOLD, DEFAULT_DENSE_THRESHOLD);
+    }
+
+    public AdaptiveMatrix(Bound bound, int floorCount) {
+        this(bound, floorCount, DEFAULT_SPARSE_THRESHOLD, DEFAULT_DENSE_THRESHOLD);
+    }
+
+    /**
+     * @param bound           bound of the matrix
+     * @param floorCount      floor count of the matrix
+     * @param sparseThreshold density under which a dense floor turns sparse
+     * @param denseThreshold  density over which a sparse floor turns dense, greater than
+     *                        {@code sparseThreshold}
+     */
+    @SuppressWarnings("unchecked")
+    public AdaptiveMatrix(Bound bound, int floorCount, double sparseThreshold, double denseThreshold) {
+        super(bound, floorCount);
+        if (!(sparseThreshold >= 0 && sparseThreshold < denseThreshold && denseThreshold <= 1))
+            throw new IllegalArgumentException("Illegal thresholds: " + sparseThreshold + ", " + denseThreshold);
+        this.sparseThreshold = sparseThreshold;
+        this.denseThreshold = denseThreshold;
+        this.denseData = new Object[floorCount][];
+        this.sparseData = new SparseMatrix.MyInt2ObjectOpenHashMap[floorCount];
+        this.floorEffectiveCount = new int[floorCount];
+        for (int f = 0; f < floorCount; f++) {
+            sparseData[f] = new SparseMatrix.MyInt2ObjectOpenHashMap<>();
+        }
+        updateLimits();
+    }
+
+    private void updateLimits() {
+        int floorSize = bound.getCount();
+        this.sparseLimit = (int) (floorSize * sparseThreshold);
+        this.denseLimit = (int) (floorSize * denseThreshold);
+    }
+
+    /**
+     * Returns whether a floor is currently stored as a flat array.
+     */
+    public boolean isDense(int floorIndex) {
+        return denseData[floorIndex] != null;
+    }
+
+    @Override
+    public int getEffectiveCount() {
+        return effectiveCount;
+    }
+
+    @Override
+    public E get(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return elementData(floorIndex, rowIndex * bound.getColumnCount() + columnIndex);
+    }
+
+    @Override
+    public E get(int flatIndex) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        return elementData(flatIndex / floorSize, flatIndex % floorSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementData(int floorIndex, int floorFlatIndex) {
+        Object[] floorData = denseData[floorIndex];
+        return floorData != null ? (E) floorData[floorFlatIndex] : sparseData[floorIndex].get(floorFlatIndex);
+    }
+
+    @Override
+    public void set(int floorIndex, int rowIndex, int columnIndex, E element) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        elementData(floorIndex, rowIndex * bound.getColumnCount() + columnIndex, element);
+    }
+
+    @Override
+    public void set(int flatIndex, E element) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        elementData(flatIndex / floorSize, flatIndex % floorSize, element);
+    }
+
+    private void elementData(int floorIndex, int floorFlatIndex, E element) {
+        Object[] floorData = denseData[floorIndex];
+        Object old;
+        if (floorData != null) {
+            old = floorData[floorFlatIndex];
+            floorData[floorFlatIndex] = element;
+        } else if (element == null) {
+            old = sparseData[floorIndex].remove(floorFlatIndex);
+        } else {
+            old = sparseData[floorIndex].put(floorFlatIndex, element);
+        }
+        if (old == null) {
+            if (element != null) {
+                effectiveCount++;
+                if (++floorEffectiveCount[floorIndex] > denseLimit && floorData == null) {
+                    toDense(floorIndex);
+                }
+            }
+        } else if (element == null) {
+            effectiveCount--;
+            if (--floorEffectiveCount[floorIndex] < sparseLimit && floorData != null) {
+                toSparse(floorIndex);
+            }
+        }
+    }
+
+    /**
+     * Moves a sparse floor into a flat array.
+     */
+    private void toDense(int floorIndex) {
+        SparseMatrix.MyInt2ObjectOpenHashMap<E> floorData = sparseData[floorIndex];
+        Object[] data = new Object[bound.getCount()];
+        int[] key = floorData.getKey();
+        E[] value = floorData.getValue();
+        int n = floorData.getTableSize();
+        for (int i = 0; i < n; i++) {
+            if (key[i] != 0) {
+                data[key[i]] = value[i];
+            }
+        }
+        if (floorData.hasNullKey()) {
+            data[0] = value[n];
+        }
+        denseData[floorIndex] = data;
+        sparseData[floorIndex] = null;
+    }
+
+    /**
+     * Moves a dense floor into a hash table sized for its elements.
+     */
+    private void toSparse(int floorIndex) {
+        Object[] data = denseData[floorIndex];
+        SparseMatrix.MyInt2ObjectOpenHashMap<E> floorData = new SparseMatrix.MyInt2ObjectOpenHashMap<>();
+        for (int k = 0; k < data.length; k++) {
+            if (data[k] != null) {
+                floorData.put(k, elementData(floorIndex, k));
+            }
+        }
+        sparseData[floorIndex] = floorData;
+        denseData[floorIndex] = null;
+    }
+
+    /**
+     * Migrates a floor after a bulk update, when its density is out of the range of its current form.
+     */
+    private void rebalance(int floorIndex) {
+        int count = floorEffectiveCount[floorIndex];
+        if (denseData[floorIndex] == null) {
+            if (count > denseLimit) {
+                toDense(floorIndex);
+            }
+        } else if (count < sparseLimit) {
+            toSparse(floorIndex);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int f = 0; f < floorCount; f++) {
+            denseData[f] = null;
+            sparseData[f] = new SparseMatrix.MyInt2ObjectOpenHashMap<>();
+        }
+        Arrays.fill(floorEffectiveCount, 0);
+        bound = new Bound(0, 0, 0, 0, 0);
+        updateLimits();
+        effectiveCount = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return effectiveCount == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Filling with {@code null} leaves every floor sparse and empty; any other element makes every floor
+     * dense.
+     */
+    @Override
+    public void fill(E element) {
+        int floorSize = bound.getCount();
+        IntStream.range(0, floorCount).parallel().forEach(f -> {
+            if (element == null) {
+                denseData[f] = null;
+                sparseData[f] = new SparseMatrix.MyInt2ObjectOpenHashMap<>();
+            } else {
+                Object[] data = denseData[f] == null ? new Object[floorSize] : denseData[f];
+                Arrays.fill(data, element);
+                denseData[f] = data;
+                sparseData[f] = null;
+            }
+            floorEffectiveCount[f] = element == null ? 0 : floorSize;
+        });
+        effectiveCount = element == null ? 0 : getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Dense floors are processed by ranges of cells and sparse floors by ranges of table slots, on the
+     * fork/join pool; the floors are migrated afterwards if needed.
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        AtomicIntegerArray removed = new AtomicIntegerArray(floorCount);
+        IntArrayList removedKeys = reduceRanges(null, (floorIndex, fromIndex, toIndex) -> {
+            Object[] data = denseData[floorIndex];
+            if (data != null) {
+                int count = 0;
+                for (int k = fromIndex; k < toIndex; k++) {
+                    if (data[k] != null && null == (data[k] = operator.apply(elementData(floorIndex, k)))) {
+                        count++;
+                    }
+                }
+                removed.addAndGet(floorIndex, count);
+                return null;
+            }
+            SparseMatrix.MyInt2ObjectOpenHashMap<E> floorData = sparseData[floorIndex];
+            int[] key = floorData.getKey();
+            E[] value = floorData.getValue();
+            int n = floorData.getTableSize();
+            IntArrayList nullKeys = null;
+            for (int i = fromIndex; i < toIndex; i++) {
+                if ((i < n ? key[i] != 0 : floorData.hasNullKey()) && null == (value[i] = operator.apply(value[i]))) {
+                    if (nullKeys == null) {
+                        nullKeys = new IntArrayList();
+                    }
+                    nullKeys.add(floorIndex * bound.getCount() + key[i]);
+                }
+            }
+            return nullKeys;
+        }, (a, b) -> {
+            if (a == null) {
+                return b;
+            }
+            if (b != null) {
+                a.addAll(b);
+            }
+            return a;
+        });
+        if (removedKeys != null) {
+            int floorSize = bound.getCount();
+            for (int i = 0; i < removedKeys.size(); i++) {
+                int flatIndex = removedKeys.getInt(i);
+                sparseData[flatIndex / floorSize].remove(flatIndex % floorSize);
+                removed.incrementAndGet(flatIndex / floorSize);
+            }
+        }
+        for (int f = 0; f < floorCount; f++) {
+            floorEffectiveCount[f] -= removed.get(f);
+            effectiveCount -= removed.get(f);
+            rebalance(f);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sparse floors are read through their occupied slots only, floor by floor in parallel when the target
+     * accepts concurrent writes.
+     */
+    @Override
+    public <R> void mapInto(Matrix<R> target, Function<? super E, ? extends R> function) {
+        Objects.requireNonNull(function);
+        checkShape(target);
+        IntStream floors = IntStream.range(0, floorCount);
+        if (target instanceof AbstractMatrix && ((AbstractMatrix<?>) target).isParallelWritable()) {
+            floors = floors.parallel();
+        }
+        floors.forEach(f -> forEachCell(f, (floorIndex, i, j, e) -> target.set(floorIndex, i, j, function.apply(e))));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Dense floors are folded by ranges of cells and sparse floors by ranges of table slots, on the
+     * fork/join pool.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R reduce(R identity, BiFunction<R, ? super E, R> accumulator, BinaryOperator<R> combiner) {
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        return reduceRanges(identity, (floorIndex, fromIndex, toIndex) -> {
+            R result = identity;
+            Object[] data = denseData[floorIndex];
+            if (data != null) {
+                for (int k = fromIndex; k < toIndex; k++) {
+                    if (data[k] != null) {
+                        result = accumulator.apply(result, (E) data[k]);
+                    }
+                }
+            } else {
+                SparseMatrix.MyInt2ObjectOpenHashMap<E> floorData = sparseData[floorIndex];
+                int[] key = floorData.getKey();
+                E[] value = floorData.getValue();
+                int n = floorData.getTableSize();
+                for (int i = fromIndex; i < toIndex; i++) {
+                    if (i < n ? key[i] != 0 : floorData.hasNullKey()) {
+                        result = accumulator.apply(result, value[i]);
+                    }
+                }
+            }
+            return result;
+        }, combiner);
+    }
+
+    /**
+     * Applies the function on the fork/join pool to ranges of at most {@link MatrixTasks#BLOCK_SIZE}
+     * cells of every dense floor and table slots of every sparse floor, and merges the results.
+     */
+    private <R> R reduceRanges(R identity, RangeFunction<R> function, BinaryOperator<R> combiner) {
+        int[] lengths = new int[floorCount];
+        int taskCount = 0;
+        for (int f = 0; f < floorCount; f++) {
+            lengths[f] = denseData[f] != null ? denseData[f].length : sparseData[f].getTableSize() + 1;
+            taskCount += (lengths[f] + MatrixTasks.BLOCK_SIZE - 1) / MatrixTasks.BLOCK_SIZE;
+        }
+        int[] taskFloors = new int[taskCount];
+        int[] taskStarts = new int[taskCount];
+        for (int f = 0, t = 0; f < floorCount; f++) {
+            for (int start = 0; start < lengths[f]; start += MatrixTasks.BLOCK_SIZE, t++) {
+                taskFloors[t] = f;
+                taskStarts[t] = start;
+            }
+        }
+        return IntStream.range(0, taskCount).parallel().mapToObj(t -> {
+            int f = taskFloors[t];
+            return function.apply(f, taskStarts[t], Math.min(taskStarts[t] + MatrixTasks.BLOCK_SIZE, lengths[f]));
+        }).reduce(identity, combiner);
+    }
+
+    private interface RangeFunction<R> {
+        R apply(int floorIndex, int fromIndex, int toIndex);
+    }
+
+    @Override
+    public void forEachCell(CellConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (int f = 0; f < floorCount; f++) {
+            forEachCell(f, action);
+        }
+    }
+
+    private void forEachCell(int floorIndex, CellConsumer<? super E> action) {
+        int columnCount = bound.getColumnCount();
+        Object[] data = denseData[floorIndex];
+        if (data != null) {
+            for (int i = 0, k = 0; k < data.length; i++) {
+                for (int j = 0; j < columnCount; j++, k++) {
+                    if (data[k] != null) {
+                        action.accept(floorIndex, i, j, elementData(floorIndex, k));
+                    }
+                }
+            }
+            return;
+        }
+        SparseMatrix.MyInt2ObjectOpenHashMap<E> floorData = sparseData[floorIndex];
+        int[] key = floorData.getKey();
+        E[] value = floorData.getValue();
+        int n = floorData.getTableSize();
+        for (int i = 0; i < n; i++) {
+            if (key[i] != 0) {
+                action.accept(floorIndex, key[i] / columnCount, key[i] % columnCount, value[i]);
+            }
+        }
+        if (floorData.hasNullKey()) {
+            action.accept(floorIndex, 0, 0, value[n]);
+        }
+    }
+
+    @Override
+    public Iterator<Cursor<Index, E>> iterator() {
+        AdaptiveIndexItr indexItr = new AdaptiveIndexItr();
+        return new Iterator<Cursor<Index, E>>() {
+            @Override
+            public boolean hasNext() {
+                return indexItr.hasNext();
+            }
+
+            @Override
+            public Cursor<Index, E> next() {
+                int flatIndex = indexItr.nextFlatIndex();
+                return new SimpleCursor<>(getIndex(flatIndex), get(flatIndex));
+            }
+
+            @Override
+            public void remove() {
+                indexItr.remove();
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Index> indexIterator() {
+        return new AdaptiveIndexItr();
+    }
+
+    @Override
+    public IntIterator keyIterator() {
+        AdaptiveIndexItr indexItr = new AdaptiveIndexItr();
+        return new IntIterator() {
+            @Override
+            public boolean hasNext() {
+                return indexItr.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                return indexItr.nextFlatIndex();
+            }
+
+            @Override
+            public void remove() {
+                indexItr.remove();
+            }
+        };
+    }
+
+    /**
+     * Walks the non-null cells in flat index order. A floor found dense is scanned cell by cell, and the
+     * keys of a floor found sparse are sorted when the iterator reaches it; either way the walk does not
+     * depend on the storage, so removing through the iterator may migrate the floor safely.
+     */
+    private class AdaptiveIndexItr implements Iterator<Index> {
+        int floor = -1;       // floor of the cursor
+        int[] keys;           // sorted keys of a sparse floor, null for a dense floor
+        int cursor;           // next key position in keys, or next floor flat index of a dense floor
+        int end;              // one past the last cursor of the floor
+        int lastRet = -1;     // flat index of last cell returned; -1 if no such
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                if (floor >= 0) {
+                    if (keys == null) {
+                        while (cursor < end && elementData(floor, cursor) == null) {
+                            cursor++;
+                        }
+                    }
+                    if (cursor < end) {
+                        return true;
+                    }
+                }
+                if (floor + 1 >= floorCount) {
+                    return false;
+                }
+                floor++;
+                cursor = 0;
+                if (denseData[floor] != null) {
+                    keys = null;
+                    end = bound.getCount();
+                } else {
+                    keys = sparseData[floor].keySet().toIntArray();
+                    Arrays.sort(keys);
+                    end = keys.length;
+                }
+            }
+        }
+
+        int nextFlatIndex() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int floorFlatIndex = keys == null ? cursor : keys[cursor];
+            cursor++;
+            lastRet = floor * bound.getCount() + floorFlatIndex;
+            return lastRet;
+        }
+
+        @Override
+        public Index next() {
+            return getIndex(nextFlatIndex());
+        }
+
+        @Override
+        public void remove() {
+            if (lastRet < 0) {
+                throw new IllegalStateException();
+            }
+            set(lastRet, null);
+            lastRet = -1;
+        }
+    }
+}
@@ -1,23 +1,44 @@
 package pers.yzx.matrix;
 
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 public class ArrayMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
-    private final Object[][][] elementData;
+    /**
+     * One contiguous slab per floor, each holding the cells of the floor in row-major order, so the
+     * position of a cell inside its slab is its floor flat index.
+     */
+    private final Object[][] elementData;
     private int effectiveCount;
 
     public ArrayMatrix(Bound bound) {
         super(bound);
-        this.elementData = new Object[floorCount][bound.getRowCount()][bound.getColumnCount()];
+        this.elementData = new Object[floorCount][bound.getCount()];
         this.effectiveCount = 0;
     }
 
     public ArrayMatrix(Bound bound, int floorCount) {
-        super(bound);
-        this.elementData = new Object[floorCount][bound.getRowCount()][bound.getColumnCount()];
+        super(bound, floorCount);
+        this.elementData = new Object[floorCount][bound.getCount()];
         this.effectiveCount = 0;
     }
 
+    /**
+     * Wraps slabs filled by the caller, one per floor, holding {@code effectiveCount} non-null cells.
+     */
+    ArrayMatrix(Bound bound, Object[][] elementData, int effectiveCount) {
+        super(bound, elementData.length);
+        this.elementData = elementData;
+        this.effectiveCount = effectiveCount;
+    }
+
     @Override
     public int getEffectiveCount() {
         return effectiveCount;
@@ -26,36 +47,164 @@ public class ArrayMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
     @Override
     public E get(int floorIndex, int rowIndex, int columnIndex) {
         rangeCheck(floorIndex, rowIndex, columnIndex);
-        return elementData(floorIndex, rowIndex, columnIndex);
+        return elementData(floorIndex, rowIndex * bound.getColumnCount() + columnIndex);
+    }
+
+    @Override
+    public E get(int flatIndex) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        return elementData(flatIndex / floorSize, flatIndex % floorSize);
     }
 
     @SuppressWarnings("unchecked")
-    private E elementData(int floorIndex, int rowIndex, int columnIndex) {
-        return (E) elementData[floorIndex][rowIndex][columnIndex];
+    private E elementData(int floorIndex, int floorFlatIndex) {
+        return (E) elementData[floorIndex][floorFlatIndex];
     }
 
     @Override
     public void set(int floorIndex, int rowIndex, int columnIndex, E element) {
         rangeCheck(floorIndex, rowIndex, columnIndex);
-        if (null == elementData[floorIndex][rowIndex][columnIndex]) {
-            effectiveCount++;
+        elementData(floorIndex, rowIndex * bound.getColumnCount() + columnIndex, element);
+    }
+
+    @Override
+    public void set(int flatIndex, E element) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        elementData(flatIndex / floorSize, flatIndex % floorSize, element);
+    }
+
+    private void elementData(int floorIndex, int floorFlatIndex, E element) {
+        Object[] floorData = elementData[floorIndex];
+        if (null == floorData[floorFlatIndex]) {
+            if (null != element) {
+                effectiveCount++;
+            }
+        } else if (null == element) {
+            effectiveCount--;
         }
-        elementData[floorIndex][rowIndex][columnIndex] = element;
+        floorData[floorFlatIndex] = element;
     }
 
     @Override
     public void clear() {
-        for (int f = 0; f < floorCount; f++) {
-            for (int i = 0; i < bound.getRowCount(); i++) {
-                for (int j = 0; j < bound.getColumnCount(); j++) {
-                    elementData[f][i][j] = null;
-                }
-            }
+        for (Object[] floorData : elementData) {
+            Arrays.fill(floorData, null);
         }
         bound = new Bound(0, 0, 0, 0, 0);
         effectiveCount = 0;
     }
 
+    @Override
+    public void fill(E element) {
+        int floorSize = bound.getCount();
+        MatrixTasks.forEachBlock(this, (fromIndex, toIndex) -> {
+            int lo = fromIndex % floorSize;
+            Arrays.fill(elementData[fromIndex / floorSize], lo, lo + toIndex - fromIndex, element);
+        });
+        effectiveCount = element == null ? 0 : getCount();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        int floorSize = bound.getCount();
+        int removed = MatrixTasks.reduceBlocks(this, 0, (fromIndex, toIndex) -> {
+            Object[] floorData = elementData[fromIndex / floorSize];
+            int lo = fromIndex % floorSize;
+            int hi = lo + toIndex - fromIndex;
+            int count = 0;
+            for (int k = lo; k < hi; k++) {
+                Object e = floorData[k];
+                if (e != null && null == (floorData[k] = operator.apply((E) e))) {
+                    count++;
+                }
+            }
+            return count;
+        }, Integer::sum);
+        effectiveCount -= removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When the target is an {@code ArrayMatrix}, the slabs of both matrices are processed directly on the
+     * fork/join pool.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> void mapInto(Matrix<R> target, Function<? super E, ? extends R> function) {
+        if (!(target instanceof ArrayMatrix)) {
+            super.mapInto(target, function);
+            return;
+        }
+        Objects.requireNonNull(function);
+        checkShape(target);
+        ArrayMatrix<R> arrayTarget = (ArrayMatrix<R>) target;
+        int floorSize = bound.getCount();
+        int added = MatrixTasks.reduceBlocks(this, 0, (fromIndex, toIndex) -> {
+            Object[] floorData = elementData[fromIndex / floorSize];
+            Object[] targetData = arrayTarget.elementData[fromIndex / floorSize];
+            int lo = fromIndex % floorSize;
+            int hi = lo + toIndex - fromIndex;
+            int count = 0;
+            for (int k = lo; k < hi; k++) {
+                Object e = floorData[k];
+                if (e != null) {
+                    R r = function.apply((E) e);
+                    if (targetData[k] == null) {
+                        count += r == null ? 0 : 1;
+                    } else if (r == null) {
+                        count--;
+                    }
+                    targetData[k] = r;
+                }
+            }
+            return count;
+        }, Integer::sum);
+        arrayTarget.effectiveCount += added;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R reduce(R identity, BiFunction<R, ? super E, R> accumulator, BinaryOperator<R> combiner) {
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        int floorSize = bound.getCount();
+        return MatrixTasks.reduceBlocks(this, identity, (fromIndex, toIndex) -> {
+            Object[] floorData = elementData[fromIndex / floorSize];
+            int lo = fromIndex % floorSize;
+            int hi = lo + toIndex - fromIndex;
+            R result = identity;
+            for (int k = lo; k < hi; k++) {
+                Object e = floorData[k];
+                if (e != null) {
+                    result = accumulator.apply(result, (E) e);
+                }
+            }
+            return result;
+        }, combiner);
+    }
+
+    @Override
+    public void forEachCell(CellConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int columnCount = bound.getColumnCount();
+        for (int f = 0; f < elementData.length; f++) {
+            Object[] floorData = elementData[f];
+            for (int i = 0, k = 0; k < floorData.length; i++) {
+                for (int j = 0; j < columnCount; j++, k++) {
+                    Object e = floorData[k];
+                    if (e != null) {
+                        action.accept(f, i, j, elementData(f, k));
+                    }
+                }
+            }
+        }
+    }
+
     @Override
     public boolean isEmpty() {
         return effectiveCount == 0;
@@ -67,7 +216,7 @@ public class ArrayMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
     }
 
     @Override
-    public Iterator<Integer> keyIterator() {
+    public IntIterator keyIterator() {
         return new KeyIterator();
     }
 
@@ -75,10 +224,4 @@ public class ArrayMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
     public Iterator<Index> indexIterator() {
         return new IndexItr();
     }
-
-    @Override
-    public Matrix<E> getFloorMatrix(int floorIndex) {
-        return null;
-    }
-
 }
@@ -0,0 +1,224 @@
+package pers.yzx.matrix;
+
+import pers.yzx.geometry.Point;
+import pers.yzx.geometry.Polygon;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Rasterizes many polygons into a single matrix over a target bound.
+ * <p>
+ * The rows of the bound are split into a few bands per thread of the fork/join pool, and the edges of
+ * all the polygons are bucketed once by the bands they cross. Each band then rasterizes its own edges,
+ * polygon by polygon, with a scratch scanline engine kept per thread. The work is thus about the edges,
+ * the bands they cross and the spans, and no per-polygon matrix is allocated. A cell belongs to a
+ * polygon when its centre is inside it and outside its holes, by the even-odd rule.
+ */
+public final class BatchRasterizer {
+    private static final int BANDS_PER_THREAD = 4;
+
+    /**
+     * Chooses the label of a cell covered by several polygons.
+     */
+    public enum OverlapRule {
+        /**
+         * The polygon coming first in the list.
+         */
+        FIRST,
+        /**
+         * The polygon coming last in the list.
+         */
+        LAST,
+        /**
+         * The polygon of smallest area outside its holes, the first one among equal areas.
+         */
+        SMALLEST
+    }
+
+    private BatchRasterizer() {
+    }
+
+    /**
+     * Returns the number of polygons covering each cell of the bound.
+     */
+    public static IntMatrix coverage(List<Polygon> polygons, Bound bound) {
+        IntMatrix counts = new IntMatrix(bound);
+        int columnCount = bound.getColumnCount();
+        rasterize(polygons, bound, false, (polygonIndex, rowIndex, fromColumn, toColumn) -> {
+            int rowStart = rowIndex * columnCount;
+            for (int k = rowStart + fromColumn; k < rowStart + toColumn; k++) {
+                counts.setInt(k, counts.getInt(k) + 1);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Returns, for each cell of the bound, the index plus one in the list of the polygon covering it,
+     * or 0 where no polygon does.
+     */
+    public static IntMatrix label(List<Polygon> polygons, Bound bound, OverlapRule rule) {
+        IntMatrix labels = new IntMatrix(bound);
+        double[] areas = rule == OverlapRule.SMALLEST ? areas(polygons) : null;
+        int columnCount = bound.getColumnCount();
+        rasterize(polygons, bound, false, (polygonIndex, rowIndex, fromColumn, toColumn) -> {
+            int label = polygonIndex + 1;
+            int rowStart = rowIndex * columnCount;
+            for (int k = rowStart + fromColumn; k < rowStart + toColumn; k++) {
+                int current = labels.getInt(k);
+                if (current == 0 || precedes(rule, areas, label, current)) {
+                    labels.setInt(k, label);
+                }
+            }
+        });
+        return labels;
+    }
+
+    /**
+     * Returns the cells of the bound covered by at least one polygon.
+     */
+    public static BitMatrix union(List<Polygon> polygons, Bound bound) {
+        long[] words = new long[LongBits.wordCount(bound.getCount())];
+        int columnCount = bound.getColumnCount();
+        // the bands start on word boundaries, so two threads never write the same word
+        rasterize(polygons, bound, true, (polygonIndex, rowIndex, fromColumn, toColumn) ->
+                LongBits.set(words, rowIndex * columnCount + fromColumn, rowIndex * columnCount + toColumn));
+        return new BitMatrix(bound, 1, words);
+    }
+
+    private static boolean precedes(OverlapRule rule, double[] areas, int label, int current) {
+        switch (rule) {
+            case FIRST:
+                return label < current;
+            case LAST:
+                return label > current;
+            default:
+                double area = areas[label - 1];
+                double currentArea = areas[current - 1];
+                return area < currentArea || area == currentArea && label < current;
+        }
+    }
+
+    /**
+     * Returns the area of each polygon outside its holes.
+     */
+    private static double[] areas(List<Polygon> polygons) {
+        double[] areas = new double[polygons.size()];
+        for (int p = 0; p < areas.length; p++) {
+            Polygon polygon = polygons.get(p);
+            areas[p] = area(polygon.getPoints());
+            for (List<Point> hole : polygon.getHoles()) {
+                areas[p] -= area(hole);
+            }
+        }
+        return areas;
+    }
+
+    private static double area(List<Point> ring) {
+        double doubleArea = 0;
+        for (int k = 0; k < ring.size(); k++) {
+            Point a = ring.get(k);
+            Point b = ring.get((k + 1) % ring.size());
+            doubleArea += a.getX() * b.getY() - b.getX() * a.getY();
+        }
+        return Math.abs(doubleArea) / 2;
+    }
+
+    /**
+     * Emits the spans of every polygon, by bands of rows on the fork/join pool. The spans of a row are
+     * all emitted by the same thread, and with {@code wordAligned} every band starts on a word boundary.
+     */
+    private static void rasterize(List<Polygon> polygons, Bound bound, boolean wordAligned, SpanWriter writer) {
+        int rowCount = bound.getRowCount();
+        int columnCount = bound.getColumnCount();
+        if (rowCount == 0 || columnCount == 0) {
+            return;
+        }
+        int bandLimit = BANDS_PER_THREAD * ForkJoinPool.getCommonPoolParallelism();
+        int bandRows = (rowCount + bandLimit - 1) / bandLimit;
+        if (wordAligned) {
+            int rowStep = BitMatrix.wordAlignedRowStep(columnCount);
+            bandRows = (bandRows + rowStep - 1) / rowStep * rowStep;
+        }
+        int bandCount = (rowCount + bandRows - 1) / bandRows;
+
+        // the non-horizontal edges of every ring, polygon after polygon
+        int edgeCount = 0;
+        for (Polygon polygon : polygons) {
+            for (List<Point> ring : polygon.getRings()) {
+                for (int k = 0; k < ring.size(); k++) {
+                    if (ring.get(k).getY() != ring.get((k + 1) % ring.size()).getY()) {
+                        edgeCount++;
+                    }
+                }
+            }
+        }
+        double[] coordinates = new double[4 * edgeCount];
+        int[] edgePolygons = new int[edgeCount];
+        int[] firstBands = new int[edgeCount];
+        int[] lastBands = new int[edgeCount];
+        int[] bandStarts = new int[bandCount + 1];
+        int e = 0;
+        for (int p = 0; p < polygons.size(); p++) {
+            for (List<Point> ring : polygons.get(p).getRings()) {
+                for (int k = 0; k < ring.size(); k++) {
+                    Point a = ring.get(k);
+                    Point b = ring.get((k + 1) % ring.size());
+                    if (a.getY() == b.getY()) {
+                        continue;
+                    }
+                    coordinates[4 * e] = a.getX();
+                    coordinates[4 * e + 1] = a.getY();
+                    coordinates[4 * e + 2] = b.getX();
+                    coordinates[4 * e + 3] = b.getY();
+                    edgePolygons[e] = p;
+                    // the bands of the rows whose centre the edge crosses, none when it crosses no row
+                    int firstRow = Math.max(ScanlineEngine.firstRow(bound, Math.max(a.getY(), b.getY())), 0);
+                    int lastRow = Math.min(ScanlineEngine.lastRow(bound, Math.min(a.getY(), b.getY())), rowCount - 1);
+                    firstBands[e] = firstRow <= lastRow ? firstRow / bandRows : 0;
+                    lastBands[e] = firstRow <= lastRow ? lastRow / bandRows : -1;
+                    for (int band = firstBands[e]; band <= lastBands[e]; band++) {
+                        bandStarts[band + 1]++;
+                    }
+                    e++;
+                }
+            }
+        }
+        for (int band = 0; band < bandCount; band++) {
+            bandStarts[band + 1] += bandStarts[band];
+        }
+        // the edges of each band, in polygon order
+        int[] bandEdges = new int[bandStarts[bandCount]];
+        int[] positions = bandStarts.clone();
+        for (e = 0; e < edgeCount; e++) {
+            for (int band = firstBands[e]; band <= lastBands[e]; band++) {
+                bandEdges[positions[band]++] = e;
+            }
+        }
+
+        int finalBandRows = bandRows;
+        ThreadLocal<ScanlineEngine> engines = ThreadLocal.withInitial(ScanlineEngine::new);
+        IntStream.range(0, bandCount).parallel().forEach(band -> {
+            ScanlineEngine engine = engines.get();
+            int fromRow = band * finalBandRows;
+            int toRow = Math.min(fromRow + finalBandRows, rowCount);
+            for (int k = bandStarts[band], end = bandStarts[band + 1]; k < end; ) {
+                int polygonIndex = edgePolygons[bandEdges[k]];
+                engine.reset(bound);
+                for (; k < end && edgePolygons[bandEdges[k]] == polygonIndex; k++) {
+                    int edge = 4 * bandEdges[k];
+                    engine.addEdge(coordinates[edge], coordinates[edge + 1], coordinates[edge + 2],
+                            coordinates[edge + 3]);
+                }
+                engine.fill(fromRow, toRow, (rowIndex, fromColumn, toColumn) ->
+                        writer.accept(polygonIndex, rowIndex, fromColumn, toColumn));
+            }
+        });
+    }
+
+    private interface SpanWriter {
+        void accept(int polygonIndex, int rowIndex, int fromColumn, int toColumn);
+    }
+}
@@ -1,44 +1,65 @@
 package pers.yzx.matrix;
 
-import java.util.BitSet;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 public class BitMatrix extends AbstractMatrix<Boolean> {
-    private final BitSet bitSet;
+    /**
+     * The cells as 64-bit words, bit {@code i % 64} of word {@code i / 64} being the cell of flat index
+     * {@code i}; the bits past the last cell are always clear.
+     */
+    private long[] words;
     private int trueElementCount;
 
     public BitMatrix(Bound bound) {
         super(bound);
-        bitSet = new BitSet(getCount());
+        words = new long[LongBits.wordCount(getCount())];
         this.trueElementCount = 0;
     }
 
     public BitMatrix(Bound bound, int floorCount) {
         super(bound, floorCount);
-        bitSet = new BitSet(getCount());
+        words = new long[LongBits.wordCount(getCount())];
         this.trueElementCount = 0;
     }
 
     public BitMatrix(Bound bound, boolean defaultValue) {
         super(bound);
-        bitSet = new BitSet(getCount());
+        words = new long[LongBits.wordCount(getCount())];
         this.trueElementCount = 0;
         if (defaultValue) {
-            bitSet.set(0, getCount());
-            this.trueElementCount = getCount();
+            this.trueElementCount = LongBits.set(words, 0, getCount());
         }
     }
 
     public BitMatrix(Bound bound, int floorCount, boolean defaultValue) {
         super(bound, floorCount);
-        bitSet = new BitSet(getCount());
+        words = new long[LongBits.wordCount(getCount())];
         this.trueElementCount = 0;
         if (defaultValue) {
-            bitSet.set(0, getCount());
-            this.trueElementCount = getCount();
+            this.trueElementCount = LongBits.set(words, 0, getCount());
         }
     }
 
+    /**
+     * Wraps words laid out as {@link #toLongArray()} returns them.
+     */
+    BitMatrix(Bound bound, int floorCount, long[] words) {
+        super(bound, floorCount);
+        this.words = words;
+        this.trueElementCount = LongBits.cardinality(words, 0, getCount());
+    }
+
     @Override
     public int getEffectiveCount() {
         return getFloorCount() * bound.getCount();
@@ -54,14 +75,14 @@ public class BitMatrix extends AbstractMatrix<Boolean> {
         if (flatIndex < 0 || flatIndex >= getCount()) {
             return null;
         }
-        return bitSet.get(flatIndex);
+        return LongBits.get(words, flatIndex);
     }
 
     @Override
     public void set(int flatIndex, Boolean element) {
         rangeCheck(flatIndex);
-        updateTrueElementsCount(bitSet.get(flatIndex), element);
-        bitSet.get(flatIndex);
+        boolean value = element;
+        updateTrueElementsCount(LongBits.set(words, flatIndex, value), value);
     }
 
     private void updateTrueElementsCount(boolean oldValue, boolean newValue) {
@@ -75,8 +96,7 @@ public class BitMatrix extends AbstractMatrix<Boolean> {
 
     @Override
     public void set(int rowIndex, int columnIndex, Boolean element) {
-        int flatIndex = rowIndex * bound.getColumnCount() + columnIndex;
-        bitSet.set(flatIndex, element);
+        set(rowIndex * bound.getColumnCount() + columnIndex, element);
     }
 
     @Override
@@ -84,10 +104,314 @@ public class BitMatrix extends AbstractMatrix<Boolean> {
         set(getFlatIndex(floorIndex, rowIndex, columnIndex), element);
     }
 
+    /**
+     * Sets the cells of flat index {@code [fromIndex, toIndex)} to the value, whole words at a time.
+     */
+    public void setRange(int fromIndex, int toIndex, boolean value) {
+        flatRangeCheck(fromIndex, toIndex);
+        if (value) {
+            trueElementCount += LongBits.set(words, fromIndex, toIndex);
+        } else {
+            trueElementCount -= LongBits.clear(words, fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * Sets the cells of columns {@code [fromColumn, toColumn)} of a row to the value, whole words at a time.
+     */
+    public void setRowRange(int floorIndex, int rowIndex, int fromColumn, int toColumn, boolean value) {
+        int rowStart = rowStart(floorIndex, rowIndex, fromColumn, toColumn);
+        setRange(rowStart + fromColumn, rowStart + toColumn, value);
+    }
+
+    /**
+     * Flips the cells of columns {@code [fromColumn, toColumn)} of a row, whole words at a time.
+     */
+    public void flipRowRange(int floorIndex, int rowIndex, int fromColumn, int toColumn) {
+        int rowStart = rowStart(floorIndex, rowIndex, fromColumn, toColumn);
+        trueElementCount += LongBits.flip(words, rowStart + fromColumn, rowStart + toColumn);
+    }
+
+    /**
+     * Returns the number of true cells of a row.
+     */
+    public int cardinalityInRow(int floorIndex, int rowIndex) {
+        int rowStart = rowStart(floorIndex, rowIndex, 0, bound.getColumnCount());
+        return LongBits.cardinality(words, rowStart, rowStart + bound.getColumnCount());
+    }
+
+    private int rowStart(int floorIndex, int rowIndex, int fromColumn, int toColumn) {
+        if (floorIndex < 0 || floorIndex >= floorCount || rowIndex < 0 || rowIndex >= bound.getRowCount())
+            throw new IndexOutOfBoundsException("Floor index: " + floorIndex + ", Row index: " + rowIndex);
+        if (fromColumn < 0 || toColumn > bound.getColumnCount() || fromColumn > toColumn)
+            throw new IndexOutOfBoundsException("From column: " + fromColumn + ", To column: " + toColumn +
+                    ", column size: " + bound.getColumnCount());
+        return getFlatIndex(floorIndex, rowIndex, 0);
+    }
+
+    private void flatRangeCheck(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > getCount() || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("From index: " + fromIndex + ", To index: " + toIndex +
+                    ", matrix size: " + getCount());
+    }
+
     @Override
     public void clear() {
         bound = new Bound(0, 0, 0, 0, 0);
-        bitSet.clear();
+        words = new long[0];
+        trueElementCount = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Whole words are written at once.
+     *
+     * @throws NullPointerException if the element is {@code null}
+     */
+    @Override
+    public void fill(Boolean element) {
+        if (element) {
+            LongBits.set(words, 0, getCount());
+            trueElementCount = getCount();
+        } else {
+            Arrays.fill(words, 0L);
+            trueElementCount = 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The operator is applied once to {@code true} and once to {@code false}, and must therefore be a
+     * function of its argument only; the bits are then updated word by word.
+     */
+    @Override
+    public void replaceAll(UnaryOperator<Boolean> operator) {
+        Objects.requireNonNull(operator);
+        boolean whenTrue = operator.apply(Boolean.TRUE);
+        boolean whenFalse = operator.apply(Boolean.FALSE);
+        if (whenTrue && whenFalse) {
+            fill(true);
+        } else if (!whenTrue && !whenFalse) {
+            fill(false);
+        } else if (!whenTrue) {
+            trueElementCount += LongBits.flip(words, 0, getCount());
+        }
+    }
+
+    /**
+     * Boolean operators between two bit matrices, the other operand reading as {@code false} outside its
+     * bound.
+     */
+    public enum BitOperation {
+        AND, OR, XOR, AND_NOT;
+
+        long apply(long word, long other) {
+            switch (this) {
+                case AND:
+                    return word & other;
+                case OR:
+                    return word | other;
+                case XOR:
+                    return word ^ other;
+                default:
+                    return word & ~other;
+            }
+        }
+    }
+
+    /**
+     * Combines the other matrix into this one, in place: {@code this = this & other}.
+     *
+     * @return the number of true cells of this matrix afterwards
+     */
+    public int and(BitMatrix other) {
+        return apply(BitOperation.AND, other);
+    }
+
+    /**
+     * Combines the other matrix into this one, in place: {@code this = this | other}.
+     *
+     * @return the number of true cells of this matrix afterwards
+     */
+    public int or(BitMatrix other) {
+        return apply(BitOperation.OR, other);
+    }
+
+    /**
+     * Combines the other matrix into this one, in place: {@code this = this ^ other}.
+     *
+     * @return the number of true cells of this matrix afterwards
+     */
+    public int xor(BitMatrix other) {
+        return apply(BitOperation.XOR, other);
+    }
+
+    /**
+     * Combines the other matrix into this one, in place: {@code this = this & ~other}.
+     *
+     * @return the number of true cells of this matrix afterwards
+     */
+    public int andNot(BitMatrix other) {
+        return apply(BitOperation.AND_NOT, other);
+    }
+
+    /**
+     * Returns a new matrix over the bound of this one holding {@code this op other}; this matrix is left
+     * unchanged.
+     */
+    public BitMatrix combine(BitOperation operation, BitMatrix other) {
+        BitMatrix result = new BitMatrix(bound, floorCount);
+        System.arraycopy(words, 0, result.words, 0, words.length);
+        result.trueElementCount = trueElementCount;
+        result.apply(operation, other);
+        return result;
+    }
+
+    /**
+     * Combines the other matrix into this one, in place, floor by floor.
+     * <p>
+     * The bounds are matched geographically: they must have the same resolution and their origins must
+     * differ by whole cells, by any number of columns, the rows of the other matrix being read with a
+     * bit shift when they are not word-aligned with the rows of this one. Cells of this matrix outside
+     * the other bound, or on floors the other matrix does not have, combine with {@code false}. The rows
+     * are processed by bands on the fork/join pool, each band starting on a word boundary.
+     *
+     * @return the number of true cells of this matrix afterwards
+     * @throws IllegalArgumentException if the grids of the two matrices are not aligned
+     */
+    public int apply(BitOperation operation, BitMatrix other) {
+        Objects.requireNonNull(operation);
+        int resolution = bound.getResolution();
+        if (other.getResolution() != resolution)
+            throw new IllegalArgumentException("Resolution mismatch: " + other.getResolution() + ", expected " +
+                    resolution);
+        double rowShift = (bound.getTopLeftY() - other.getTopLeftY()) / resolution;
+        double columnShift = (other.getTopLeftX() - bound.getTopLeftX()) / resolution;
+        if (rowShift != Math.rint(rowShift) || columnShift != Math.rint(columnShift))
+            throw new IllegalArgumentException("Unaligned grids: " + rowShift + ", " + columnShift + " cells");
+        // cell (i, j) of this matrix is the cell (i - rowOffset, j - columnOffset) of the other one
+        int rowOffset = (int) rowShift;
+        int columnOffset = (int) columnShift;
+        long[] otherWords = other == this ? words.clone() : other.words;
+        int rowCount = bound.getRowCount();
+        int columnCount = bound.getColumnCount();
+        int rowLow = Math.max(0, rowOffset);
+        int rowHigh = Math.min(rowCount, rowOffset + other.getRowCount());
+        int columnLow = Math.max(0, columnOffset);
+        int columnHigh = Math.min(columnCount, columnOffset + other.getColumnCount());
+        boolean clearsOutside = operation == BitOperation.AND;
+        trueElementCount += forEachBand((fromRow, toRow) -> {
+            int delta = 0;
+            for (int row = fromRow; row < toRow; row++) {
+                int f = row / rowCount;
+                int i = row % rowCount;
+                int rowStart = row * columnCount;
+                if (f >= other.getFloorCount() || i < rowLow || i >= rowHigh || columnLow >= columnHigh) {
+                    if (clearsOutside) {
+                        delta -= LongBits.clear(words, rowStart, rowStart + columnCount);
+                    }
+                    continue;
+                }
+                if (clearsOutside) {
+                    delta -= LongBits.clear(words, rowStart, rowStart + columnLow);
+                    delta -= LongBits.clear(words, rowStart + columnHigh, rowStart + columnCount);
+                }
+                int otherStart = other.getFlatIndex(f, i - rowOffset, columnLow - columnOffset);
+                delta += combineRange(operation, otherWords, otherStart, rowStart + columnLow,
+                        rowStart + columnHigh);
+            }
+            return delta;
+        });
+        return trueElementCount;
+    }
+
+    /**
+     * Combines the bits of {@code otherWords} from {@code otherStart} into the bits {@code [fromIndex,
+     * toIndex)} of this matrix, a destination word at a time, and returns the change of the true count.
+     */
+    private int combineRange(BitOperation operation, long[] otherWords, int otherStart, int fromIndex, int toIndex) {
+        int delta = 0;
+        for (int bit = fromIndex; bit < toIndex; ) {
+            int w = bit >>> LongBits.ADDRESS_BITS_PER_WORD;
+            int shift = bit & (Long.SIZE - 1);
+            int n = Math.min(Long.SIZE - shift, toIndex - bit);
+            long mask = (n == Long.SIZE ? -1L : (1L << n) - 1) << shift;
+            long source = LongBits.read(otherWords, otherStart + bit - fromIndex) << shift & mask;
+            long word = words[w];
+            long combined = operation.apply(word, operation == BitOperation.AND ? source | ~mask : source);
+            delta += Long.bitCount(combined) - Long.bitCount(word);
+            words[w] = combined;
+            bit += n;
+        }
+        return delta;
+    }
+
+    /**
+     * Applies the function to bands of global rows (floor index * row count + row index) on the
+     * fork/join pool and sums the results. Every band starts on a word boundary, so that two bands never
+     * write the same word.
+     */
+    int forEachBand(BandFunction function) {
+        return forEachBand(floorCount * bound.getRowCount(), bound.getColumnCount(), function);
+    }
+
+    static int forEachBand(int globalRowCount, int columnCount, BandFunction function) {
+        if (globalRowCount == 0 || columnCount == 0) {
+            return 0;
+        }
+        int rowStep = wordAlignedRowStep(columnCount);
+        int bandRows = rowStep * Math.max(1, MatrixTasks.BLOCK_SIZE / (rowStep * columnCount));
+        int bandCount = (globalRowCount + bandRows - 1) / bandRows;
+        if (bandCount == 1) {
+            return function.apply(0, globalRowCount);
+        }
+        return IntStream.range(0, bandCount).parallel()
+                .map(b -> function.apply(b * bandRows, Math.min((b + 1) * bandRows, globalRowCount))).sum();
+    }
+
+    /**
+     * Returns the least number of rows of the given column count spanning whole words, so that bands of a
+     * multiple of it rows start on word boundaries.
+     */
+    static int wordAlignedRowStep(int columnCount) {
+        return Long.SIZE / gcd(columnCount, Long.SIZE);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    interface BandFunction {
+        int apply(int fromRow, int toRow);
+    }
+
+    @Override
+    public void forEachCell(CellConsumer<? super Boolean> action) {
+        Objects.requireNonNull(action);
+        int rowCount = bound.getRowCount();
+        int columnCount = bound.getColumnCount();
+        int flatIndex = 0;
+        int count = getCount();
+        int nextTrue = LongBits.nextSetBit(words, 0, count);
+        for (int f = 0; f < floorCount; f++) {
+            for (int i = 0; i < rowCount; i++) {
+                for (int j = 0; j < columnCount; j++, flatIndex++) {
+                    if (flatIndex == nextTrue) {
+                        action.accept(f, i, j, Boolean.TRUE);
+                        nextTrue = LongBits.nextSetBit(words, flatIndex + 1, count);
+                    } else {
+                        action.accept(f, i, j, Boolean.FALSE);
+                    }
+                }
+            }
+        }
     }
 
     @Override
@@ -106,17 +430,53 @@ public class BitMatrix extends AbstractMatrix<Boolean> {
     }
 
     @Override
-    public Iterator<Integer> keyIterator() {
+    public IntIterator keyIterator() {
         return new KeyIterator();
     }
 
-    @Override
-    public Matrix<Boolean> getFloorMatrix(int floorIndex) {
-        return null;
+    /**
+     * Returns the flat indexes of the true cells in increasing order. Unlike {@link #keyIterator()}, which
+     * visits every cell of a bit matrix, the false cells are skipped a word at a time.
+     */
+    public IntIterator trueIndexIterator() {
+        return new TrueIndexIterator();
+    }
+
+    /**
+     * Returns the flat indexes of the true cells in increasing order. The stream splits on word
+     * boundaries when made parallel; the matrix must not be modified while it runs.
+     */
+    public IntStream trueIndexStream() {
+        return StreamSupport.intStream(new TrueIndexSpliterator(words, 0, LongBits.wordCount(getCount())), false);
+    }
+
+    /**
+     * Performs the action on the floor, row and column indexes of every true cell, in flat index order.
+     */
+    public void forEachTrueCell(CellIndexConsumer action) {
+        Objects.requireNonNull(action);
+        int columnCount = bound.getColumnCount();
+        int floorSize = bound.getCount();
+        int wordCount = LongBits.wordCount(getCount());
+        for (int w = 0; w < wordCount; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                int flatIndex = (w << LongBits.ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+                int cell = flatIndex % floorSize;
+                action.accept(flatIndex / floorSize, cell / columnCount, cell % columnCount);
+            }
+        }
+    }
+
+    /**
+     * Returns the bits as 64-bit words, bit {@code i % 64} of word {@code i / 64} being the cell of flat
+     * index {@code i}. The array covers every cell, including trailing false ones.
+     */
+    long[] toLongArray() {
+        return Arrays.copyOf(words, LongBits.wordCount(getCount()));
     }
 
     public int getTrueElementsCount() {
-        return bitSet.cardinality();
+        return trueElementCount;
     }
 
     public void print() {
@@ -128,4 +488,112 @@ public class BitMatrix extends AbstractMatrix<Boolean> {
         }
         System.out.println("");
     }
+
+    private class TrueIndexIterator implements IntIterator {
+        private int nextIndex = LongBits.nextSetBit(words, 0, getCount());
+        private int lastReturned = -1;
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (nextIndex < 0)
+                throw new NoSuchElementException();
+            lastReturned = nextIndex;
+            nextIndex = LongBits.nextSetBit(words, nextIndex + 1, getCount());
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0)
+                throw new IllegalStateException();
+            set(lastReturned, Boolean.FALSE);
+            lastReturned = -1;
+        }
+    }
+
+    /**
+     * Spliterator over the set bits of a range of words, splitting on word boundaries.
+     */
+    static final class TrueIndexSpliterator implements Spliterator.OfInt {
+        private static final int MIN_SPLIT_WORDS = 64;
+        private final long[] words;
+        private int wordIndex; // word holding the remaining bits
+        private long bits; // bits of wordIndex not yet consumed
+        private int fence; // one past the last word
+
+        TrueIndexSpliterator(long[] words, int fromWord, int toWord) {
+            this.words = words;
+            this.wordIndex = fromWord;
+            this.fence = toWord;
+            this.bits = fromWord < toWord ? words[fromWord] : 0;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            Objects.requireNonNull(action);
+            while (bits == 0) {
+                if (++wordIndex >= fence) {
+                    wordIndex = fence;
+                    return false;
+                }
+                bits = words[wordIndex];
+            }
+            int index = (wordIndex << LongBits.ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            action.accept(index);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            Objects.requireNonNull(action);
+            int w = wordIndex;
+            long word = bits;
+            int hi = fence;
+            while (w < hi) {
+                for (; word != 0; word &= word - 1) {
+                    action.accept((w << LongBits.ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word));
+                }
+                if (++w < hi) {
+                    word = words[w];
+                }
+            }
+            wordIndex = hi;
+            bits = 0;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int lo = wordIndex + 1;
+            int mid = (lo + fence) >>> 1;
+            if (mid - lo < MIN_SPLIT_WORDS) {
+                return null;
+            }
+            TrueIndexSpliterator prefix = new TrueIndexSpliterator(words, wordIndex, mid);
+            prefix.bits = bits;
+            wordIndex = mid;
+            bits = words[mid];
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (long) (fence - wordIndex) * Long.SIZE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Integer> getComparator() {
+            return null;
+        }
+    }
 }
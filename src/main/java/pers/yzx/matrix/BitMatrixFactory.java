@@ -1,120 +1,171 @@
 package pers.yzx.matrix;
 
+import pers.yzx.geometry.MultiPolygon;
 import pers.yzx.geometry.Point;
 import pers.yzx.geometry.Polygon;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class BitMatrixFactory {
 
+    /**
+     * Rasterizes a polygon over its bound, keeping every cell of a row between the column where an edge
+     * enters it, rounded down, and the column where the next edge leaves it, rounded up.
+     */
     public static BitMatrix createByScanLine(Polygon polygon, int resolution) {
         Bound bound = polygon.getBound(resolution);
         BitMatrix bitMatrix = new BitMatrix(bound);
+        new EdgeTable(polygon.getPoints(), bitMatrix).fill(bitMatrix);
+        return bitMatrix;
+    }
 
-        Map<Integer, List<Edge>> edgeTable = createEdgeTable(polygon, bitMatrix);
-        List<Edge> activeEdgeTable = new ArrayList<>();
-        for (int i = 0; i < bitMatrix.getRowCount(); i++) {
-            insertNetListToAet(edgeTable.get(i), activeEdgeTable);
-            fillAetScanLine(activeEdgeTable, i, bitMatrix);
-            removeNonActiveEdgeFromAet(activeEdgeTable, bitMatrix.getTopLeftY() - (i + 1) * bitMatrix.getResolution());
-            updateAndResortAet(activeEdgeTable);
-        }
-
+    /**
+     * Rasterizes a polygon and its holes over the bound of its outer ring. Unlike
+     * {@link #createByScanLine(Polygon, int)}, which keeps every cell an edge passes through, a cell is set
+     * when its centre is inside.
+     */
+    public static BitMatrix createByScanLine(Polygon polygon, int resolution, FillRule fillRule) {
+        BitMatrix bitMatrix = new BitMatrix(polygon.getBound(resolution));
+        fillByScanLine(bitMatrix, polygon.getRings(), fillRule);
         return bitMatrix;
     }
 
-    private static void updateAndResortAet(List<Edge> activeEdgeTable) {
-        for (Edge edge : activeEdgeTable) {
-            edge.x += edge.dx;
-        }
+    /**
+     * Rasterizes the parts of a multipolygon and their holes over the bound of the parts, a cell being set
+     * when its centre is inside.
+     */
+    public static BitMatrix createByScanLine(MultiPolygon multiPolygon, int resolution, FillRule fillRule) {
+        BitMatrix bitMatrix = new BitMatrix(multiPolygon.getBound(resolution));
+        fillByScanLine(bitMatrix, multiPolygon.getRings(), fillRule);
+        return bitMatrix;
     }
 
-    private static void removeNonActiveEdgeFromAet(List<Edge> activeEdgeTable, double nextLineY) {
-        activeEdgeTable.removeIf(edge -> edge.yMin >= nextLineY);
+    /**
+     * Sets the cells of the first floor of the matrix whose centre is inside the multipolygon, leaving the
+     * other cells as they are. Every ring goes into one edge table and the spans are written whole words
+     * at a time.
+     */
+    public static void fillByScanLine(BitMatrix bitMatrix, MultiPolygon multiPolygon, FillRule fillRule) {
+        fillByScanLine(bitMatrix, multiPolygon.getRings(), fillRule);
     }
 
-    private static void fillAetScanLine(List<Edge> activeEdgeTable, int i, BitMatrix bitMatrix) {
-        for (int j = 0; j < activeEdgeTable.size(); j += 2) {
-            double xIn = activeEdgeTable.get(j).x;
-            double xOut = activeEdgeTable.get(j + 1).x;
-            int indexIn = (int) ((xIn - bitMatrix.getTopLeftX()) / bitMatrix.getResolution());
-            int indexOut = (int) Math.ceil((xOut - bitMatrix.getTopLeftX()) / bitMatrix.getResolution());
-            for (int k = indexIn; k < indexOut; k++) {
-                bitMatrix.set(i, k, true);
-            }
+    private static void fillByScanLine(BitMatrix bitMatrix, List<List<Point>> rings, FillRule fillRule) {
+        ScanlineEngine engine = new ScanlineEngine();
+        engine.reset(bitMatrix.getBound());
+        for (List<Point> ring : rings) {
+            engine.addRing(ring);
         }
+        engine.fill(0, bitMatrix.getRowCount(), fillRule,
+                (rowIndex, fromColumn, toColumn) -> bitMatrix.setRowRange(0, rowIndex, fromColumn, toColumn, true));
     }
 
-    private static void insertNetListToAet(List<Edge> edges, List<Edge> activeEdgeTable) {
-        if (null == edges) {
-            return;
-        }
-        for (Edge edge : edges) {
-            boolean isAdd = false;
-            for (int i = 0; i < activeEdgeTable.size(); i++) {
-                Edge edgeNext = activeEdgeTable.get(i);
-                if (edge.x > edgeNext.x) {
+    /**
+     * The edges of a ring in parallel arrays, bucketed by the row where they enter the active edge table
+     * with a counting sort. The active edge table is kept sorted by x and slope with an insertion sort,
+     * linear on the nearly sorted order left by the previous row.
+     */
+    private static class EdgeTable {
+        private final double[] yMins;
+        private final double[] xs;
+        private final double[] dxs;
+        private final int[] bucketStarts;
+        private final int[] edges;
+        private final int[] active;
+
+        EdgeTable(List<Point> points, BitMatrix bitMatrix) {
+            int size = points.size();
+            int rowCount = bitMatrix.getRowCount();
+            int resolution = bitMatrix.getResolution();
+            yMins = new double[size];
+            xs = new double[size];
+            dxs = new double[size];
+            int[] startRows = new int[size];
+            bucketStarts = new int[rowCount + 1];
+            int edgeCount = 0;
+            for (int i = 0; i < size; i++) {
+                double x1 = points.get(i).getX();
+                double x2 = points.get((i + 1) % size).getX();
+                double y1 = points.get(i).getY();
+                double y2 = points.get((i + 1) % size).getY();
+
+                double yMin = y1 > y2 ? y2 : y1;
+                double yMax = y1 > y2 ? y1 : y2;
+                double slope = -(x1 - x2) / (y1 - y2);
+                int yMaxRowIndex = (int) Math.ceil(bitMatrix.getTopLeftY() - yMax) / resolution;
+                double yRow = bitMatrix.getTopLeftY() - yMaxRowIndex * resolution;
+                // 水平线直接舍弃
+                if (yRow <= y1 && y1 < yRow + resolution && yRow <= y2 && y2 < yRow + resolution) {
                     continue;
                 }
-                if (edge.x == edgeNext.x && edge.dx > edgeNext.dx) {
+                // edges starting outside the rows never become active
+                if (yMaxRowIndex < 0 || yMaxRowIndex >= rowCount) {
                     continue;
                 }
-                activeEdgeTable.add(i, edge);
-                isAdd = true;
-                break;
+                yMins[edgeCount] = yMin;
+                xs[edgeCount] = x1 + slope * (y1 - yRow);
+                dxs[edgeCount] = slope * resolution;
+                startRows[edgeCount] = yMaxRowIndex;
+                bucketStarts[yMaxRowIndex + 1]++;
+                edgeCount++;
+            }
+            for (int i = 0; i < rowCount; i++) {
+                bucketStarts[i + 1] += bucketStarts[i];
             }
-            if (!isAdd) {
-                activeEdgeTable.add(edge);
+            edges = new int[edgeCount];
+            int[] positions = Arrays.copyOf(bucketStarts, rowCount);
+            for (int e = 0; e < edgeCount; e++) {
+                edges[positions[startRows[e]]++] = e;
             }
+            active = new int[edgeCount];
         }
-    }
 
-    private static Map<Integer, List<Edge>> createEdgeTable(Polygon polygon, BitMatrix bitMatrix) {
-        List<Point> points = polygon.getPoints();
-        Map<Integer, List<Edge>> edgeTable = new HashMap<>();
-        int resolution = bitMatrix.getResolution();
-
-        for (int i = 0; i < points.size(); i++) {
-            double x1 = points.get(i).getX();
-            double x2 = points.get((i + 1) % points.size()).getX();
-            double y1 = points.get(i).getY();
-            double y2 = points.get((i + 1) % points.size()).getY();
-
-            double yMin = y1 > y2 ? y2 : y1;
-            double yMax = y1 > y2 ? y1 : y2;
-            double slope = -(x1 - x2) / (y1 - y2);
-            int yMaxRowIndex = (int) Math.ceil(bitMatrix.getTopLeftY() - yMax) / resolution;
-            double yRow = bitMatrix.getTopLeftY() - yMaxRowIndex * resolution;
-            // 水平线直接舍弃
-            if (yRow <= y1 && y1 < yRow + resolution && yRow <= y2 && y2 < yRow + resolution) {
-                continue;
-            }
-            double dx = slope * resolution;
-            double x = x1 + slope * (y1 - yRow);
-            // 创立新边,插入边表
-            Edge edge = new Edge(yMin, x, dx);
-            List<Edge> edgeList = edgeTable.get(yMaxRowIndex);
-            if (null == edgeList) {
-                edgeList = new ArrayList<>();
-                edgeTable.put(yMaxRowIndex, edgeList);
+        void fill(BitMatrix bitMatrix) {
+            int activeCount = 0;
+            for (int i = 0; i < bitMatrix.getRowCount(); i++) {
+                for (int k = bucketStarts[i]; k < bucketStarts[i + 1]; k++) {
+                    active[activeCount++] = edges[k];
+                }
+                sort(activeCount);
+                fillScanLine(activeCount, i, bitMatrix);
+                double nextLineY = bitMatrix.getTopLeftY() - (i + 1) * bitMatrix.getResolution();
+                int count = 0;
+                for (int k = 0; k < activeCount; k++) {
+                    int e = active[k];
+                    if (yMins[e] < nextLineY) {
+                        xs[e] += dxs[e];
+                        active[count++] = e;
+                    }
+                }
+                activeCount = count;
             }
-            edgeList.add(edge);
         }
-        return edgeTable;
-    }
 
-    static class Edge {
-        double yMin;
-        double x;
-        double dx;
+        private void sort(int activeCount) {
+            for (int k = 1; k < activeCount; k++) {
+                int e = active[k];
+                int m = k;
+                while (m > 0 && (xs[active[m - 1]] > xs[e] ||
+                        xs[active[m - 1]] == xs[e] && dxs[active[m - 1]] > dxs[e])) {
+                    active[m] = active[m - 1];
+                    m--;
+                }
+                active[m] = e;
+            }
+        }
 
-        Edge(double yMin, double x, double dx) {
-            this.yMin = yMin;
-            this.x = x;
-            this.dx = dx;
+        private void fillScanLine(int activeCount, int i, BitMatrix bitMatrix) {
+            for (int j = 0; j + 1 < activeCount; j += 2) {
+                double xIn = xs[active[j]];
+                double xOut = xs[active[j + 1]];
+                int indexIn = (int) ((xIn - bitMatrix.getTopLeftX()) / bitMatrix.getResolution());
+                int indexOut = (int) Math.ceil((xOut - bitMatrix.getTopLeftX()) / bitMatrix.getResolution());
+                int fromColumn = Math.max(indexIn, 0);
+                int toColumn = Math.min(indexOut, bitMatrix.getColumnCount());
+                if (fromColumn < toColumn) {
+                    bitMatrix.setRowRange(0, i, fromColumn, toColumn, true);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,20 @@
+package pers.yzx.matrix;
+
+/**
+ * Receives the cells of a matrix visited by {@link Matrix#forEachCell(CellConsumer)}.
+ *
+ * @param <E> the type of the elements
+ */
+@FunctionalInterface
+public interface CellConsumer<E> {
+
+    /**
+     * Performs this operation on a cell.
+     *
+     * @param floorIndex  floor index of the cell
+     * @param rowIndex    row index of the cell
+     * @param columnIndex column index of the cell
+     * @param element     the element of the cell, never {@code null}
+     */
+    void accept(int floorIndex, int rowIndex, int columnIndex, E element);
+}
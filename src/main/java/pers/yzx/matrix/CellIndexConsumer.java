@@ -0,0 +1,18 @@
+package pers.yzx.matrix;
+
+/**
+ * Receives the indexes of the cells of a matrix, such as the true cells visited by
+ * {@link BitMatrix#forEachTrueCell(CellIndexConsumer)}.
+ */
+@FunctionalInterface
+public interface CellIndexConsumer {
+
+    /**
+     * Performs this operation on a cell.
+     *
+     * @param floorIndex  floor index of the cell
+     * @param rowIndex    row index of the cell
+     * @param columnIndex column index of the cell
+     */
+    void accept(int floorIndex, int rowIndex, int columnIndex);
+}
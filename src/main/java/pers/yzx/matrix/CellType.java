@@ -0,0 +1,111 @@
+package pers.yzx.matrix;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Primitive cell types of the matrices that store their cells as raw bytes.
+ */
+public enum CellType {
+    SHORT(Short.BYTES) {
+        @Override
+        double getDouble(ByteBuffer buffer, int position) {
+            return buffer.getShort(position);
+        }
+
+        @Override
+        void putDouble(ByteBuffer buffer, int position, double value) {
+            buffer.putShort(position, (short) value);
+        }
+
+        @Override
+        Number get(ByteBuffer buffer, int position) {
+            return buffer.getShort(position);
+        }
+
+        @Override
+        void put(ByteBuffer buffer, int position, Number value) {
+            buffer.putShort(position, value.shortValue());
+        }
+    },
+    INT(Integer.BYTES) {
+        @Override
+        double getDouble(ByteBuffer buffer, int position) {
+            return buffer.getInt(position);
+        }
+
+        @Override
+        void putDouble(ByteBuffer buffer, int position, double value) {
+            buffer.putInt(position, (int) value);
+        }
+
+        @Override
+        Number get(ByteBuffer buffer, int position) {
+            return buffer.getInt(position);
+        }
+
+        @Override
+        void put(ByteBuffer buffer, int position, Number value) {
+            buffer.putInt(position, value.intValue());
+        }
+    },
+    FLOAT(Float.BYTES) {
+        @Override
+        double getDouble(ByteBuffer buffer, int position) {
+            return buffer.getFloat(position);
+        }
+
+        @Override
+        void putDouble(ByteBuffer buffer, int position, double value) {
+            buffer.putFloat(position, (float) value);
+        }
+
+        @Override
+        Number get(ByteBuffer buffer, int position) {
+            return buffer.getFloat(position);
+        }
+
+        @Override
+        void put(ByteBuffer buffer, int position, Number value) {
+            buffer.putFloat(position, value.floatValue());
+        }
+    },
+    DOUBLE(Double.BYTES) {
+        @Override
+        double getDouble(ByteBuffer buffer, int position) {
+            return buffer.getDouble(position);
+        }
+
+        @Override
+        void putDouble(ByteBuffer buffer, int position, double value) {
+            buffer.putDouble(position, value);
+        }
+
+        @Override
+        Number get(ByteBuffer buffer, int position) {
+            return buffer.getDouble(position);
+        }
+
+        @Override
+        void put(ByteBuffer buffer, int position, Number value) {
+            buffer.putDouble(position, value.doubleValue());
+        }
+    };
+
+    private final int byteSize;
+
+    CellType(int byteSize) {
+        this.byteSize = byteSize;
+    }
+
+    public int getByteSize() {
+        return byteSize;
+    }
+
+    abstract double getDouble(ByteBuffer buffer, int position);
+
+    abstract void putDouble(ByteBuffer buffer, int position, double value);
+
+    abstract Number get(ByteBuffer buffer, int position);
+
+    abstract void put(ByteBuffer buffer, int position, Number value);
+}
@@ -0,0 +1,726 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link BitMatrix} counterpart compressed in the manner of roaring bitmaps.
+ * <p>
+ * The flat indices are split into chunks of 65536 cells, and the true cells of each chunk are kept in
+ * the smallest of three containers: a sorted array of positions (up to 4096 of them), a bitmap of 1024
+ * words, or a list of runs. Empty chunks take no container at all, so a polygon mask, made of one run
+ * per row, costs a few bytes per row instead of a bit per cell. A write into a run container turns it
+ * into an array or bitmap container until {@link #optimize()} is called.
+ */
+public class CompressedBitMatrix extends AbstractMatrix<Boolean> {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final int CHUNK_WORDS = 1 << CHUNK_SHIFT - LongBits.ADDRESS_BITS_PER_WORD;
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private Container[] containers; // by chunk, null for a chunk without true cells
+    private int trueElementCount;
+
+    public CompressedBitMatrix(Bound bound) {
+        this(bound, 1);
+    }
+
+    public CompressedBitMatrix(Bound bound, int floorCount) {
+        super(bound, floorCount);
+        this.containers = new Container[(getCount() + CHUNK_MASK) >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * Compresses a bit matrix, which is left unchanged.
+     */
+    public static CompressedBitMatrix of(BitMatrix matrix) {
+        CompressedBitMatrix compressed = new CompressedBitMatrix(matrix.getBound(), matrix.getFloorCount());
+        long[] words = matrix.toLongArray();
+        Container[] containers = compressed.containers;
+        IntStream.range(0, containers.length).parallel().forEach(k -> {
+            long[] chunk = new long[CHUNK_WORDS];
+            int from = k * CHUNK_WORDS;
+            System.arraycopy(words, from, chunk, 0, Math.min(CHUNK_WORDS, words.length - from));
+            containers[k] = Container.of(chunk);
+        });
+        compressed.trueElementCount = matrix.getTrueElementsCount();
+        return compressed;
+    }
+
+    public BitMatrix toBitMatrix() {
+        long[] words = new long[LongBits.wordCount(getCount())];
+        IntStream.range(0, containers.length).parallel().forEach(k -> {
+            if (containers[k] != null) {
+                long[] chunk = new long[CHUNK_WORDS];
+                containers[k].toWords(chunk);
+                int from = k * CHUNK_WORDS;
+                System.arraycopy(chunk, 0, words, from, Math.min(CHUNK_WORDS, words.length - from));
+            }
+        });
+        return new BitMatrix(bound, floorCount, words);
+    }
+
+    @Override
+    public int getEffectiveCount() {
+        return getFloorCount() * bound.getCount();
+    }
+
+    public int getTrueElementsCount() {
+        return trueElementCount;
+    }
+
+    /**
+     * Returns an estimate of the memory taken by the containers, in bytes.
+     */
+    public long getByteSize() {
+        long size = (long) containers.length * 8;
+        for (Container container : containers) {
+            if (container != null) {
+                size += container.getByteSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Stores every chunk in its smallest container again, after writes.
+     */
+    public void optimize() {
+        IntStream.range(0, containers.length).parallel().forEach(k -> {
+            if (containers[k] != null) {
+                long[] chunk = new long[CHUNK_WORDS];
+                containers[k].toWords(chunk);
+                containers[k] = Container.of(chunk);
+            }
+        });
+    }
+
+    @Override
+    public Boolean get(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return get(getFlatIndex(floorIndex, rowIndex, columnIndex));
+    }
+
+    @Override
+    public Boolean get(int flatIndex) {
+        if (flatIndex < 0 || flatIndex >= getCount()) {
+            return null;
+        }
+        Container container = containers[flatIndex >>> CHUNK_SHIFT];
+        return container != null && container.contains(flatIndex & CHUNK_MASK);
+    }
+
+    @Override
+    public void set(int flatIndex, Boolean element) {
+        rangeCheck(flatIndex);
+        boolean value = element;
+        int k = flatIndex >>> CHUNK_SHIFT;
+        Container container = containers[k];
+        int before = container == null ? 0 : container.cardinality();
+        if (value) {
+            container = (container == null ? new ArrayContainer() : container).add(flatIndex & CHUNK_MASK);
+        } else if (container != null) {
+            container = container.remove(flatIndex & CHUNK_MASK);
+        }
+        containers[k] = container;
+        trueElementCount += (container == null ? 0 : container.cardinality()) - before;
+    }
+
+    @Override
+    public void set(int floorIndex, int rowIndex, int columnIndex, Boolean element) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        set(getFlatIndex(floorIndex, rowIndex, columnIndex), element);
+    }
+
+    /**
+     * Returns the flat index of the first true cell at or after {@code fromIndex}, or -1 if there is none.
+     */
+    public int nextSetBit(int fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        for (int k = fromIndex >>> CHUNK_SHIFT, low = fromIndex & CHUNK_MASK; k < containers.length; k++, low = 0) {
+            Container container = containers[k];
+            if (container != null) {
+                int next = container.next(low);
+                if (next >= 0) {
+                    return k << CHUNK_SHIFT | next;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void clear() {
+        bound = new Bound(0, 0, 0, 0, 0);
+        containers = new Container[0];
+        trueElementCount = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Filling with {@code true} stores a single run per chunk.
+     *
+     * @throws NullPointerException if the element is {@code null}
+     */
+    @Override
+    public void fill(Boolean element) {
+        boolean value = element;
+        int count = getCount();
+        for (int k = 0; k < containers.length; k++) {
+            containers[k] = value ? RunContainer.range(Math.min(CHUNK_MASK + 1, count - (k << CHUNK_SHIFT))) : null;
+        }
+        trueElementCount = value ? count : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The operator is applied once to {@code true} and once to {@code false}, and must therefore be a
+     * function of its argument only.
+     */
+    @Override
+    public void replaceAll(UnaryOperator<Boolean> operator) {
+        Objects.requireNonNull(operator);
+        boolean whenTrue = operator.apply(Boolean.TRUE);
+        boolean whenFalse = operator.apply(Boolean.FALSE);
+        if (whenTrue == whenFalse) {
+            fill(whenTrue);
+        } else if (!whenTrue) {
+            int count = getCount();
+            IntStream.range(0, containers.length).parallel().forEach(k -> {
+                long[] chunk = new long[CHUNK_WORDS];
+                if (containers[k] != null) {
+                    containers[k].toWords(chunk);
+                }
+                LongBits.flip(chunk, 0, Math.min(CHUNK_MASK + 1, count - (k << CHUNK_SHIFT)));
+                containers[k] = Container.of(chunk);
+            });
+            trueElementCount = count - trueElementCount;
+        }
+    }
+
+    /**
+     * Combines the other matrix into this one, in place: {@code this = this & other}.
+     *
+     * @return the number of true cells of this matrix afterwards
+     */
+    public int and(CompressedBitMatrix other) {
+        return apply(BitMatrix.BitOperation.AND, other);
+    }
+
+    /**
+     * Combines the other matrix into this one, in place: {@code this = this | other}.
+     *
+     * @return the number of true cells of this matrix afterwards
+     */
+    public int or(CompressedBitMatrix other) {
+        return apply(BitMatrix.BitOperation.OR, other);
+    }
+
+    /**
+     * Combines the other matrix into this one, in place: {@code this = this ^ other}.
+     *
+     * @return the number of true cells of this matrix afterwards
+     */
+    public int xor(CompressedBitMatrix other) {
+        return apply(BitMatrix.BitOperation.XOR, other);
+    }
+
+    /**
+     * Combines the other matrix into this one, in place: {@code this = this & ~other}.
+     *
+     * @return the number of true cells of this matrix afterwards
+     */
+    public int andNot(CompressedBitMatrix other) {
+        return apply(BitMatrix.BitOperation.AND_NOT, other);
+    }
+
+    /**
+     * Combines the other matrix into this one, in place, chunk by chunk on the fork/join pool.
+     * <p>
+     * Unlike {@link BitMatrix#apply(BitMatrix.BitOperation, BitMatrix)} the matrices must have the same
+     * shape, their cells being matched by flat index. Chunks empty in either operand are resolved without
+     * reading the other one, an array container is intersected by probing the other container, and two run
+     * containers are combined by merging their runs; the other chunks are combined word by word and
+     * compressed again.
+     *
+     * @return the number of true cells of this matrix afterwards
+     * @throws IllegalArgumentException if the shapes differ
+     */
+    public int apply(BitMatrix.BitOperation operation, CompressedBitMatrix other) {
+        Objects.requireNonNull(operation);
+        checkShape(other);
+        Container[] otherContainers = other == this ? containers.clone() : other.containers;
+        trueElementCount = IntStream.range(0, containers.length).parallel().map(k -> {
+            Container container = combine(operation, containers[k], otherContainers[k]);
+            containers[k] = container;
+            return container == null ? 0 : container.cardinality();
+        }).sum();
+        return trueElementCount;
+    }
+
+    private static Container combine(BitMatrix.BitOperation operation, Container a, Container b) {
+        switch (operation) {
+            case AND:
+                if (a == null || b == null) {
+                    return null;
+                }
+                if (a instanceof ArrayContainer) {
+                    return ((ArrayContainer) a).filter(b, true);
+                }
+                if (b instanceof ArrayContainer) {
+                    return ((ArrayContainer) b).filter(a, true);
+                }
+                break;
+            case AND_NOT:
+                if (a == null || b == null) {
+                    return a;
+                }
+                if (a instanceof ArrayContainer) {
+                    return ((ArrayContainer) a).filter(b, false);
+                }
+                break;
+            default:
+                if (a == null) {
+                    return b == null ? null : b.copy();
+                }
+                if (b == null) {
+                    return a;
+                }
+        }
+        if (a instanceof RunContainer && b instanceof RunContainer) {
+            return ((RunContainer) a).combine(operation, (RunContainer) b);
+        }
+        long[] words = new long[CHUNK_WORDS];
+        long[] otherWords = new long[CHUNK_WORDS];
+        a.toWords(words);
+        b.toWords(otherWords);
+        for (int i = 0; i < CHUNK_WORDS; i++) {
+            words[i] = operation.apply(words[i], otherWords[i]);
+        }
+        return Container.of(words);
+    }
+
+    @Override
+    public void forEachCell(CellConsumer<? super Boolean> action) {
+        Objects.requireNonNull(action);
+        int rowCount = bound.getRowCount();
+        int columnCount = bound.getColumnCount();
+        int flatIndex = 0;
+        int nextTrue = nextSetBit(0);
+        for (int f = 0; f < floorCount; f++) {
+            for (int i = 0; i < rowCount; i++) {
+                for (int j = 0; j < columnCount; j++, flatIndex++) {
+                    if (flatIndex == nextTrue) {
+                        action.accept(f, i, j, Boolean.TRUE);
+                        nextTrue = nextSetBit(flatIndex + 1);
+                    } else {
+                        action.accept(f, i, j, Boolean.FALSE);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return bound.getRowCount() == 0 && bound.getColumnCount() == 0;
+    }
+
+    @Override
+    public Iterator<Cursor<Index, Boolean>> iterator() {
+        return new MatrixIterator();
+    }
+
+    @Override
+    public Iterator<Index> indexIterator() {
+        return new IndexItr();
+    }
+
+    @Override
+    public IntIterator keyIterator() {
+        return new KeyIterator();
+    }
+
+    /**
+     * The true cells of a chunk, as positions in {@code [0, 65536)}.
+     */
+    private abstract static class Container {
+
+        /**
+         * Returns the smallest container holding the set bits of a chunk of 1024 words.
+         */
+        static Container of(long[] words) {
+            int cardinality = 0;
+            int runCount = 0;
+            long carry = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+                runCount += Long.bitCount(word & ~(word << 1 | carry));
+                carry = word >>> (Long.SIZE - 1);
+            }
+            if (cardinality == 0) {
+                return null;
+            }
+            if (prefersRuns(runCount, cardinality)) {
+                return RunContainer.of(words, runCount, cardinality);
+            }
+            if (cardinality < ARRAY_MAX_SIZE) {
+                return ArrayContainer.of(words, cardinality);
+            }
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        /**
+         * Returns whether runs are smaller than both an array and a bitmap of the same positions.
+         */
+        static boolean prefersRuns(int runCount, int cardinality) {
+            int arraySize = cardinality <= ARRAY_MAX_SIZE ? 2 * cardinality : Integer.MAX_VALUE;
+            int runSize = 4 * runCount;
+            return runSize < arraySize && runSize < 8 * CHUNK_WORDS;
+        }
+
+        abstract boolean contains(int low);
+
+        abstract int cardinality();
+
+        /**
+         * Returns the first position at or after {@code low}, or -1.
+         */
+        abstract int next(int low);
+
+        /**
+         * Sets the bits of the positions into the 1024 words.
+         */
+        abstract void toWords(long[] words);
+
+        /**
+         * Adds a position and returns the container now holding the chunk.
+         */
+        abstract Container add(int low);
+
+        /**
+         * Removes a position and returns the container now holding the chunk, {@code null} if empty.
+         */
+        abstract Container remove(int low);
+
+        abstract int getByteSize();
+
+        Container copy() {
+            long[] words = new long[CHUNK_WORDS];
+            toWords(words);
+            return of(words);
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        static ArrayContainer of(long[] words, int cardinality) {
+            char[] values = new char[cardinality];
+            int size = 0;
+            for (int w = 0; w < words.length; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    values[size++] = (char) (w << LongBits.ADDRESS_BITS_PER_WORD | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new ArrayContainer(values, size);
+        }
+
+        /**
+         * Returns the positions of this container that are, or are not, in the other one.
+         */
+        Container filter(Container other, boolean kept) {
+            char[] filtered = new char[size];
+            int filteredSize = 0;
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i]) == kept) {
+                    filtered[filteredSize++] = values[i];
+                }
+            }
+            return filteredSize == 0 ? null : new ArrayContainer(filtered, filteredSize);
+        }
+
+        @Override
+        boolean contains(int low) {
+            return Arrays.binarySearch(values, 0, size, (char) low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        int next(int low) {
+            int i = Arrays.binarySearch(values, 0, size, (char) low);
+            if (i >= 0) {
+                return low;
+            }
+            i = -i - 1;
+            return i < size ? values[i] : -1;
+        }
+
+        @Override
+        void toWords(long[] words) {
+            for (int i = 0; i < size; i++) {
+                words[values[i] >>> LongBits.ADDRESS_BITS_PER_WORD] |= 1L << values[i];
+            }
+        }
+
+        @Override
+        Container add(int low) {
+            int i = Arrays.binarySearch(values, 0, size, (char) low);
+            if (i >= 0) {
+                return this;
+            }
+            if (size == ARRAY_MAX_SIZE) {
+                long[] words = new long[CHUNK_WORDS];
+                toWords(words);
+                return new BitmapContainer(words, size).add(low);
+            }
+            i = -i - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX_SIZE, size + (size >> 1) + 1));
+            }
+            System.arraycopy(values, i, values, i + 1, size - i);
+            values[i] = (char) low;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            int i = Arrays.binarySearch(values, 0, size, (char) low);
+            if (i < 0) {
+                return this;
+            }
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            return --size == 0 ? null : this;
+        }
+
+        @Override
+        int getByteSize() {
+            return 16 + 2 * values.length;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(int low) {
+            return LongBits.get(words, low);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int next(int low) {
+            return LongBits.nextSetBit(words, low, CHUNK_MASK + 1);
+        }
+
+        @Override
+        void toWords(long[] words) {
+            for (int i = 0; i < CHUNK_WORDS; i++) {
+                words[i] |= this.words[i];
+            }
+        }
+
+        @Override
+        Container add(int low) {
+            if (!LongBits.set(words, low, true)) {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            if (LongBits.set(words, low, false)) {
+                cardinality--;
+                if (cardinality <= ARRAY_MAX_SIZE) {
+                    return cardinality == 0 ? null : ArrayContainer.of(words, cardinality);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        int getByteSize() {
+            return 16 + 8 * CHUNK_WORDS;
+        }
+    }
+
+    /**
+     * Runs of positions, run {@code i} covering {@code [starts[i], starts[i] + lengths[i]]}.
+     */
+    private static class RunContainer extends Container {
+        private final char[] starts;
+        private final char[] lengths; // length of each run minus one
+        private final int cardinality;
+
+        RunContainer(char[] starts, char[] lengths, int cardinality) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * Returns a container of the positions {@code [0, length)}.
+         */
+        static RunContainer range(int length) {
+            return new RunContainer(new char[]{0}, new char[]{(char) (length - 1)}, length);
+        }
+
+        static RunContainer of(long[] words, int runCount, int cardinality) {
+            char[] starts = new char[runCount];
+            char[] lengths = new char[runCount];
+            int end = CHUNK_MASK + 1;
+            for (int i = 0, start = LongBits.nextSetBit(words, 0, end); start >= 0; i++) {
+                int stop = LongBits.nextClearBit(words, start, end);
+                starts[i] = (char) start;
+                lengths[i] = (char) (stop - start - 1);
+                start = LongBits.nextSetBit(words, stop, end);
+            }
+            return new RunContainer(starts, lengths, cardinality);
+        }
+
+        /**
+         * Combines the runs of two containers by merging their boundaries, without expanding either of
+         * them into words.
+         */
+        Container combine(BitMatrix.BitOperation operation, RunContainer other) {
+            int capacity = starts.length + other.starts.length;
+            char[] resultStarts = new char[capacity];
+            char[] resultLengths = new char[capacity];
+            int runCount = 0;
+            int cardinality = 0;
+            int start = -1;
+            // i and j count the boundaries passed in each container, a position being inside after an odd count
+            for (int i = 0, j = 0; ; ) {
+                int boundary = boundary(i);
+                int otherBoundary = other.boundary(j);
+                int position = Math.min(boundary, otherBoundary);
+                if (position == Integer.MAX_VALUE) {
+                    break;
+                }
+                if (boundary == position) {
+                    i++;
+                }
+                if (otherBoundary == position) {
+                    j++;
+                }
+                boolean inside = operation.apply(-(i & 1), -(j & 1)) != 0;
+                if (inside && start < 0) {
+                    start = position;
+                } else if (!inside && start >= 0) {
+                    resultStarts[runCount] = (char) start;
+                    resultLengths[runCount++] = (char) (position - start - 1);
+                    cardinality += position - start;
+                    start = -1;
+                }
+            }
+            if (runCount == 0) {
+                return null;
+            }
+            RunContainer result = new RunContainer(Arrays.copyOf(resultStarts, runCount),
+                    Arrays.copyOf(resultLengths, runCount), cardinality);
+            return prefersRuns(runCount, cardinality) ? result : result.uncompressed();
+        }
+
+        /**
+         * Returns the {@code k}th boundary of the runs, the start of run {@code k / 2} for an even
+         * {@code k} and the position after its end otherwise, or {@link Integer#MAX_VALUE} past the last.
+         */
+        private int boundary(int k) {
+            if (k >= 2 * starts.length) {
+                return Integer.MAX_VALUE;
+            }
+            int i = k >>> 1;
+            return (k & 1) == 0 ? starts[i] : starts[i] + lengths[i] + 1;
+        }
+
+        /**
+         * Returns the run starting at or before the position, or -1.
+         */
+        private int run(int low) {
+            int i = Arrays.binarySearch(starts, (char) low);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        @Override
+        boolean contains(int low) {
+            int i = run(low);
+            return i >= 0 && low <= starts[i] + lengths[i];
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int next(int low) {
+            int i = run(low);
+            if (i >= 0 && low <= starts[i] + lengths[i]) {
+                return low;
+            }
+            return i + 1 < starts.length ? starts[i + 1] : -1;
+        }
+
+        @Override
+        void toWords(long[] words) {
+            for (int i = 0; i < starts.length; i++) {
+                LongBits.set(words, starts[i], starts[i] + lengths[i] + 1);
+            }
+        }
+
+        private Container uncompressed() {
+            long[] words = new long[CHUNK_WORDS];
+            toWords(words);
+            return cardinality <= ARRAY_MAX_SIZE ? ArrayContainer.of(words, cardinality) :
+                    new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        Container add(int low) {
+            return contains(low) ? this : uncompressed().add(low);
+        }
+
+        @Override
+        Container remove(int low) {
+            return contains(low) ? uncompressed().remove(low) : this;
+        }
+
+        @Override
+        int getByteSize() {
+            return 24 + 4 * starts.length;
+        }
+    }
+}
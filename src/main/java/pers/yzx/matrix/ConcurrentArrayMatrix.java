@@ -0,0 +1,190 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * A dense {@link ConcurrentMatrix} whose cells are atomic references, one array per floor.
+ * <p>
+ * Every write is a single compare-and-set on its cell, so writers of different cells never block each
+ * other; the effective count is kept in a {@link LongAdder}. The remapping functions of
+ * {@link #compute} and {@link #merge} may be applied more than once under contention and should be
+ * free of side effects.
+ *
+ * @param <E> the type of the elements
+ */
+public class ConcurrentArrayMatrix<E> extends AbstractMatrix<E> implements ConcurrentMatrix<E> {
+    private final AtomicReferenceArray<E>[] elementData;
+    private final LongAdder effectiveCount = new LongAdder();
+
+    public ConcurrentArrayMatrix(Bound bound) {
+        this(bound, 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentArrayMatrix(Bound bound, int floorCount) {
+        super(bound, floorCount);
+        this.elementData = new AtomicReferenceArray[floorCount];
+        for (int i = 0; i < floorCount; i++) {
+            elementData[i] = new AtomicReferenceArray<>(bound.getCount());
+        }
+    }
+
+    @Override
+    public int getEffectiveCount() {
+        return effectiveCount.intValue();
+    }
+
+    @Override
+    public E get(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return elementData[floorIndex].get(rowIndex * bound.getColumnCount() + columnIndex);
+    }
+
+    @Override
+    public E get(int flatIndex) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        return elementData[flatIndex / floorSize].get(flatIndex % floorSize);
+    }
+
+    @Override
+    public void set(int floorIndex, int rowIndex, int columnIndex, E element) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        E old = elementData[floorIndex].getAndSet(rowIndex * bound.getColumnCount() + columnIndex, element);
+        count(old, element);
+    }
+
+    @Override
+    public void set(int flatIndex, E element) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        E old = elementData[flatIndex / floorSize].getAndSet(flatIndex % floorSize, element);
+        count(old, element);
+    }
+
+    private void count(E oldElement, E newElement) {
+        if (oldElement == null) {
+            if (newElement != null) {
+                effectiveCount.increment();
+            }
+        } else if (newElement == null) {
+            effectiveCount.decrement();
+        }
+    }
+
+    @Override
+    public E compute(int floorIndex, int rowIndex, int columnIndex, UnaryOperator<E> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        AtomicReferenceArray<E> floorData = elementData[floorIndex];
+        int i = rowIndex * bound.getColumnCount() + columnIndex;
+        while (true) {
+            E old = floorData.get(i);
+            E element = remappingFunction.apply(old);
+            if (floorData.compareAndSet(i, old, element)) {
+                count(old, element);
+                return element;
+            }
+        }
+    }
+
+    @Override
+    public E merge(int floorIndex, int rowIndex, int columnIndex, E element, BinaryOperator<E> remappingFunction) {
+        Objects.requireNonNull(element);
+        Objects.requireNonNull(remappingFunction);
+        return compute(floorIndex, rowIndex, columnIndex,
+                old -> old == null ? element : remappingFunction.apply(old, element));
+    }
+
+    @Override
+    public E putIfAbsent(int floorIndex, int rowIndex, int columnIndex, E element) {
+        Objects.requireNonNull(element);
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        AtomicReferenceArray<E> floorData = elementData[floorIndex];
+        int i = rowIndex * bound.getColumnCount() + columnIndex;
+        if (floorData.compareAndSet(i, null, element)) {
+            effectiveCount.increment();
+            return null;
+        }
+        return floorData.get(i);
+    }
+
+    @Override
+    boolean isParallelWritable() {
+        return true;
+    }
+
+    @Override
+    public void fill(E element) {
+        MatrixTasks.forEachBlock(this, (fromIndex, toIndex) -> {
+            for (int i = fromIndex; i < toIndex; i++) {
+                set(i, element);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each cell is updated atomically on the fork/join pool, by blocks of rows.
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        int floorSize = bound.getCount();
+        MatrixTasks.forEachBlock(this, (fromIndex, toIndex) -> {
+            AtomicReferenceArray<E> floorData = elementData[fromIndex / floorSize];
+            for (int i = fromIndex % floorSize, hi = i + toIndex - fromIndex; i < hi; i++) {
+                while (true) {
+                    E old = floorData.get(i);
+                    if (old == null) {
+                        break;
+                    }
+                    E element = operator.apply(old);
+                    if (floorData.compareAndSet(i, old, element)) {
+                        count(old, element);
+                        break;
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        for (AtomicReferenceArray<E> floorData : elementData) {
+            for (int i = 0; i < floorData.length(); i++) {
+                floorData.set(i, null);
+            }
+        }
+        bound = new Bound(0, 0, 0, 0, 0);
+        effectiveCount.reset();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return effectiveCount.sum() == 0;
+    }
+
+    @Override
+    public Iterator<Cursor<Index, E>> iterator() {
+        return new MatrixIterator();
+    }
+
+    @Override
+    public Iterator<Index> indexIterator() {
+        return new IndexItr();
+    }
+
+    @Override
+    public IntIterator keyIterator() {
+        return new KeyIterator();
+    }
+}
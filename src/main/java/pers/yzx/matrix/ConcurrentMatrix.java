@@ -0,0 +1,53 @@
+package pers.yzx.matrix;
+
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link Matrix} that may be read and written by several threads at once, with atomic per-cell
+ * read-modify-write operations.
+ * <p>
+ * Iterators, spliterators and bulk operations are weakly consistent: they reflect the cells at some
+ * point at or since their creation and never throw {@link java.util.ConcurrentModificationException}.
+ *
+ * @param <E> the type of the elements
+ */
+public interface ConcurrentMatrix<E> extends Matrix<E> {
+
+    /**
+     * Atomically replaces the element of a cell with the result of the remapping function applied to
+     * the current element, {@code null} for an empty cell. A {@code null} result empties the cell.
+     *
+     * @param floorIndex          floor index of the cell
+     * @param rowIndex            row index of the cell
+     * @param columnIndex         column index of the cell
+     * @param remappingFunction   computes the new element from the current one
+     * @return the new element of the cell
+     */
+    E compute(int floorIndex, int rowIndex, int columnIndex, UnaryOperator<E> remappingFunction);
+
+    /**
+     * Atomically stores the element into an empty cell, or replaces the element of an occupied cell with
+     * the result of the remapping function applied to the current element and the given one. A
+     * {@code null} result empties the cell.
+     *
+     * @param floorIndex        floor index of the cell
+     * @param rowIndex          row index of the cell
+     * @param columnIndex       column index of the cell
+     * @param element           the element to merge, not {@code null}
+     * @param remappingFunction merges the current element with the given one
+     * @return the new element of the cell
+     */
+    E merge(int floorIndex, int rowIndex, int columnIndex, E element, BinaryOperator<E> remappingFunction);
+
+    /**
+     * Atomically stores the element into the cell if the cell is empty.
+     *
+     * @param floorIndex  floor index of the cell
+     * @param rowIndex    row index of the cell
+     * @param columnIndex column index of the cell
+     * @param element     the element to store, not {@code null}
+     * @return the previous element of the cell, {@code null} if it was empty
+     */
+    E putIfAbsent(int floorIndex, int rowIndex, int columnIndex, E element);
+}
@@ -0,0 +1,393 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * A sparse {@link ConcurrentMatrix} partitioned by floor and by key hash into lock stripes.
+ * <p>
+ * Each floor is split into a power-of-two number of stripes, each one a hash table guarded by its own
+ * monitor, so threads writing different stripes never contend. {@link #compute} and {@link #merge} run
+ * their remapping function once, while holding the stripe lock; the function must not access the
+ * matrix. Iteration walks one stripe snapshot at a time.
+ *
+ * @param <E> the type of the elements
+ */
+public class ConcurrentSparseMatrix<E> extends AbstractMatrix<E> implements ConcurrentMatrix<E> {
+    private static final int DEFAULT_STRIPE_COUNT = 64;
+    private final int stripeShift;
+    private final SparseMatrix.MyInt2ObjectOpenHashMap<E>[] stripes; // floor * stripe count + stripe
+    private final LongAdder effectiveCount = new LongAdder();
+
+    public ConcurrentSparseMatrix(Bound bound) {
+        this(bound, 1, DEFAULT_STRIPE_COUNT);
+    }
+
+    public ConcurrentSparseMatrix(Bound bound, int floorCount) {
+        this(bound, floorCount, DEFAULT_STRIPE_COUNT);
+    }
+
+    /**
+     * Creates a matrix with at least {@code concurrencyLevel} lock stripes per floor.
+     *
+     * @param bound            bound of the matrix
+     * @param floorCount       floor count of the matrix
+     * @param concurrencyLevel the estimated number of concurrently writing threads
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentSparseMatrix(Bound bound, int floorCount, int concurrencyLevel) {
+        super(bound, floorCount);
+        if (concurrencyLevel <= 0)
+            throw new IllegalArgumentException("Illegal concurrency level: " + concurrencyLevel);
+        int stripeCount = HashCommon.nextPowerOfTwo(Math.min(concurrencyLevel, 1 << 16));
+        this.stripeShift = Integer.numberOfTrailingZeros(stripeCount);
+        this.stripes = new SparseMatrix.MyInt2ObjectOpenHashMap[floorCount * stripeCount];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new SparseMatrix.MyInt2ObjectOpenHashMap<>();
+        }
+    }
+
+    private SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe(int floorIndex, int floorFlatIndex) {
+        // high bits of the mixed key, the low ones select the slot inside the stripe table
+        int stripe = stripeShift == 0 ? 0 : HashCommon.mix(floorFlatIndex) >>> (Integer.SIZE - stripeShift);
+        return stripes[(floorIndex << stripeShift) + stripe];
+    }
+
+    @Override
+    public int getEffectiveCount() {
+        return effectiveCount.intValue();
+    }
+
+    @Override
+    public E get(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return elementData(floorIndex, rowIndex * bound.getColumnCount() + columnIndex);
+    }
+
+    @Override
+    public E get(int flatIndex) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        return elementData(flatIndex / floorSize, flatIndex % floorSize);
+    }
+
+    private E elementData(int floorIndex, int floorFlatIndex) {
+        SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe = stripe(floorIndex, floorFlatIndex);
+        synchronized (stripe) {
+            return stripe.get(floorFlatIndex);
+        }
+    }
+
+    @Override
+    public void set(int floorIndex, int rowIndex, int columnIndex, E element) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        elementData(floorIndex, rowIndex * bound.getColumnCount() + columnIndex, element);
+    }
+
+    @Override
+    public void set(int flatIndex, E element) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        elementData(flatIndex / floorSize, flatIndex % floorSize, element);
+    }
+
+    private void elementData(int floorIndex, int floorFlatIndex, E element) {
+        SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe = stripe(floorIndex, floorFlatIndex);
+        E old;
+        synchronized (stripe) {
+            old = element == null ? stripe.remove(floorFlatIndex) : stripe.put(floorFlatIndex, element);
+        }
+        count(old, element);
+    }
+
+    private void count(E oldElement, E newElement) {
+        if (oldElement == null) {
+            if (newElement != null) {
+                effectiveCount.increment();
+            }
+        } else if (newElement == null) {
+            effectiveCount.decrement();
+        }
+    }
+
+    @Override
+    public E compute(int floorIndex, int rowIndex, int columnIndex, UnaryOperator<E> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        int key = rowIndex * bound.getColumnCount() + columnIndex;
+        SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe = stripe(floorIndex, key);
+        E old;
+        E element;
+        synchronized (stripe) {
+            old = stripe.get(key);
+            element = remappingFunction.apply(old);
+            if (element == null) {
+                stripe.remove(key);
+            } else {
+                stripe.put(key, element);
+            }
+        }
+        count(old, element);
+        return element;
+    }
+
+    @Override
+    public E merge(int floorIndex, int rowIndex, int columnIndex, E element, BinaryOperator<E> remappingFunction) {
+        Objects.requireNonNull(element);
+        Objects.requireNonNull(remappingFunction);
+        return compute(floorIndex, rowIndex, columnIndex,
+                old -> old == null ? element : remappingFunction.apply(old, element));
+    }
+
+    @Override
+    public E putIfAbsent(int floorIndex, int rowIndex, int columnIndex, E element) {
+        Objects.requireNonNull(element);
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        int key = rowIndex * bound.getColumnCount() + columnIndex;
+        SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe = stripe(floorIndex, key);
+        E old;
+        synchronized (stripe) {
+            old = stripe.putIfAbsent(key, element);
+        }
+        if (old == null) {
+            effectiveCount.increment();
+        }
+        return old;
+    }
+
+    @Override
+    boolean isParallelWritable() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The stripes are updated in parallel, each one under its lock, visiting only the occupied cells.
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        IntStream.range(0, stripes.length).parallel().forEach(s -> {
+            SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe = stripes[s];
+            IntArrayList removed = new IntArrayList();
+            synchronized (stripe) {
+                int[] key = stripe.getKey();
+                E[] value = stripe.getValue();
+                int n = stripe.getTableSize();
+                for (int i = 0; i < n; i++) {
+                    if (key[i] != 0 && (value[i] = operator.apply(value[i])) == null) {
+                        removed.add(key[i]);
+                    }
+                }
+                if (stripe.hasNullKey() && (value[n] = operator.apply(value[n])) == null) {
+                    removed.add(0);
+                }
+                // removing shifts entries, so it waits for the scan to finish
+                for (int i = 0; i < removed.size(); i++) {
+                    stripe.remove(removed.getInt(i));
+                }
+            }
+            effectiveCount.add(-removed.size());
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The stripes are folded in parallel, each one under its lock, visiting only the occupied cells.
+     */
+    @Override
+    public <R> R reduce(R identity, BiFunction<R, ? super E, R> accumulator, BinaryOperator<R> combiner) {
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        return IntStream.range(0, stripes.length).parallel().mapToObj(s -> {
+            R result = identity;
+            SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe = stripes[s];
+            synchronized (stripe) {
+                for (E e : stripe.values()) {
+                    result = accumulator.apply(result, e);
+                }
+            }
+            return result;
+        }).reduce(identity, combiner);
+    }
+
+    @Override
+    public void forEachCell(CellConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int columnCount = bound.getColumnCount();
+        StripeSnapshot snapshot = new StripeSnapshot();
+        for (int s = 0; s < stripes.length; s++) {
+            snapshot.take(s);
+            for (int i = 0; i < snapshot.size; i++) {
+                int key = snapshot.keys[i];
+                action.accept(s >>> stripeShift, key / columnCount, key % columnCount, snapshot.values[i]);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        bound = new Bound(0, 0, 0, 0, 0);
+        effectiveCount.reset();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return effectiveCount.sum() == 0;
+    }
+
+    @Override
+    public Spliterator<Cursor<Index, E>> spliterator() {
+        return new StripeSpliterator(0, stripes.length);
+    }
+
+    @Override
+    public Iterator<Cursor<Index, E>> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public Iterator<Index> indexIterator() {
+        Iterator<Cursor<Index, E>> iterator = iterator();
+        return new Iterator<Index>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Index next() {
+                return iterator.next().getIndex();
+            }
+        };
+    }
+
+    @Override
+    public IntIterator keyIterator() {
+        Iterator<Index> iterator = indexIterator();
+        return new IntIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                return getFlatIndex(iterator.next());
+            }
+        };
+    }
+
+    /**
+     * Copy of the keys and values of one stripe, taken under its lock.
+     */
+    private class StripeSnapshot {
+        int[] keys = new int[16];
+        E[] values = newArray(16);
+        int size;
+
+        @SuppressWarnings("unchecked")
+        private E[] newArray(int length) {
+            return (E[]) new Object[length];
+        }
+
+        void take(int stripeIndex) {
+            SparseMatrix.MyInt2ObjectOpenHashMap<E> stripe = stripes[stripeIndex];
+            synchronized (stripe) {
+                size = stripe.size();
+                if (keys.length < size) {
+                    keys = new int[size];
+                    values = newArray(size);
+                }
+                int[] key = stripe.getKey();
+                E[] value = stripe.getValue();
+                int n = stripe.getTableSize();
+                int j = 0;
+                for (int i = 0; i < n; i++) {
+                    if (key[i] != 0) {
+                        keys[j] = key[i];
+                        values[j++] = value[i];
+                    }
+                }
+                if (stripe.hasNullKey()) {
+                    keys[j] = 0;
+                    values[j] = value[n];
+                }
+            }
+        }
+    }
+
+    /**
+     * Spliterator over a range of stripes, splitting between stripes and reading one stripe snapshot at
+     * a time.
+     */
+    private class StripeSpliterator implements Spliterator<Cursor<Index, E>> {
+        private final StripeSnapshot snapshot = new StripeSnapshot();
+        private int stripe; // next stripe to snapshot, modified on advance/split
+        private final int fence; // one past last stripe
+        private int current = -1; // stripe of the snapshot
+        private int position;  // next entry of the snapshot
+
+        StripeSpliterator(int stripe, int fence) {
+            this.stripe = stripe;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Cursor<Index, E>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            while (current < 0 || position >= snapshot.size) {
+                if (stripe >= fence) {
+                    return false;
+                }
+                current = stripe++;
+                snapshot.take(current);
+                position = 0;
+            }
+            int key = snapshot.keys[position];
+            E e = snapshot.values[position++];
+            int columnCount = bound.getColumnCount();
+            action.accept(new SimpleCursor<>(new Index(current >>> stripeShift, key / columnCount,
+                    key % columnCount), e));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Cursor<Index, E>> trySplit() {
+            int lo = stripe, mid = (lo + fence) >>> 1;
+            return lo >= mid ? null : new StripeSpliterator(lo, stripe = mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            int stripeCount = stripes.length;
+            long remaining = stripeCount == 0 ? 0 : effectiveCount.sum() * (fence - stripe) / stripeCount;
+            return current < 0 ? remaining : remaining + snapshot.size - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.CONCURRENT;
+        }
+    }
+}
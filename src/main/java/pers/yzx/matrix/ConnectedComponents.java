@@ -0,0 +1,314 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Connected components of the {@code true} cells of a {@link BitMatrix}.
+ * <p>
+ * The mask is read as runs of consecutive {@code true} cells along the rows, and the runs of adjacent
+ * rows that touch are merged with a union-find. Bands of rows are extracted and merged on the
+ * fork/join pool, then the runs on either side of the band edges, and of adjacent floors, are merged
+ * serially. The components are numbered from 1 in the order of their first cell; the cells outside any
+ * component are labelled 0.
+ */
+public final class ConnectedComponents {
+    private static final int BAND_ROWS = 256;
+
+    public enum Connectivity {
+        /**
+         * Cells sharing an edge, on the same floor.
+         */
+        FOUR(false, false),
+        /**
+         * Cells sharing an edge or a corner, on the same floor.
+         */
+        EIGHT(true, false),
+        /**
+         * Cells sharing a face, the floors being stacked.
+         */
+        SIX(false, true),
+        /**
+         * Cells sharing a face, an edge or a corner, the floors being stacked.
+         */
+        TWENTY_SIX(true, true);
+
+        private final boolean diagonal;
+        private final boolean acrossFloors;
+
+        Connectivity(boolean diagonal, boolean acrossFloors) {
+            this.diagonal = diagonal;
+            this.acrossFloors = acrossFloors;
+        }
+
+        public boolean isDiagonal() {
+            return diagonal;
+        }
+
+        public boolean isAcrossFloors() {
+            return acrossFloors;
+        }
+    }
+
+    public static final class Component {
+        private final int label;
+        private int size;
+        private int minFloor = Integer.MAX_VALUE;
+        private int minRow = Integer.MAX_VALUE;
+        private int minColumn = Integer.MAX_VALUE;
+        private int maxFloor = -1;
+        private int maxRow = -1;
+        private int maxColumn = -1;
+
+        private Component(int label) {
+            this.label = label;
+        }
+
+        private void add(int floorIndex, int rowIndex, int fromColumn, int toColumn) {
+            size += toColumn - fromColumn;
+            minFloor = Math.min(minFloor, floorIndex);
+            maxFloor = Math.max(maxFloor, floorIndex);
+            minRow = Math.min(minRow, rowIndex);
+            maxRow = Math.max(maxRow, rowIndex);
+            minColumn = Math.min(minColumn, fromColumn);
+            maxColumn = Math.max(maxColumn, toColumn - 1);
+        }
+
+        public int getLabel() {
+            return label;
+        }
+
+        /**
+         * Returns the number of cells of the component.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the lowest floor, row and column indexes of the cells of the component.
+         */
+        public Index getMinIndex() {
+            return new Index(minFloor, minRow, minColumn);
+        }
+
+        /**
+         * Returns the highest floor, row and column indexes of the cells of the component, inclusive.
+         */
+        public Index getMaxIndex() {
+            return new Index(maxFloor, maxRow, maxColumn);
+        }
+    }
+
+    private final IntMatrix labels;
+    private final List<Component> components;
+
+    private ConnectedComponents(IntMatrix labels, List<Component> components) {
+        this.labels = labels;
+        this.components = components;
+    }
+
+    public static ConnectedComponents label(BitMatrix mask, Connectivity connectivity) {
+        return new Labelling(mask, connectivity).run();
+    }
+
+    /**
+     * Returns the label of every cell, from 1 to {@link #getComponentCount()}, or 0 outside the components.
+     */
+    public IntMatrix getLabels() {
+        return labels;
+    }
+
+    public int getComponentCount() {
+        return components.size();
+    }
+
+    public Component getComponent(int label) {
+        if (label < 1 || label > components.size())
+            throw new IndexOutOfBoundsException("Label: " + label + ", Count: " + components.size());
+        return components.get(label - 1);
+    }
+
+    public List<Component> getComponents() {
+        return components;
+    }
+
+    private static class Labelling {
+        private final BitMatrix mask;
+        private final Connectivity connectivity;
+        private final int rowCount;
+        private final int columnCount;
+        private final int globalRowCount;
+        private final int bandCount;
+        // runs of the global row r are [rowOffset[r], rowOffset[r + 1])
+        private final int[] rowOffset;
+        private int[] starts;
+        private int[] ends;
+        private int[] parent;
+
+        Labelling(BitMatrix mask, Connectivity connectivity) {
+            this.mask = mask;
+            this.connectivity = connectivity;
+            this.rowCount = mask.getRowCount();
+            this.columnCount = mask.getColumnCount();
+            this.globalRowCount = mask.getFloorCount() * rowCount;
+            this.bandCount = (globalRowCount + BAND_ROWS - 1) / BAND_ROWS;
+            this.rowOffset = new int[globalRowCount + 1];
+        }
+
+        ConnectedComponents run() {
+            extractRuns();
+            parent = new int[starts.length];
+            IntStream.range(0, bandCount).parallel().forEach(b -> {
+                int fromRow = b * BAND_ROWS;
+                int toRow = Math.min(fromRow + BAND_ROWS, globalRowCount);
+                for (int i = rowOffset[fromRow]; i < rowOffset[toRow]; i++) {
+                    parent[i] = i;
+                }
+                for (int row = fromRow + 1; row < toRow; row++) {
+                    if (row % rowCount != 0) {
+                        link(row - 1, row, connectivity.isDiagonal());
+                    }
+                }
+            });
+            // the runs of each band only refer to the band so far, the edges are merged serially
+            for (int b = 1; b < bandCount; b++) {
+                int row = b * BAND_ROWS;
+                if (row % rowCount != 0) {
+                    link(row - 1, row, connectivity.isDiagonal());
+                }
+            }
+            if (connectivity.isAcrossFloors()) {
+                for (int row = rowCount; row < globalRowCount; row++) {
+                    int below = row - rowCount;
+                    link(below, row, connectivity.isDiagonal());
+                    if (connectivity.isDiagonal()) {
+                        if (row % rowCount != 0) {
+                            link(below - 1, row, true);
+                        }
+                        if (row % rowCount != rowCount - 1) {
+                            link(below + 1, row, true);
+                        }
+                    }
+                }
+            }
+            return collect();
+        }
+
+        private void extractRuns() {
+            long[] words = mask.toLongArray();
+            IntArrayList[] bandStarts = new IntArrayList[bandCount];
+            IntArrayList[] bandEnds = new IntArrayList[bandCount];
+            IntStream.range(0, bandCount).parallel().forEach(b -> {
+                IntArrayList s = new IntArrayList();
+                IntArrayList e = new IntArrayList();
+                int fromRow = b * BAND_ROWS;
+                int toRow = Math.min(fromRow + BAND_ROWS, globalRowCount);
+                for (int row = fromRow; row < toRow; row++) {
+                    int rowStart = row * columnCount;
+                    int rowEnd = rowStart + columnCount;
+                    int count = 0;
+                    for (int i = LongBits.nextSetBit(words, rowStart, rowEnd); i >= 0;
+                         i = LongBits.nextSetBit(words, i, rowEnd)) {
+                        s.add(i - rowStart);
+                        i = LongBits.nextClearBit(words, i, rowEnd);
+                        e.add(i - rowStart);
+                        count++;
+                    }
+                    rowOffset[row + 1] = count;
+                }
+                bandStarts[b] = s;
+                bandEnds[b] = e;
+            });
+            for (int row = 0; row < globalRowCount; row++) {
+                rowOffset[row + 1] += rowOffset[row];
+            }
+            starts = new int[rowOffset[globalRowCount]];
+            ends = new int[starts.length];
+            for (int b = 0; b < bandCount; b++) {
+                int offset = rowOffset[b * BAND_ROWS];
+                bandStarts[b].getElements(0, starts, offset, bandStarts[b].size());
+                bandEnds[b].getElements(0, ends, offset, bandEnds[b].size());
+            }
+        }
+
+        /**
+         * Merges the runs of two rows that touch, along an edge or, if {@code diagonal}, at a corner too.
+         */
+        private void link(int rowA, int rowB, boolean diagonal) {
+            int slack = diagonal ? 1 : 0;
+            int i = rowOffset[rowA];
+            int iEnd = rowOffset[rowA + 1];
+            int k = rowOffset[rowB];
+            int kEnd = rowOffset[rowB + 1];
+            while (i < iEnd && k < kEnd) {
+                if (starts[i] < ends[k] + slack && starts[k] < ends[i] + slack) {
+                    union(i, k);
+                }
+                if (ends[i] < ends[k]) {
+                    i++;
+                } else {
+                    k++;
+                }
+            }
+        }
+
+        private int find(int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+
+        /**
+         * Links the larger root under the smaller, so that the root of a component is its first run.
+         */
+        private void union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA < rootB) {
+                parent[rootB] = rootA;
+            } else if (rootB < rootA) {
+                parent[rootA] = rootB;
+            }
+        }
+
+        private ConnectedComponents collect() {
+            int[] runLabel = new int[starts.length];
+            Component[] components = new Component[starts.length];
+            int count = 0;
+            for (int row = 0; row < globalRowCount; row++) {
+                for (int i = rowOffset[row]; i < rowOffset[row + 1]; i++) {
+                    int root = find(i);
+                    if (root == i) {
+                        runLabel[i] = ++count;
+                        components[count - 1] = new Component(count);
+                    } else {
+                        runLabel[i] = runLabel[root];
+                    }
+                    components[runLabel[i] - 1].add(row / rowCount, row % rowCount, starts[i], ends[i]);
+                }
+            }
+            IntMatrix labels = new IntMatrix(mask.getBound(), mask.getFloorCount());
+            IntStream.range(0, bandCount).parallel().forEach(b -> {
+                int fromRow = b * BAND_ROWS;
+                int toRow = Math.min(fromRow + BAND_ROWS, globalRowCount);
+                for (int row = fromRow; row < toRow; row++) {
+                    int rowStart = row * columnCount;
+                    for (int i = rowOffset[row]; i < rowOffset[row + 1]; i++) {
+                        for (int j = starts[i]; j < ends[i]; j++) {
+                            labels.setInt(rowStart + j, runLabel[i]);
+                        }
+                    }
+                }
+            });
+            return new ConnectedComponents(labels,
+                    Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(components, count))));
+        }
+    }
+}
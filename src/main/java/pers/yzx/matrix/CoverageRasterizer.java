@@ -0,0 +1,197 @@
+package pers.yzx.matrix;
+
+import pers.yzx.geometry.Point;
+import pers.yzx.geometry.Polygon;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rasterizes the exact fraction of the area of each cell covered by a polygon, in a single pass and
+ * without supersampling.
+ * <p>
+ * As in font rasterizers, every edge deposits, in the cells it crosses, the signed change of coverage
+ * it causes along the row: the part of the cell it leaves to its right, weighted by the height it spans
+ * within the row, and the remainder in the next cell. A prefix sum along each row then gives the
+ * coverage of every cell. The cost is proportional to the cells crossed by the edges plus the cells of
+ * the bound.
+ */
+public final class CoverageRasterizer {
+
+    private CoverageRasterizer() {
+    }
+
+    /**
+     * Returns the fraction of each cell of the bound of the polygon covered by it, from 0 to 1.
+     */
+    public static FloatMatrix rasterize(Polygon polygon, int resolution) {
+        return rasterize(polygon, polygon.getBound(resolution));
+    }
+
+    /**
+     * Returns the fraction of each cell of the bound covered by the polygon outside its holes, from 0 to 1.
+     * The polygon may reach past the bound.
+     */
+    public static FloatMatrix rasterize(Polygon polygon, Bound bound) {
+        if (polygon.getHoles().isEmpty()) {
+            return rasterize(Collections.singletonList(polygon.getPoints()), bound);
+        }
+        // the holes must run opposite to the outer ring to be subtracted
+        List<List<Point>> rings = new ArrayList<>();
+        boolean counterClockwise = signedArea(polygon.getPoints()) > 0;
+        rings.add(polygon.getPoints());
+        for (List<Point> hole : polygon.getHoles()) {
+            if (signedArea(hole) > 0 == counterClockwise) {
+                hole = new ArrayList<>(hole);
+                Collections.reverse(hole);
+            }
+            rings.add(hole);
+        }
+        return rasterize(rings, bound);
+    }
+
+    private static double signedArea(List<Point> ring) {
+        double doubleArea = 0;
+        for (int k = 0; k < ring.size(); k++) {
+            Point a = ring.get(k);
+            Point b = ring.get((k + 1) % ring.size());
+            doubleArea += a.getX() * b.getY() - b.getX() * a.getY();
+        }
+        return doubleArea / 2;
+    }
+
+    /**
+     * Rasterizes rings by their winding number, the coverage being clamped to 1 where rings overlap with
+     * the same orientation; rings of opposite orientations cancel each other.
+     */
+    static FloatMatrix rasterize(List<List<Point>> rings, Bound bound) {
+        int rowCount = bound.getRowCount();
+        int columnCount = bound.getColumnCount();
+        // one spare cell per row receives the changes past the last column
+        int stride = columnCount + 2;
+        double[] accumulation = new double[rowCount * stride];
+        double left = bound.getTopLeftX();
+        double top = bound.getTopLeftY();
+        double resolution = bound.getResolution();
+        for (List<Point> ring : rings) {
+            int size = ring.size();
+            for (int k = 0; k < size; k++) {
+                Point p = ring.get(k);
+                Point q = ring.get((k + 1) % size);
+                // in cell units, y growing downwards
+                addClippedLine(accumulation, stride, rowCount, columnCount,
+                        (p.getX() - left) / resolution, (top - p.getY()) / resolution,
+                        (q.getX() - left) / resolution, (top - q.getY()) / resolution);
+            }
+        }
+        FloatMatrix coverage = new FloatMatrix(bound);
+        for (int i = 0; i < rowCount; i++) {
+            double sum = 0;
+            int offset = i * stride;
+            for (int j = 0; j < columnCount; j++) {
+                sum += accumulation[offset + j];
+                coverage.setFloat(i * columnCount + j, (float) Math.min(1.0, Math.abs(sum)));
+            }
+        }
+        return coverage;
+    }
+
+    /**
+     * Splits the line where it crosses the left and right sides of the grid, and flattens the parts
+     * outside against them: a part on the left still covers the whole row, a part on the right nothing.
+     */
+    private static void addClippedLine(double[] accumulation, int stride, int rowCount, int columnCount,
+                                       double x0, double y0, double x1, double y1) {
+        if (y0 == y1) {
+            return;
+        }
+        double[] cuts = {0, columnCount};
+        double fromT = 0;
+        double fromX = x0;
+        double fromY = y0;
+        for (int c = x0 <= x1 ? 0 : 1; c >= 0 && c < 2; c += x0 <= x1 ? 1 : -1) {
+            double t = (cuts[c] - x0) / (x1 - x0);
+            if (t > fromT && t < 1) {
+                double y = y0 + (y1 - y0) * t;
+                addLine(accumulation, stride, rowCount, columnCount, clamp(fromX, columnCount), fromY, cuts[c], y);
+                fromT = t;
+                fromX = cuts[c];
+                fromY = y;
+            }
+        }
+        addLine(accumulation, stride, rowCount, columnCount, clamp(fromX, columnCount), fromY,
+                clamp(x1, columnCount), y1);
+    }
+
+    private static double clamp(double x, int columnCount) {
+        return Math.max(0, Math.min(columnCount, x));
+    }
+
+    /**
+     * Accumulates the signed coverage changes of a line lying within {@code [0, columnCount]} along x.
+     */
+    private static void addLine(double[] accumulation, int stride, int rowCount, int columnCount,
+                                double x0, double y0, double x1, double y1) {
+        if (y0 == y1) {
+            return;
+        }
+        double direction = 1;
+        if (y0 > y1) {
+            direction = -1;
+            double t = x0;
+            x0 = x1;
+            x1 = t;
+            t = y0;
+            y0 = y1;
+            y1 = t;
+        }
+        double slope = (x1 - x0) / (y1 - y0);
+        double x = x0;
+        if (y0 < 0) {
+            x = clamp(x - y0 * slope, columnCount);
+        }
+        int fromRow = (int) Math.max(0, Math.floor(y0));
+        int toRow = (int) Math.min(rowCount, Math.ceil(y1));
+        for (int row = fromRow; row < toRow; row++) {
+            int offset = row * stride;
+            double dy = Math.min(row + 1, y1) - Math.max(row, y0);
+            // stepping x row by row may drift slightly past the sides of the grid
+            double xNext = clamp(x + slope * dy, columnCount);
+            double d = dy * direction;
+            double xLow = Math.min(x, xNext);
+            double xHigh = Math.max(x, xNext);
+            double lowFloor = Math.floor(xLow);
+            int lowCell = (int) lowFloor;
+            int highCell = (int) Math.ceil(xHigh);
+            if (highCell <= lowCell + 1) {
+                // within a single cell: the part to the right of the mean x
+                double mean = 0.5 * (x + xNext) - lowFloor;
+                accumulation[offset + lowCell] += d - d * mean;
+                accumulation[offset + lowCell + 1] += d * mean;
+            } else {
+                // across several cells: the covered area grows quadratically in the first and last ones,
+                // linearly in between
+                double inverseWidth = 1 / (xHigh - xLow);
+                double lowFraction = xLow - lowFloor;
+                double firstArea = 0.5 * inverseWidth * (1 - lowFraction) * (1 - lowFraction);
+                double highFraction = xHigh - highCell + 1;
+                double lastArea = 0.5 * inverseWidth * highFraction * highFraction;
+                accumulation[offset + lowCell] += d * firstArea;
+                if (highCell == lowCell + 2) {
+                    accumulation[offset + lowCell + 1] += d * (1 - firstArea - lastArea);
+                } else {
+                    double secondArea = inverseWidth * (1.5 - lowFraction);
+                    accumulation[offset + lowCell + 1] += d * (secondArea - firstArea);
+                    for (int j = lowCell + 2; j < highCell - 1; j++) {
+                        accumulation[offset + j] += d * inverseWidth;
+                    }
+                    double beforeLast = secondArea + (highCell - lowCell - 3) * inverseWidth;
+                    accumulation[offset + highCell - 1] += d * (1 - beforeLast - lastArea);
+                }
+                accumulation[offset + highCell] += d * lastArea;
+            }
+            x = xNext;
+        }
+    }
+}
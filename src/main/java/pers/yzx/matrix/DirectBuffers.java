@@ -0,0 +1,57 @@
+package pers.yzx.matrix;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases the native memory of direct and mapped buffers without waiting for the garbage collector.
+ * <p>
+ * Uses {@code sun.misc.Unsafe.invokeCleaner} on Java 9+ and the buffer's {@code cleaner()} on Java 8.
+ * When neither is reachable the buffer is left to the collector.
+ */
+final class DirectBuffers {
+    private static final Cleaner CLEANER = createCleaner();
+
+    private DirectBuffers() {
+    }
+
+    static void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && CLEANER != null) {
+            try {
+                CLEANER.clean(buffer);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // the buffer stays reachable only through the collector
+            }
+        }
+    }
+
+    private static Cleaner createCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object c = cleaner.invoke(buffer);
+                if (c != null) {
+                    clean.invoke(c);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private interface Cleaner {
+        void clean(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+}
@@ -0,0 +1,18 @@
+package pers.yzx.matrix;
+
+/**
+ * Primitive specialization of {@link CellConsumer} for {@code double} cells.
+ */
+@FunctionalInterface
+public interface DoubleCellConsumer {
+
+    /**
+     * Performs this operation on a cell.
+     *
+     * @param floorIndex  floor index of the cell
+     * @param rowIndex    row index of the cell
+     * @param columnIndex column index of the cell
+     * @param value       the value of the cell
+     */
+    void accept(int floorIndex, int rowIndex, int columnIndex, double value);
+}
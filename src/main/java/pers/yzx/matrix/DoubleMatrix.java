@@ -0,0 +1,52 @@
+package pers.yzx.matrix;
+
+import java.util.Arrays;
+
+public class DoubleMatrix extends AbstractPrimitiveMatrix<Double> {
+    private double[] elementData;
+
+    public DoubleMatrix(Bound bound) {
+        this(bound, 1);
+    }
+
+    public DoubleMatrix(Bound bound, int floorCount) {
+        super(bound, floorCount);
+        this.elementData = new double[getCount()];
+    }
+
+    public DoubleMatrix(Bound bound, int floorCount, double defaultValue) {
+        this(bound, floorCount);
+        Arrays.fill(elementData, defaultValue);
+    }
+
+    @Override
+    public double getDouble(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    @Override
+    public void setDouble(int flatIndex, double value) {
+        elementData[flatIndex] = value;
+    }
+
+    @Override
+    public Double get(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    @Override
+    public void set(int flatIndex, Double element) {
+        elementData[flatIndex] = element == null ? 0 : element;
+    }
+
+    @Override
+    public CellType getCellType() {
+        return CellType.DOUBLE;
+    }
+
+    @Override
+    public void clear() {
+        bound = new Bound(0, 0, 0, 0, 0);
+        elementData = new double[0];
+    }
+}
@@ -0,0 +1,17 @@
+package pers.yzx.matrix;
+
+/**
+ * Decides which points are inside a set of rings, from the rings crossed by a ray leaving the point.
+ */
+public enum FillRule {
+    /**
+     * Inside when the ray crosses an odd number of rings: holes are cut out whatever their orientation,
+     * and overlapping parts cancel each other.
+     */
+    EVEN_ODD,
+    /**
+     * Inside when the crossings in either direction do not balance: overlapping parts of the same
+     * orientation are merged, and holes must run opposite to their outer ring.
+     */
+    NON_ZERO
+}
@@ -0,0 +1,78 @@
+package pers.yzx.matrix;
+
+import java.util.Arrays;
+
+public class FloatMatrix extends AbstractPrimitiveMatrix<Float> {
+    private float[] elementData;
+
+    public FloatMatrix(Bound bound) {
+        this(bound, 1);
+    }
+
+    public FloatMatrix(Bound bound, int floorCount) {
+        super(bound, floorCount);
+        this.elementData = new float[getCount()];
+    }
+
+    public FloatMatrix(Bound bound, int floorCount, float defaultValue) {
+        this(bound, floorCount);
+        Arrays.fill(elementData, defaultValue);
+    }
+
+    public float getFloat(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    public float getFloat(int rowIndex, int columnIndex) {
+        return getFloat(DEFAULT_FLOOR_INDEX, rowIndex, columnIndex);
+    }
+
+    public float getFloat(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return elementData[getFlatIndex(floorIndex, rowIndex, columnIndex)];
+    }
+
+    public void setFloat(int flatIndex, float value) {
+        elementData[flatIndex] = value;
+    }
+
+    public void setFloat(int rowIndex, int columnIndex, float value) {
+        setFloat(DEFAULT_FLOOR_INDEX, rowIndex, columnIndex, value);
+    }
+
+    public void setFloat(int floorIndex, int rowIndex, int columnIndex, float value) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        elementData[getFlatIndex(floorIndex, rowIndex, columnIndex)] = value;
+    }
+
+    @Override
+    public double getDouble(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    @Override
+    public void setDouble(int flatIndex, double value) {
+        elementData[flatIndex] = (float) value;
+    }
+
+    @Override
+    public Float get(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    @Override
+    public void set(int flatIndex, Float element) {
+        elementData[flatIndex] = element == null ? 0 : element;
+    }
+
+    @Override
+    public CellType getCellType() {
+        return CellType.FLOAT;
+    }
+
+    @Override
+    public void clear() {
+        bound = new Bound(0, 0, 0, 0, 0);
+        elementData = new float[0];
+    }
+}
@@ -0,0 +1,78 @@
+package pers.yzx.matrix;
+
+import java.util.Arrays;
+
+public class IntMatrix extends AbstractPrimitiveMatrix<Integer> {
+    private int[] elementData;
+
+    public IntMatrix(Bound bound) {
+        this(bound, 1);
+    }
+
+    public IntMatrix(Bound bound, int floorCount) {
+        super(bound, floorCount);
+        this.elementData = new int[getCount()];
+    }
+
+    public IntMatrix(Bound bound, int floorCount, int defaultValue) {
+        this(bound, floorCount);
+        Arrays.fill(elementData, defaultValue);
+    }
+
+    public int getInt(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    public int getInt(int rowIndex, int columnIndex) {
+        return getInt(DEFAULT_FLOOR_INDEX, rowIndex, columnIndex);
+    }
+
+    public int getInt(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return elementData[getFlatIndex(floorIndex, rowIndex, columnIndex)];
+    }
+
+    public void setInt(int flatIndex, int value) {
+        elementData[flatIndex] = value;
+    }
+
+    public void setInt(int rowIndex, int columnIndex, int value) {
+        setInt(DEFAULT_FLOOR_INDEX, rowIndex, columnIndex, value);
+    }
+
+    public void setInt(int floorIndex, int rowIndex, int columnIndex, int value) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        elementData[getFlatIndex(floorIndex, rowIndex, columnIndex)] = value;
+    }
+
+    @Override
+    public double getDouble(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    @Override
+    public void setDouble(int flatIndex, double value) {
+        elementData[flatIndex] = (int) value;
+    }
+
+    @Override
+    public Integer get(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    @Override
+    public void set(int flatIndex, Integer element) {
+        elementData[flatIndex] = element == null ? 0 : element;
+    }
+
+    @Override
+    public CellType getCellType() {
+        return CellType.INT;
+    }
+
+    @Override
+    public void clear() {
+        bound = new Bound(0, 0, 0, 0, 0);
+        elementData = new int[0];
+    }
+}
@@ -0,0 +1,204 @@
+package pers.yzx.matrix;
+
+/**
+ * Bit range helpers over arrays of 64-bit words, bit {@code i % 64} of word {@code i / 64} being bit
+ * {@code i}, as in {@link java.util.BitSet}.
+ */
+final class LongBits {
+    static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final long WORD_MASK = 0xffffffffffffffffL;
+
+    private LongBits() {
+    }
+
+    static int wordCount(int bitCount) {
+        return (bitCount + Long.SIZE - 1) >>> ADDRESS_BITS_PER_WORD;
+    }
+
+    static boolean get(long[] words, int bitIndex) {
+        return (words[bitIndex >>> ADDRESS_BITS_PER_WORD] & 1L << bitIndex) != 0;
+    }
+
+    /**
+     * Sets a bit and returns its previous value.
+     */
+    static boolean set(long[] words, int bitIndex, boolean value) {
+        int w = bitIndex >>> ADDRESS_BITS_PER_WORD;
+        long mask = 1L << bitIndex;
+        boolean old = (words[w] & mask) != 0;
+        if (value) {
+            words[w] |= mask;
+        } else {
+            words[w] &= ~mask;
+        }
+        return old;
+    }
+
+    /**
+     * Returns the 64 bits starting at {@code bitIndex}, which need not be word-aligned; the bits past the
+     * end of the array read as zero.
+     */
+    static long read(long[] words, int bitIndex) {
+        int w = bitIndex >>> ADDRESS_BITS_PER_WORD;
+        int shift = bitIndex & (Long.SIZE - 1);
+        long bits = words[w] >>> shift;
+        if (shift != 0 && w + 1 < words.length) {
+            bits |= words[w + 1] << -shift;
+        }
+        return bits;
+    }
+
+    /**
+     * Overwrites the {@code n} bits starting at {@code bitIndex}, {@code 0 < n <= 64}, with the low
+     * {@code n} bits of {@code bits}.
+     */
+    static void write(long[] words, int bitIndex, long bits, int n) {
+        long mask = n == Long.SIZE ? WORD_MASK : (1L << n) - 1;
+        bits &= mask;
+        int w = bitIndex >>> ADDRESS_BITS_PER_WORD;
+        int shift = bitIndex & (Long.SIZE - 1);
+        words[w] = words[w] & ~(mask << shift) | bits << shift;
+        if (shift != 0 && shift + n > Long.SIZE) {
+            words[w + 1] = words[w + 1] & ~(mask >>> -shift) | bits >>> -shift;
+        }
+    }
+
+    /**
+     * Returns the number of set bits in {@code [fromIndex, toIndex)}.
+     */
+    static int cardinality(long[] words, int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return 0;
+        }
+        int startWord = fromIndex >>> ADDRESS_BITS_PER_WORD;
+        int endWord = (toIndex - 1) >>> ADDRESS_BITS_PER_WORD;
+        long firstMask = WORD_MASK << fromIndex;
+        long lastMask = WORD_MASK >>> -toIndex;
+        if (startWord == endWord) {
+            return Long.bitCount(words[startWord] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(words[startWord] & firstMask);
+        for (int w = startWord + 1; w < endWord; w++) {
+            count += Long.bitCount(words[w]);
+        }
+        return count + Long.bitCount(words[endWord] & lastMask);
+    }
+
+    /**
+     * Sets the bits in {@code [fromIndex, toIndex)} and returns how many of them were clear.
+     */
+    static int set(long[] words, int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return 0;
+        }
+        int added = toIndex - fromIndex - cardinality(words, fromIndex, toIndex);
+        int startWord = fromIndex >>> ADDRESS_BITS_PER_WORD;
+        int endWord = (toIndex - 1) >>> ADDRESS_BITS_PER_WORD;
+        long firstMask = WORD_MASK << fromIndex;
+        long lastMask = WORD_MASK >>> -toIndex;
+        if (startWord == endWord) {
+            words[startWord] |= firstMask & lastMask;
+        } else {
+            words[startWord] |= firstMask;
+            for (int w = startWord + 1; w < endWord; w++) {
+                words[w] = WORD_MASK;
+            }
+            words[endWord] |= lastMask;
+        }
+        return added;
+    }
+
+    /**
+     * Clears the bits in {@code [fromIndex, toIndex)} and returns how many of them were set.
+     */
+    static int clear(long[] words, int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return 0;
+        }
+        int removed = cardinality(words, fromIndex, toIndex);
+        int startWord = fromIndex >>> ADDRESS_BITS_PER_WORD;
+        int endWord = (toIndex - 1) >>> ADDRESS_BITS_PER_WORD;
+        long firstMask = WORD_MASK << fromIndex;
+        long lastMask = WORD_MASK >>> -toIndex;
+        if (startWord == endWord) {
+            words[startWord] &= ~(firstMask & lastMask);
+        } else {
+            words[startWord] &= ~firstMask;
+            for (int w = startWord + 1; w < endWord; w++) {
+                words[w] = 0;
+            }
+            words[endWord] &= ~lastMask;
+        }
+        return removed;
+    }
+
+    /**
+     * Flips the bits in {@code [fromIndex, toIndex)} and returns the change of the number of set bits.
+     */
+    static int flip(long[] words, int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return 0;
+        }
+        int delta = toIndex - fromIndex - 2 * cardinality(words, fromIndex, toIndex);
+        int startWord = fromIndex >>> ADDRESS_BITS_PER_WORD;
+        int endWord = (toIndex - 1) >>> ADDRESS_BITS_PER_WORD;
+        long firstMask = WORD_MASK << fromIndex;
+        long lastMask = WORD_MASK >>> -toIndex;
+        if (startWord == endWord) {
+            words[startWord] ^= firstMask & lastMask;
+        } else {
+            words[startWord] ^= firstMask;
+            for (int w = startWord + 1; w < endWord; w++) {
+                words[w] = ~words[w];
+            }
+            words[endWord] ^= lastMask;
+        }
+        return delta;
+    }
+
+    /**
+     * Returns the index of the first set bit at or after {@code fromIndex} and before {@code toIndex},
+     * or -1 if there is none.
+     */
+    static int nextSetBit(long[] words, int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return -1;
+        }
+        int w = fromIndex >>> ADDRESS_BITS_PER_WORD;
+        long word = words[w] & WORD_MASK << fromIndex;
+        int endWord = (toIndex - 1) >>> ADDRESS_BITS_PER_WORD;
+        while (true) {
+            if (word != 0) {
+                int index = (w << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+                return index < toIndex ? index : -1;
+            }
+            if (++w > endWord) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * Returns the index of the first clear bit at or after {@code fromIndex} and before {@code toIndex},
+     * or {@code toIndex} if there is none.
+     */
+    static int nextClearBit(long[] words, int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return toIndex;
+        }
+        int w = fromIndex >>> ADDRESS_BITS_PER_WORD;
+        long word = ~words[w] & WORD_MASK << fromIndex;
+        int endWord = (toIndex - 1) >>> ADDRESS_BITS_PER_WORD;
+        while (true) {
+            if (word != 0) {
+                int index = (w << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+                return Math.min(index, toIndex);
+            }
+            if (++w > endWord) {
+                return toIndex;
+            }
+            word = ~words[w];
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Iterator;
+
+/**
+ * A {@link BitMatrix} counterpart whose bits are mapped from a {@link MatrixFile}.
+ * <p>
+ * The bits are kept as the 64-bit words of {@link BitMatrix}: the bit of flat index {@code i} is bit
+ * {@code i % 64} of word {@code i / 64}. Writes to a shared mapping are not
+ * atomic across processes.
+ */
+public class MappedBitMatrix extends AbstractMatrix<Boolean> implements Closeable {
+    private final boolean writable;
+    private ByteBuffer[] chunks;
+
+    MappedBitMatrix(Bound bound, int floorCount, ByteBuffer[] chunks, boolean writable) {
+        super(bound, floorCount);
+        this.chunks = chunks;
+        this.writable = writable;
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    int getWordCount() {
+        return (getCount() + Long.SIZE - 1) >>> 6;
+    }
+
+    long getWord(int wordIndex) {
+        long byteIndex = (long) wordIndex << 3;
+        return chunks[(int) (byteIndex >>> MatrixFile.CHUNK_SHIFT)].getLong((int) byteIndex & MatrixFile.CHUNK_MASK);
+    }
+
+    private void setWord(int wordIndex, long word) {
+        long byteIndex = (long) wordIndex << 3;
+        chunks[(int) (byteIndex >>> MatrixFile.CHUNK_SHIFT)].putLong((int) byteIndex & MatrixFile.CHUNK_MASK, word);
+    }
+
+    @Override
+    public int getEffectiveCount() {
+        return getFloorCount() * bound.getCount();
+    }
+
+    @Override
+    public Boolean get(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return get(getFlatIndex(floorIndex, rowIndex, columnIndex));
+    }
+
+    @Override
+    public Boolean get(int flatIndex) {
+        if (flatIndex < 0 || flatIndex >= getCount()) {
+            return null;
+        }
+        return (getWord(flatIndex >>> 6) & (1L << flatIndex)) != 0;
+    }
+
+    @Override
+    public void set(int floorIndex, int rowIndex, int columnIndex, Boolean element) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        set(getFlatIndex(floorIndex, rowIndex, columnIndex), element);
+    }
+
+    @Override
+    public void set(int flatIndex, Boolean element) {
+        rangeCheck(flatIndex);
+        int wordIndex = flatIndex >>> 6;
+        long word = getWord(wordIndex);
+        setWord(wordIndex, element ? word | (1L << flatIndex) : word & ~(1L << flatIndex));
+    }
+
+    public int getTrueElementsCount() {
+        int count = 0;
+        for (int i = 0, n = getWordCount(); i < n; i++) {
+            count += Long.bitCount(getWord(i));
+        }
+        return count;
+    }
+
+    /**
+     * Forces the changes made to the bits to be written to the file.
+     */
+    public void force() {
+        if (!writable) {
+            return;
+        }
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+    }
+
+    /**
+     * Unmaps the file and leaves an empty matrix.
+     */
+    @Override
+    public void clear() {
+        ByteBuffer[] buffers = chunks;
+        chunks = new ByteBuffer[0];
+        bound = new Bound(0, 0, 0, 0, 0);
+        for (ByteBuffer buffer : buffers) {
+            DirectBuffers.release(buffer);
+        }
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return bound.getRowCount() == 0 && bound.getColumnCount() == 0;
+    }
+
+    @Override
+    public Iterator<Cursor<Index, Boolean>> iterator() {
+        return new MatrixIterator();
+    }
+
+    @Override
+    public Iterator<Index> indexIterator() {
+        return new IndexItr();
+    }
+
+    @Override
+    public IntIterator keyIterator() {
+        return new KeyIterator();
+    }
+}
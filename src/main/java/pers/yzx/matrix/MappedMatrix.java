@@ -0,0 +1,39 @@
+package pers.yzx.matrix;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * A primitive matrix whose cells are mapped from a {@link MatrixFile} with {@code FileChannel.map}.
+ * <p>
+ * Reads go straight to the page cache, so opening even a very large file is immediate and several
+ * processes mapping the same file share one copy of the data. When the file was mapped for writing,
+ * {@link #force()} flushes the modified cells to the storage device. {@link #close()} unmaps the file;
+ * the matrix must not be accessed concurrently with or after it.
+ *
+ * @param <E> the boxed type of the cells, which must match the {@link CellType}
+ */
+public class MappedMatrix<E extends Number> extends OffHeapMatrix<E> {
+    private final boolean writable;
+
+    MappedMatrix(Bound bound, int floorCount, CellType cellType, ByteBuffer[] chunks, boolean writable) {
+        super(bound, floorCount, cellType, MatrixFile.CHUNK_SHIFT, chunks);
+        this.writable = writable;
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Forces the changes made to the cells to be written to the file.
+     */
+    public void force() {
+        if (!writable) {
+            return;
+        }
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package pers.yzx.matrix;
 
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import pers.yzx.geometry.Point;
 
 import java.io.Serializable;
@@ -7,6 +8,10 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Objects;
 import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -56,12 +61,63 @@ public interface Matrix<E> extends Iterable<Matrix.Cursor<Index, E>> {
 
     void clear();
 
+    // Bulk Operations
+
+    /**
+     * Sets every cell of the matrix to the given element; {@code null} empties the matrix.
+     *
+     * @param element the element to store in every cell
+     */
+    void fill(E element);
+
+    /**
+     * Replaces every non-null element with the result of applying the operator to it. A {@code null}
+     * result empties the cell. The operator may be applied concurrently from several threads.
+     *
+     * @param operator the operator to apply to each element
+     */
+    void replaceAll(UnaryOperator<E> operator);
+
+    /**
+     * Stores the result of applying the function to every non-null element into the cell of the same
+     * floor, row and column of the target matrix. The other cells of the target are left unchanged.
+     * The function may be applied concurrently from several threads.
+     *
+     * @param target   a matrix with the same floor, row and column counts
+     * @param function the function to apply to each element
+     * @param <R>      the type of the target elements
+     * @throws IllegalArgumentException if the target does not have the shape of this matrix
+     */
+    <R> void mapInto(Matrix<R> target, Function<? super E, ? extends R> function);
+
+    /**
+     * Folds the non-null elements of the matrix, in the manner of
+     * {@link java.util.stream.Stream#reduce(Object, BiFunction, BinaryOperator)}: the cells are
+     * partitioned, each part is accumulated starting from {@code identity}, and the partial results are
+     * merged with {@code combiner}.
+     *
+     * @param identity    the identity of the combiner
+     * @param accumulator folds an element into a partial result
+     * @param combiner    merges two partial results
+     * @param <R>         the type of the result
+     * @return the result of the reduction
+     */
+    <R> R reduce(R identity, BiFunction<R, ? super E, R> accumulator, BinaryOperator<R> combiner);
+
     // Matrix Iterators
     Iterator<Matrix.Cursor<Index, E>> iterator();
 
     Iterator<Index> indexIterator();
 
-    Iterator<Integer> keyIterator();
+    IntIterator keyIterator();
+
+    /**
+     * Performs the given action on every non-null cell, in flat index order unless the implementation
+     * specifies otherwise. Unlike {@link #iterator()}, no {@link Index} nor {@link Cursor} is created.
+     *
+     * @param action the action to be performed for each cell
+     */
+    void forEachCell(CellConsumer<? super E> action);
 
     // Search Operations
     int getStartRow(Matrix matrix);
@@ -85,8 +141,25 @@ public interface Matrix<E> extends Iterable<Matrix.Cursor<Index, E>> {
     // View
     Bound getBound();
 
+    /**
+     * Returns a single-floor view of a floor of this matrix. The view shares the storage of this matrix,
+     * so changes in either one are visible in the other.
+     *
+     * @param floorIndex the floor to view
+     * @return a view of the floor
+     */
     Matrix<E> getFloorMatrix(int floorIndex);
 
+    /**
+     * Returns a view of the cells of this matrix inside a window, on every floor. The window is clipped
+     * to the bound of this matrix and widened to whole cells; the view shares the storage of this matrix,
+     * and its iterators and spliterators only visit the cells of the window.
+     *
+     * @param window the region to view, at the resolution of this matrix
+     * @return a view of the window, or {@code null} if the window does not overlap this matrix
+     */
+    Matrix<E> view(Bound window);
+
     /**
      * Creates a {@link Spliterator} over the elements in this matrix.
      *
@@ -0,0 +1,341 @@
+package pers.yzx.matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format of the matrices, designed to be mapped into memory.
+ * <p>
+ * A file starts with a {@value #HEADER_SIZE} byte little-endian header:
+ * <pre>
+ *  offset  type    field
+ *       0  int     magic number {@code "MTRX"}
+ *       4  int     format version
+ *       8  int     cell type: 0 for bits, otherwise {@link CellType#ordinal()} + 1
+ *      12  int     floor count
+ *      16  int     row count
+ *      20  int     column count
+ *      24  int     resolution
+ *      28  int     reserved
+ *      32  double  top left x
+ *      40  double  top left y
+ *      48          reserved up to the end of the header
+ * </pre>
+ * followed by the cells in flat index order, little-endian. Bits are stored as the 64-bit words of
+ * {@link BitMatrix}, padded to a whole word.
+ */
+public final class MatrixFile {
+    public static final int MAGIC = 'M' | 'T' << 8 | 'R' << 16 | 'X' << 24;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    static final int CHUNK_SHIFT = OffHeapMatrix.DEFAULT_CHUNK_SHIFT;
+    static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final int BIT_CELL_TYPE = 0;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private MatrixFile() {
+    }
+
+    /**
+     * Writes a primitive matrix to a new file, replacing any existing one.
+     *
+     * @param matrix the matrix to write
+     * @param path   the file to write
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(AbstractPrimitiveMatrix<?> matrix, Path path) throws IOException {
+        CellType cellType = matrix.getCellType();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header(matrix.getBound(), matrix.getFloorCount(), cellType.ordinal() + 1));
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int size = cellType.getByteSize();
+            for (int i = 0, count = matrix.getCount(); i < count; i++) {
+                if (buffer.remaining() < size) {
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                }
+                cellType.putDouble(buffer, buffer.position(), matrix.getDouble(i));
+                buffer.position(buffer.position() + size);
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+    }
+
+    /**
+     * Writes a bit matrix to a new file, replacing any existing one.
+     *
+     * @param matrix the matrix to write
+     * @param path   the file to write
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(BitMatrix matrix, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header(matrix.getBound(), matrix.getFloorCount(), BIT_CELL_TYPE));
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (long word : matrix.toLongArray()) {
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                }
+                buffer.putLong(word);
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+    }
+
+    /**
+     * Creates a file of zeroed cells and maps it for reading and writing.
+     *
+     * @param path       the file to create, replacing any existing one
+     * @param bound      bound of the matrix
+     * @param floorCount floor count of the matrix
+     * @param cellType   type of the cells
+     * @param <E>        the boxed type of the cells, which must match {@code cellType}
+     * @return the mapped matrix
+     * @throws IOException if an I/O error occurs
+     */
+    public static <E extends Number> MappedMatrix<E> create(Path path, Bound bound, int floorCount, CellType cellType)
+            throws IOException {
+        long byteSize = (long) bound.getCount() * floorCount * cellType.getByteSize();
+        create(path, header(bound, floorCount, cellType.ordinal() + 1), byteSize);
+        return map(path, true);
+    }
+
+    /**
+     * Creates a file of false bits and maps it for reading and writing.
+     *
+     * @param path       the file to create, replacing any existing one
+     * @param bound      bound of the matrix
+     * @param floorCount floor count of the matrix
+     * @return the mapped matrix
+     * @throws IOException if an I/O error occurs
+     */
+    public static MappedBitMatrix createBitMatrix(Path path, Bound bound, int floorCount) throws IOException {
+        create(path, header(bound, floorCount, BIT_CELL_TYPE), bitByteSize(bound.getCount() * floorCount));
+        return mapBitMatrix(path, true);
+    }
+
+    /**
+     * Maps a file of primitive cells.
+     *
+     * @param path     the file to map
+     * @param writable whether the cells may be modified, writing through to the file
+     * @param <E>      the boxed type of the cells, which must match the cell type of the file
+     * @return the mapped matrix
+     * @throws IOException if an I/O error occurs or the file is not a primitive matrix file
+     */
+    public static <E extends Number> MappedMatrix<E> map(Path path, boolean writable) throws IOException {
+        try (FileChannel channel = open(path, writable)) {
+            Header header = readHeader(channel);
+            CellType cellType = header.getCellType();
+            if (cellType == null) {
+                throw new IOException("Not a primitive matrix file: " + path);
+            }
+            long byteSize = (long) header.getBound().getCount() * header.getFloorCount() * cellType.getByteSize();
+            ByteBuffer[] chunks = mapChunks(channel, writable, byteSize);
+            return new MappedMatrix<>(header.getBound(), header.getFloorCount(), cellType, chunks, writable);
+        }
+    }
+
+    /**
+     * Maps a file of bits.
+     *
+     * @param path     the file to map
+     * @param writable whether the bits may be modified, writing through to the file
+     * @return the mapped matrix
+     * @throws IOException if an I/O error occurs or the file is not a bit matrix file
+     */
+    public static MappedBitMatrix mapBitMatrix(Path path, boolean writable) throws IOException {
+        try (FileChannel channel = open(path, writable)) {
+            Header header = readHeader(channel);
+            if (!header.isBitMatrix()) {
+                throw new IOException("Not a bit matrix file: " + path);
+            }
+            long byteSize = bitByteSize(header.getBound().getCount() * header.getFloorCount());
+            ByteBuffer[] chunks = mapChunks(channel, writable, byteSize);
+            return new MappedBitMatrix(header.getBound(), header.getFloorCount(), chunks, writable);
+        }
+    }
+
+    /**
+     * Reads a file of bits into a heap bit matrix.
+     *
+     * @param path the file to read
+     * @return the matrix
+     * @throws IOException if an I/O error occurs or the file is not a bit matrix file
+     */
+    public static BitMatrix readBitMatrix(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            if (!header.isBitMatrix()) {
+                throw new IOException("Not a bit matrix file: " + path);
+            }
+            long[] words = new long[LongBits.wordCount(header.getBound().getCount() * header.getFloorCount())];
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            long position = HEADER_SIZE;
+            int w = 0;
+            while (w < words.length) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), (long) (words.length - w) * Long.BYTES));
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Truncated matrix file: " + path);
+                    }
+                    position += read;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    words[w++] = buffer.getLong();
+                }
+            }
+            return new BitMatrix(header.getBound(), header.getFloorCount(), words);
+        }
+    }
+
+    /**
+     * Reads the header of a matrix file.
+     *
+     * @param path the file to read
+     * @return the header
+     * @throws IOException if an I/O error occurs or the file is not a matrix file
+     */
+    public static Header readHeader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel);
+        }
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new IOException("Truncated matrix file header");
+            }
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a matrix file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported matrix file version: " + buffer.getInt(4));
+        }
+        int cellTypeCode = buffer.getInt(8);
+        if (cellTypeCode < BIT_CELL_TYPE || cellTypeCode > CellType.values().length) {
+            throw new IOException("Unknown cell type: " + cellTypeCode);
+        }
+        int floorCount = buffer.getInt(12);
+        if (floorCount < 1) {
+            throw new IOException("Illegal floor count: " + floorCount);
+        }
+        CellType cellType = cellTypeCode == BIT_CELL_TYPE ? null : CellType.values()[cellTypeCode - 1];
+        try {
+            Bound bound = new Bound(buffer.getDouble(32), buffer.getDouble(40), buffer.getInt(16),
+                    buffer.getInt(20), buffer.getInt(24));
+            return new Header(bound, floorCount, cellType);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt matrix file header", e);
+        }
+    }
+
+    private static ByteBuffer header(Bound bound, int floorCount, int cellTypeCode) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC)
+                .putInt(4, VERSION)
+                .putInt(8, cellTypeCode)
+                .putInt(12, floorCount)
+                .putInt(16, bound.getRowCount())
+                .putInt(20, bound.getColumnCount())
+                .putInt(24, bound.getResolution())
+                .putDouble(32, bound.getTopLeftX())
+                .putDouble(40, bound.getTopLeftY());
+        return buffer;
+    }
+
+    private static void create(Path path, ByteBuffer header, long byteSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            writeFully(channel, header);
+            if (byteSize > 0) {
+                // extend the file to its full size, the gap reads as zeros
+                channel.write(ByteBuffer.allocate(1), HEADER_SIZE + byteSize - 1);
+            }
+        }
+    }
+
+    private static FileChannel open(Path path, boolean writable) throws IOException {
+        return writable ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    private static ByteBuffer[] mapChunks(FileChannel channel, boolean writable, long byteSize) throws IOException {
+        if (channel.size() < HEADER_SIZE + byteSize) {
+            throw new IOException("Truncated matrix file: " + channel.size() + " bytes, expected " +
+                    (HEADER_SIZE + byteSize));
+        }
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        int chunkCount = (int) ((byteSize + CHUNK_MASK) >>> CHUNK_SHIFT);
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long offset = (long) i << CHUNK_SHIFT;
+            long size = Math.min(1L << CHUNK_SHIFT, byteSize - offset);
+            chunks[i] = channel.map(mode, HEADER_SIZE + offset, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return chunks;
+    }
+
+    private static long bitByteSize(int bitCount) {
+        return (long) ((bitCount + Long.SIZE - 1) >>> 6) << 3;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Description of a matrix file, as stored in its header.
+     */
+    public static final class Header {
+        private final Bound bound;
+        private final int floorCount;
+        private final CellType cellType;
+
+        Header(Bound bound, int floorCount, CellType cellType) {
+            this.bound = bound;
+            this.floorCount = floorCount;
+            this.cellType = cellType;
+        }
+
+        public Bound getBound() {
+            return bound;
+        }
+
+        public int getFloorCount() {
+            return floorCount;
+        }
+
+        /**
+         * Returns the primitive type of the cells, or {@code null} for a bit matrix file.
+         *
+         * @return the cell type
+         */
+        public CellType getCellType() {
+            return cellType;
+        }
+
+        public boolean isBitMatrix() {
+            return cellType == null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package pers.yzx.matrix;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Fork/join helpers of the bulk operations.
+ * <p>
+ * The cells of a matrix are partitioned into blocks of whole rows, never spanning two floors. A block
+ * is handed over as the flat index range {@code [fromIndex, toIndex)} of its rows.
+ */
+final class MatrixTasks {
+    /**
+     * Number of cells under which a range is not split any further.
+     */
+    static final int BLOCK_SIZE = 1 << 14;
+
+    private MatrixTasks() {
+    }
+
+    static void forEachBlock(Matrix<?> matrix, BlockAction action) {
+        int columnCount = matrix.getColumnCount();
+        int rowCount = matrix.getRowCount();
+        int globalRowCount = matrix.getFloorCount() * rowCount;
+        if (globalRowCount == 0 || columnCount == 0) {
+            return;
+        }
+        if (globalRowCount == rowCount && (long) rowCount * columnCount <= BLOCK_SIZE) {
+            action.apply(0, globalRowCount * columnCount);
+            return;
+        }
+        new BlockTask(action, rowCount, columnCount, 0, globalRowCount).invoke();
+    }
+
+    static <R> R reduceBlocks(Matrix<?> matrix, R identity, BlockFunction<R> function, BinaryOperator<R> combiner) {
+        int columnCount = matrix.getColumnCount();
+        int rowCount = matrix.getRowCount();
+        int globalRowCount = matrix.getFloorCount() * rowCount;
+        if (globalRowCount == 0 || columnCount == 0) {
+            return identity;
+        }
+        if (globalRowCount == rowCount && (long) rowCount * columnCount <= BLOCK_SIZE) {
+            return function.apply(0, globalRowCount * columnCount);
+        }
+        return new ReduceTask<>(function, combiner, rowCount, columnCount, 0, globalRowCount).invoke();
+    }
+
+    /**
+     * Returns the global row (floor index * row count + row index) splitting {@code [lo, hi)}, on a floor
+     * boundary when the range spans several floors, or -1 when the range is a small enough part of a
+     * single floor.
+     */
+    private static int split(int rowCount, int columnCount, int lo, int hi) {
+        if (hi - lo > rowCount) {
+            int mid = (lo + hi) >>> 1;
+            int floorMid = mid - mid % rowCount;
+            return floorMid > lo ? floorMid : floorMid + rowCount;
+        }
+        if ((long) (hi - lo) * columnCount <= BLOCK_SIZE || hi - lo < 2) {
+            return -1;
+        }
+        return (lo + hi) >>> 1;
+    }
+
+    interface BlockAction {
+        void apply(int fromIndex, int toIndex);
+    }
+
+    interface BlockFunction<R> {
+        R apply(int fromIndex, int toIndex);
+    }
+
+    private static class BlockTask extends RecursiveAction {
+        private final BlockAction action;
+        private final int rowCount;
+        private final int columnCount;
+        private final int lo;
+        private final int hi;
+
+        BlockTask(BlockAction action, int rowCount, int columnCount, int lo, int hi) {
+            this.action = action;
+            this.rowCount = rowCount;
+            this.columnCount = columnCount;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            int mid = split(rowCount, columnCount, lo, hi);
+            if (mid < 0) {
+                action.apply(lo * columnCount, hi * columnCount);
+            } else {
+                invokeAll(new BlockTask(action, rowCount, columnCount, lo, mid),
+                        new BlockTask(action, rowCount, columnCount, mid, hi));
+            }
+        }
+    }
+
+    private static class ReduceTask<R> extends RecursiveTask<R> {
+        private final BlockFunction<R> function;
+        private final BinaryOperator<R> combiner;
+        private final int rowCount;
+        private final int columnCount;
+        private final int lo;
+        private final int hi;
+
+        ReduceTask(BlockFunction<R> function, BinaryOperator<R> combiner, int rowCount, int columnCount,
+                   int lo, int hi) {
+            this.function = function;
+            this.combiner = combiner;
+            this.rowCount = rowCount;
+            this.columnCount = columnCount;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected R compute() {
+            int mid = split(rowCount, columnCount, lo, hi);
+            if (mid < 0) {
+                return function.apply(lo * columnCount, hi * columnCount);
+            }
+            ReduceTask<R> right = new ReduceTask<>(function, combiner, rowCount, columnCount, mid, hi);
+            right.fork();
+            R left = new ReduceTask<>(function, combiner, rowCount, columnCount, lo, mid).compute();
+            return combiner.apply(left, right.join());
+        }
+    }
+}
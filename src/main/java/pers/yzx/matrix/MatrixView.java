@@ -0,0 +1,150 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Iterator;
+
+/**
+ * A window of another matrix, translating its indices onto the storage of the parent.
+ * <p>
+ * The view copies nothing: reads and writes go straight to the parent, and the iterators and
+ * spliterators of the view only visit the cells of the window. The effective count of a view that does
+ * not cover its whole parent is counted cell by cell.
+ *
+ * @param <E> the type of the elements
+ */
+public class MatrixView<E> extends AbstractMatrix<E> implements Matrix<E> {
+    private final AbstractMatrix<E> parent;
+    private final int floorOffset;
+    private final int rowOffset;
+    private final int columnOffset;
+
+    MatrixView(AbstractMatrix<E> parent, int floorOffset, int floorCount, int rowOffset, int columnOffset, Bound bound) {
+        super(bound, floorCount);
+        this.parent = parent;
+        this.floorOffset = floorOffset;
+        this.rowOffset = rowOffset;
+        this.columnOffset = columnOffset;
+    }
+
+    public Matrix<E> getParent() {
+        return parent;
+    }
+
+    public int getFloorOffset() {
+        return floorOffset;
+    }
+
+    public int getRowOffset() {
+        return rowOffset;
+    }
+
+    public int getColumnOffset() {
+        return columnOffset;
+    }
+
+    private boolean coversParent() {
+        return floorCount == parent.getFloorCount() && bound.getRowCount() == parent.getRowCount() &&
+                bound.getColumnCount() == parent.getColumnCount();
+    }
+
+    @Override
+    public int getEffectiveCount() {
+        if (coversParent()) {
+            return parent.getEffectiveCount();
+        }
+        int[] effectiveCount = new int[1];
+        forEachCell((f, i, j, e) -> effectiveCount[0]++);
+        return effectiveCount[0];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return coversParent() ? parent.isEmpty() : !indexIterator().hasNext();
+    }
+
+    @Override
+    public E get(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return parent.get(floorOffset + floorIndex, rowOffset + rowIndex, columnOffset + columnIndex);
+    }
+
+    @Override
+    public E get(int flatIndex) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        int columnCount = bound.getColumnCount();
+        int floorFlatIndex = flatIndex % floorSize;
+        return parent.get(floorOffset + flatIndex / floorSize, rowOffset + floorFlatIndex / columnCount,
+                columnOffset + floorFlatIndex % columnCount);
+    }
+
+    @Override
+    public void set(int floorIndex, int rowIndex, int columnIndex, E element) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        parent.set(floorOffset + floorIndex, rowOffset + rowIndex, columnOffset + columnIndex, element);
+    }
+
+    @Override
+    public void set(int flatIndex, E element) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        int columnCount = bound.getColumnCount();
+        int floorFlatIndex = flatIndex % floorSize;
+        parent.set(floorOffset + flatIndex / floorSize, rowOffset + floorFlatIndex / columnCount,
+                columnOffset + floorFlatIndex % columnCount, element);
+    }
+
+    /**
+     * Empties the cells of the window in the parent; unlike the other matrices the view keeps its bound.
+     */
+    @Override
+    public void clear() {
+        fill(null);
+    }
+
+    @Override
+    boolean isParallelWritable() {
+        return parent.isParallelWritable();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The window is filled on the fork/join pool, by blocks of rows, when the parent accepts concurrent
+     * writes.
+     */
+    @Override
+    public void fill(E element) {
+        if (!isParallelWritable()) {
+            super.fill(element);
+            return;
+        }
+        MatrixTasks.forEachBlock(this, (fromIndex, toIndex) -> {
+            for (int i = fromIndex; i < toIndex; i++) {
+                set(i, element);
+            }
+        });
+    }
+
+    @Override
+    Matrix<E> view(int floorIndex, int floorCount, int rowIndex, int columnIndex, Bound viewBound) {
+        return new MatrixView<>(parent, floorOffset + floorIndex, floorCount, rowOffset + rowIndex,
+                columnOffset + columnIndex, viewBound);
+    }
+
+    @Override
+    public Iterator<Cursor<Index, E>> iterator() {
+        return new MatrixIterator();
+    }
+
+    @Override
+    public Iterator<Index> indexIterator() {
+        return new IndexItr();
+    }
+
+    @Override
+    public IntIterator keyIterator() {
+        return new KeyIterator();
+    }
+}
@@ -0,0 +1,393 @@
+package pers.yzx.matrix;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Binary morphology on {@link BitMatrix} masks, floor by floor.
+ * <p>
+ * Each floor is unpacked into rows aligned on 64-bit words, so that a neighbourhood along a row is a
+ * word shift and the combination of neighbourhoods is a word OR (dilation) or AND (erosion). Square
+ * elements are separable and grown by doubling, in a logarithmic number of passes; disks are built from
+ * one horizontal segment per row offset, or through an exact Euclidean distance transform beyond
+ * {@link #DISK_TRANSFORM_RADIUS}. The passes run on the fork/join pool by bands of rows. Cells outside
+ * the matrix read as {@code false}, so erosion also wears masks away from the border.
+ */
+public final class Morphology {
+    /**
+     * Disk radius from which disks are computed with a distance transform rather than with shifts.
+     */
+    public static final int DISK_TRANSFORM_RADIUS = 24;
+    private static final int BAND_WORDS = 1 << 12;
+
+    public enum Element {
+        /**
+         * The cells within {@code radius} along both axes.
+         */
+        SQUARE,
+        /**
+         * The cells within {@code radius} along one axis, on the row or the column of the centre.
+         */
+        CROSS,
+        /**
+         * The cells whose squared distance to the centre is at most {@code radius * radius}.
+         */
+        DISK
+    }
+
+    private Morphology() {
+    }
+
+    public static BitMatrix dilate(BitMatrix matrix, Element element, int radius) {
+        return apply(matrix, element, radius, true);
+    }
+
+    public static BitMatrix erode(BitMatrix matrix, Element element, int radius) {
+        return apply(matrix, element, radius, false);
+    }
+
+    /**
+     * Erodes then dilates, removing the parts of the mask thinner than the element.
+     */
+    public static BitMatrix open(BitMatrix matrix, Element element, int radius) {
+        return dilate(erode(matrix, element, radius), element, radius);
+    }
+
+    /**
+     * Dilates then erodes, filling the holes and gaps of the mask smaller than the element.
+     */
+    public static BitMatrix close(BitMatrix matrix, Element element, int radius) {
+        return erode(dilate(matrix, element, radius), element, radius);
+    }
+
+    private static BitMatrix apply(BitMatrix matrix, Element element, int radius, boolean dilation) {
+        if (radius < 0)
+            throw new IllegalArgumentException("Illegal radius: " + radius);
+        Rows rows = new Rows(matrix);
+        long[][] floors = new long[matrix.getFloorCount()][];
+        for (int f = 0; f < floors.length; f++) {
+            long[] grid = rows.unpack(f);
+            if (radius > 0) {
+                switch (element) {
+                    case SQUARE:
+                        grid = rows.vertical(rows.horizontal(grid, radius, dilation), radius, dilation);
+                        break;
+                    case CROSS:
+                        grid = rows.combine(rows.horizontal(grid, radius, dilation), rows.vertical(grid, radius, dilation),
+                                dilation);
+                        break;
+                    default:
+                        grid = radius < DISK_TRANSFORM_RADIUS ? rows.disk(grid, radius, dilation) :
+                                rows.diskTransform(grid, radius, dilation);
+                }
+            }
+            floors[f] = grid;
+        }
+        return rows.pack(floors);
+    }
+
+    /**
+     * Row-aligned layout of the floors of a matrix: row {@code i} takes the words {@code [i * width,
+     * (i + 1) * width)} of a floor grid, and the bits past the last column are clear.
+     */
+    private static class Rows {
+        private final BitMatrix matrix;
+        private final long[] words;
+        private final int rowCount;
+        private final int columnCount;
+        private final int width;
+        private final long lastMask;
+        private final int bandRows;
+
+        Rows(BitMatrix matrix) {
+            this.matrix = matrix;
+            this.words = matrix.toLongArray();
+            this.rowCount = matrix.getRowCount();
+            this.columnCount = matrix.getColumnCount();
+            this.width = LongBits.wordCount(columnCount);
+            this.lastMask = columnCount % Long.SIZE == 0 ? -1L : (1L << columnCount) - 1;
+            this.bandRows = Math.max(1, BAND_WORDS / Math.max(1, width));
+        }
+
+        /**
+         * Runs the action on bands of rows on the fork/join pool.
+         */
+        private void forEachBand(RowAction action) {
+            int bandCount = (rowCount + bandRows - 1) / bandRows;
+            IntStream.range(0, bandCount).parallel()
+                    .forEach(b -> action.apply(b * bandRows, Math.min((b + 1) * bandRows, rowCount)));
+        }
+
+        long[] unpack(int floorIndex) {
+            long[] grid = new long[rowCount * width];
+            int floorStart = floorIndex * rowCount * columnCount;
+            forEachBand((fromRow, toRow) -> {
+                for (int i = fromRow; i < toRow; i++) {
+                    int rowStart = floorStart + i * columnCount;
+                    for (int w = 0; w < width; w++) {
+                        grid[i * width + w] = LongBits.read(words, rowStart + w * Long.SIZE);
+                    }
+                    grid[i * width + width - 1] &= lastMask;
+                }
+            });
+            return grid;
+        }
+
+        BitMatrix pack(long[][] floors) {
+            long[] packed = new long[LongBits.wordCount(matrix.getCount())];
+            BitMatrix.forEachBand(floors.length * rowCount, columnCount, (fromRow, toRow) -> {
+                for (int row = fromRow; row < toRow; row++) {
+                    long[] grid = floors[row / rowCount];
+                    int i = row % rowCount;
+                    int rowStart = row * columnCount;
+                    for (int w = 0; w < width; w++) {
+                        LongBits.write(packed, rowStart + w * Long.SIZE, grid[i * width + w],
+                                Math.min(Long.SIZE, columnCount - w * Long.SIZE));
+                    }
+                }
+                return 0;
+            });
+            return new BitMatrix(matrix.getBound(), matrix.getFloorCount(), packed);
+        }
+
+        /**
+         * Returns the 64 bits of a row starting at column {@code bitIndex}, which may be negative; the
+         * columns outside the row read as clear.
+         */
+        private long read(long[] grid, int rowOffset, int bitIndex) {
+            if (bitIndex < 0) {
+                return bitIndex <= -Long.SIZE ? 0 : grid[rowOffset] << -bitIndex;
+            }
+            int w = bitIndex >>> LongBits.ADDRESS_BITS_PER_WORD;
+            if (w >= width) {
+                return 0;
+            }
+            int shift = bitIndex & (Long.SIZE - 1);
+            long bits = grid[rowOffset + w] >>> shift;
+            if (shift != 0 && w + 1 < width) {
+                bits |= grid[rowOffset + w + 1] << -shift;
+            }
+            return bits;
+        }
+
+        /**
+         * Combines every cell of {@code source} with the cells {@code step} columns to its left and right
+         * into {@code target}.
+         */
+        private void shift(long[] source, long[] target, int step, boolean dilation, int fromRow, int toRow) {
+            for (int i = fromRow; i < toRow; i++) {
+                int offset = i * width;
+                for (int w = 0; w < width; w++) {
+                    int bit = w * Long.SIZE;
+                    long left = read(source, offset, bit - step);
+                    long right = read(source, offset, bit + step);
+                    long word = source[offset + w];
+                    target[offset + w] = dilation ? word | left | right : word & left & right;
+                }
+                target[offset + width - 1] &= lastMask;
+            }
+        }
+
+        /**
+         * Combines each cell with the cells within {@code radius} on its row, by doubling the covered
+         * segment at each pass.
+         */
+        long[] horizontal(long[] grid, int radius, boolean dilation) {
+            long[] result = grid;
+            for (int covered = 0; covered < radius; ) {
+                int step = Math.min(covered + 1, radius - covered);
+                long[] source = result;
+                long[] target = new long[source.length];
+                forEachBand((fromRow, toRow) -> shift(source, target, step, dilation, fromRow, toRow));
+                result = target;
+                covered += step;
+            }
+            return result;
+        }
+
+        /**
+         * Combines each cell with the cells within {@code radius} on its column, by doubling the covered
+         * segment at each pass.
+         */
+        long[] vertical(long[] grid, int radius, boolean dilation) {
+            long[] result = grid;
+            for (int covered = 0; covered < radius; ) {
+                int step = Math.min(covered + 1, radius - covered);
+                long[] source = result;
+                long[] target = new long[source.length];
+                forEachBand((fromRow, toRow) -> {
+                    for (int i = fromRow; i < toRow; i++) {
+                        int up = i - step;
+                        int down = i + step;
+                        for (int w = 0, k = i * width; w < width; w++, k++) {
+                            long above = up >= 0 ? source[k - step * width] : 0;
+                            long below = down < rowCount ? source[k + step * width] : 0;
+                            target[k] = dilation ? source[k] | above | below : source[k] & above & below;
+                        }
+                    }
+                });
+                result = target;
+                covered += step;
+            }
+            return result;
+        }
+
+        long[] combine(long[] a, long[] b, boolean dilation) {
+            long[] result = new long[a.length];
+            forEachBand((fromRow, toRow) -> {
+                for (int k = fromRow * width; k < toRow * width; k++) {
+                    result[k] = dilation ? a[k] | b[k] : a[k] & b[k];
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Combines, for every row offset {@code dy} of the disk, the rows {@code i + dy} spread by the
+         * half width of the disk at {@code dy}. The spreads are grown one column at a time, from the
+         * narrowest rows of the disk to its centre row.
+         */
+        long[] disk(long[] grid, int radius, boolean dilation) {
+            long[] result = new long[grid.length];
+            if (!dilation) {
+                Arrays.fill(result, -1L);
+            }
+            long[] spread = grid;
+            int dy = radius;
+            for (int halfWidth = 0; halfWidth <= radius; halfWidth++) {
+                if (halfWidth > 0) {
+                    long[] source = spread;
+                    long[] target = new long[source.length];
+                    forEachBand((fromRow, toRow) -> shift(source, target, 1, dilation, fromRow, toRow));
+                    spread = target;
+                }
+                // the row offsets whose half width is halfWidth, from the edge of the disk inwards
+                while (dy >= 0 && halfWidth(radius, dy) == halfWidth) {
+                    accumulate(result, spread, dy, dilation);
+                    if (dy > 0) {
+                        accumulate(result, spread, -dy, dilation);
+                    }
+                    dy--;
+                }
+            }
+            return result;
+        }
+
+        private static int halfWidth(int radius, int dy) {
+            int w = (int) Math.sqrt((double) radius * radius - (double) dy * dy);
+            while ((long) (w + 1) * (w + 1) + (long) dy * dy <= (long) radius * radius) {
+                w++;
+            }
+            while ((long) w * w + (long) dy * dy > (long) radius * radius) {
+                w--;
+            }
+            return w;
+        }
+
+        /**
+         * Combines into each row {@code i} of the result the row {@code i + dy} of the spread.
+         */
+        private void accumulate(long[] result, long[] spread, int dy, boolean dilation) {
+            forEachBand((fromRow, toRow) -> {
+                for (int i = fromRow; i < toRow; i++) {
+                    int source = i + dy;
+                    boolean inside = source >= 0 && source < rowCount;
+                    for (int w = 0, k = i * width; w < width; w++, k++) {
+                        long word = inside ? spread[k + dy * width] : 0;
+                        result[k] = dilation ? result[k] | word : result[k] & word;
+                    }
+                }
+            });
+        }
+
+        /**
+         * Computes a disk through the exact squared Euclidean distance transform of Felzenszwalb and
+         * Huttenlocher: a dilation keeps the cells within {@code radius} of a set cell, an erosion the
+         * set cells farther than {@code radius} from any clear cell, the outside of the matrix being clear.
+         */
+        long[] diskTransform(long[] grid, int radius, boolean dilation) {
+            // distance along the column to the nearest feature, capped beyond the radius
+            int cap = radius + 1;
+            int[] columnDistance = new int[rowCount * columnCount];
+            IntStream.range(0, columnCount).parallel().forEach(j -> {
+                int w = j >>> LongBits.ADDRESS_BITS_PER_WORD;
+                long bit = 1L << j;
+                int distance = dilation ? cap : 0;
+                for (int i = 0; i < rowCount; i++) {
+                    boolean feature = ((grid[i * width + w] & bit) != 0) == dilation;
+                    distance = feature ? 0 : Math.min(cap, distance + 1);
+                    columnDistance[i * columnCount + j] = distance;
+                }
+                distance = dilation ? cap : 0;
+                for (int i = rowCount - 1; i >= 0; i--) {
+                    boolean feature = ((grid[i * width + w] & bit) != 0) == dilation;
+                    distance = feature ? 0 : Math.min(cap, distance + 1);
+                    if (distance < columnDistance[i * columnCount + j]) {
+                        columnDistance[i * columnCount + j] = distance;
+                    }
+                }
+            });
+            long squaredRadius = (long) radius * radius;
+            long[] result = new long[grid.length];
+            forEachBand((fromRow, toRow) -> {
+                double[] f = new double[columnCount];
+                double[] d = new double[columnCount];
+                int[] v = new int[columnCount];
+                double[] z = new double[columnCount + 1];
+                for (int i = fromRow; i < toRow; i++) {
+                    for (int j = 0; j < columnCount; j++) {
+                        double g = columnDistance[i * columnCount + j];
+                        f[j] = g * g;
+                    }
+                    envelope(f, d, v, z, columnCount);
+                    for (int j = 0; j < columnCount; j++) {
+                        double distance = d[j];
+                        if (!dilation) {
+                            // clear cells beyond the left and right borders
+                            distance = Math.min(distance, Math.min((double) (j + 1) * (j + 1),
+                                    (double) (columnCount - j) * (columnCount - j)));
+                        }
+                        if (dilation ? distance <= squaredRadius : distance > squaredRadius) {
+                            result[i * width + (j >>> LongBits.ADDRESS_BITS_PER_WORD)] |= 1L << j;
+                        }
+                    }
+                }
+            });
+            return result;
+        }
+
+        /**
+         * One-dimensional squared distance transform of {@code f} into {@code d}, through the lower envelope
+         * of the parabolas rooted at every position.
+         */
+        private static void envelope(double[] f, double[] d, int[] v, double[] z, int n) {
+            int k = 0;
+            v[0] = 0;
+            z[0] = Double.NEGATIVE_INFINITY;
+            z[1] = Double.POSITIVE_INFINITY;
+            for (int q = 1; q < n; q++) {
+                double s = ((f[q] + (double) q * q) - (f[v[k]] + (double) v[k] * v[k])) / (2.0 * q - 2.0 * v[k]);
+                while (s <= z[k]) {
+                    k--;
+                    s = ((f[q] + (double) q * q) - (f[v[k]] + (double) v[k] * v[k])) / (2.0 * q - 2.0 * v[k]);
+                }
+                k++;
+                v[k] = q;
+                z[k] = s;
+                z[k + 1] = Double.POSITIVE_INFINITY;
+            }
+            k = 0;
+            for (int q = 0; q < n; q++) {
+                while (z[k + 1] < q) {
+                    k++;
+                }
+                double dq = q - v[k];
+                d[q] = dq * dq + f[v[k]];
+            }
+        }
+    }
+
+    private interface RowAction {
+        void apply(int fromRow, int toRow);
+    }
+}
@@ -0,0 +1,147 @@
+package pers.yzx.matrix;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A primitive matrix whose cells live outside the Java heap, in direct {@link ByteBuffer}s.
+ * <p>
+ * The cells are laid out by flat index and split into chunks of {@code 1 << chunkShift} bytes, so a
+ * matrix is not limited by the 2 GB capacity of a single buffer. The memory is released by
+ * {@link #close()} (or {@link #clear()}); afterwards the matrix is empty and every access fails with an
+ * {@link IndexOutOfBoundsException}. Closing is not thread-safe with respect to concurrent accesses.
+ *
+ * @param <E> the boxed type of the cells, which must match the {@link CellType}
+ */
+public class OffHeapMatrix<E extends Number> extends AbstractPrimitiveMatrix<E> implements Closeable {
+    static final int DEFAULT_CHUNK_SHIFT = 30;
+    final CellType cellType;
+    final int cellShift;
+    final int chunkShift;
+    final int chunkMask;
+    ByteBuffer[] chunks;
+
+    OffHeapMatrix(Bound bound, int floorCount, CellType cellType, int chunkShift) {
+        super(bound, floorCount);
+        this.cellType = cellType;
+        this.cellShift = Integer.numberOfTrailingZeros(cellType.getByteSize());
+        if (chunkShift < cellShift || chunkShift > DEFAULT_CHUNK_SHIFT) {
+            throw new IllegalArgumentException("Illegal chunk shift: " + chunkShift);
+        }
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+        this.chunks = allocateChunks();
+    }
+
+    OffHeapMatrix(Bound bound, int floorCount, CellType cellType, int chunkShift, ByteBuffer[] chunks) {
+        super(bound, floorCount);
+        this.cellType = cellType;
+        this.cellShift = Integer.numberOfTrailingZeros(cellType.getByteSize());
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+        this.chunks = chunks;
+    }
+
+    public static OffHeapMatrix<Short> ofShort(Bound bound, int floorCount) {
+        return new OffHeapMatrix<>(bound, floorCount, CellType.SHORT, DEFAULT_CHUNK_SHIFT);
+    }
+
+    public static OffHeapMatrix<Integer> ofInt(Bound bound, int floorCount) {
+        return new OffHeapMatrix<>(bound, floorCount, CellType.INT, DEFAULT_CHUNK_SHIFT);
+    }
+
+    public static OffHeapMatrix<Float> ofFloat(Bound bound, int floorCount) {
+        return new OffHeapMatrix<>(bound, floorCount, CellType.FLOAT, DEFAULT_CHUNK_SHIFT);
+    }
+
+    public static OffHeapMatrix<Double> ofDouble(Bound bound, int floorCount) {
+        return new OffHeapMatrix<>(bound, floorCount, CellType.DOUBLE, DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Returns the number of bytes needed to hold every cell.
+     *
+     * @return the size in bytes of the cell data
+     */
+    public long getByteSize() {
+        return (long) getCount() << cellShift;
+    }
+
+    @Override
+    public CellType getCellType() {
+        return cellType;
+    }
+
+    private ByteBuffer[] allocateChunks() {
+        long byteSize = getByteSize();
+        int chunkSize = 1 << chunkShift;
+        int chunkCount = (int) ((byteSize + chunkSize - 1) >>> chunkShift);
+        ByteBuffer[] buffers = new ByteBuffer[chunkCount];
+        try {
+            for (int i = 0; i < chunkCount; i++) {
+                int size = (int) Math.min(chunkSize, byteSize - ((long) i << chunkShift));
+                buffers[i] = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            }
+        } catch (OutOfMemoryError e) {
+            for (ByteBuffer buffer : buffers) {
+                DirectBuffers.release(buffer);
+            }
+            throw e;
+        }
+        return buffers;
+    }
+
+    private ByteBuffer chunk(int flatIndex) {
+        return chunks[(int) (((long) flatIndex << cellShift) >>> chunkShift)];
+    }
+
+    private int position(int flatIndex) {
+        return (int) ((long) flatIndex << cellShift) & chunkMask;
+    }
+
+    @Override
+    public double getDouble(int flatIndex) {
+        return cellType.getDouble(chunk(flatIndex), position(flatIndex));
+    }
+
+    @Override
+    public void setDouble(int flatIndex, double value) {
+        cellType.putDouble(chunk(flatIndex), position(flatIndex), value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int flatIndex) {
+        rangeCheck(flatIndex);
+        return (E) cellType.get(chunk(flatIndex), position(flatIndex));
+    }
+
+    @Override
+    public void set(int flatIndex, E element) {
+        rangeCheck(flatIndex);
+        if (element == null) {
+            cellType.putDouble(chunk(flatIndex), position(flatIndex), 0);
+        } else {
+            cellType.put(chunk(flatIndex), position(flatIndex), element);
+        }
+    }
+
+    /**
+     * Releases the off-heap memory and leaves an empty matrix.
+     */
+    @Override
+    public void clear() {
+        ByteBuffer[] buffers = chunks;
+        chunks = new ByteBuffer[0];
+        bound = new Bound(0, 0, 0, 0, 0);
+        for (ByteBuffer buffer : buffers) {
+            DirectBuffers.release(buffer);
+        }
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+}
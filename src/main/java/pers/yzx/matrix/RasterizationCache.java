@@ -0,0 +1,355 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import pers.yzx.geometry.Point;
+import pers.yzx.geometry.Polygon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the rasterizations of polygons by {@link BitMatrixFactory#createByScanLine(Polygon, int)},
+ * keyed by the vertices of the polygon and the resolution.
+ * <p>
+ * The entries are evicted in least recently used order once their total size, the bits or their
+ * compressed form plus the vertices of the key, exceeds the maximum byte size. Concurrent requests for
+ * a polygon being rasterized wait for that rasterization instead of starting their own. With a spill
+ * directory every rasterization is also written there as a {@link MatrixFile} followed by the vertices
+ * of its key, and read back on a miss, so that a new cache over the same directory starts warm; the
+ * directory is never pruned. A file is written aside and moved into place, so that it is never seen
+ * half written, and a file that cannot be read or holds other vertices is rasterized and written again.
+ */
+public class RasterizationCache {
+    private static final String FILE_EXTENSION = ".mtx";
+
+    private final long maximumByteSize;
+    private final boolean compressed;
+    private final Path spillDirectory;
+    // access ordered, guarded by itself
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<Key, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private long byteSize;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder diskHitCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public RasterizationCache(long maximumByteSize) {
+        this(maximumByteSize, false, null);
+    }
+
+    /**
+     * @param maximumByteSize the size above which entries are evicted
+     * @param compressed      whether to hold the entries as {@link CompressedBitMatrix}
+     * @param spillDirectory  the directory where rasterizations are written, or {@code null}
+     */
+    public RasterizationCache(long maximumByteSize, boolean compressed, Path spillDirectory) {
+        if (maximumByteSize < 0)
+            throw new IllegalArgumentException("Illegal maximum byte size: " + maximumByteSize);
+        this.maximumByteSize = maximumByteSize;
+        this.compressed = compressed;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns the rasterization of the polygon at the resolution, as a new matrix that the caller may
+     * modify.
+     *
+     * @throws UncheckedIOException if the spill directory cannot be written
+     */
+    public BitMatrix get(Polygon polygon, int resolution) {
+        Key key = new Key(polygon.getPoints(), resolution);
+        Entry entry = getEntry(key);
+        if (entry != null) {
+            hitCount.increment();
+            return entry.toBitMatrix();
+        }
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> current = loading.putIfAbsent(key, future);
+        if (current != null) {
+            // another thread is rasterizing the polygon
+            hitCount.increment();
+            try {
+                return current.join().toBitMatrix();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        try {
+            // the entry may have been stored between the lookup and the registration
+            entry = getEntry(key);
+            if (entry != null) {
+                hitCount.increment();
+            } else {
+                missCount.increment();
+                entry = load(key, polygon, resolution);
+                putEntry(key, entry);
+            }
+            future.complete(entry);
+            return entry.toBitMatrix();
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private Entry getEntry(Key key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private void putEntry(Key key, Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+            byteSize += entry.byteSize;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (byteSize > maximumByteSize && iterator.hasNext()) {
+                byteSize -= iterator.next().byteSize;
+                iterator.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private Entry load(Key key, Polygon polygon, int resolution) {
+        Path path = spillDirectory == null ? null : spillDirectory.resolve(key.getFileName());
+        if (path != null && Files.exists(path)) {
+            BitMatrix matrix = readSpill(path, key);
+            if (matrix != null) {
+                diskHitCount.increment();
+                return new Entry(key, matrix, compressed);
+            }
+        }
+        BitMatrix matrix = BitMatrixFactory.createByScanLine(polygon, resolution);
+        if (path != null) {
+            try {
+                writeSpill(path, key, matrix);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Entry(key, matrix, compressed);
+    }
+
+    /**
+     * Reads the rasterization of the key from its file, or returns {@code null} if the file cannot be read
+     * or holds the rasterization of other vertices under the same hash.
+     */
+    private static BitMatrix readSpill(Path path, Key key) {
+        try {
+            BitMatrix matrix = MatrixFile.readBitMatrix(path);
+            if (matrix.getResolution() != key.resolution) {
+                return null;
+            }
+            long position = MatrixFile.HEADER_SIZE +
+                    (long) LongBits.wordCount(matrix.getBound().getCount() * matrix.getFloorCount()) * Long.BYTES;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                if (!readFully(channel, length, position) || length.getInt(0) != key.coordinates.length) {
+                    return null;
+                }
+                ByteBuffer coordinates = ByteBuffer.allocate(key.coordinates.length * Double.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                if (!readFully(channel, coordinates, position + Integer.BYTES)) {
+                    return null;
+                }
+                for (int i = 0; i < key.coordinates.length; i++) {
+                    if (Double.doubleToLongBits(coordinates.getDouble(i * Double.BYTES)) !=
+                            Double.doubleToLongBits(key.coordinates[i])) {
+                        return null;
+                    }
+                }
+            }
+            return matrix;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the rasterization followed by the vertices of the key to a temporary file of the directory,
+     * then moves it over the file of the key.
+     */
+    private static void writeSpill(Path path, Key key, BitMatrix matrix) throws IOException {
+        Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            MatrixFile.write(matrix, temporary);
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + key.coordinates.length * Double.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(key.coordinates.length);
+            for (double coordinate : key.coordinates) {
+                buffer.putDouble(coordinate);
+            }
+            buffer.flip();
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Removes every entry from memory, leaving the spill directory as it is.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            byteSize = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the total size of the entries held in memory.
+     */
+    public long getByteSize() {
+        synchronized (entries) {
+            return byteSize;
+        }
+    }
+
+    public long getMaximumByteSize() {
+        return maximumByteSize;
+    }
+
+    /**
+     * Returns the number of requests answered from memory, including the requests that waited for a
+     * rasterization started by another one.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of requests that loaded their polygon, from the spill directory or by
+     * rasterizing it.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of misses answered from the spill directory.
+     */
+    public long getDiskHitCount() {
+        return diskHitCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * The vertices and resolution of a polygon, with a 64-bit hash of them that also names its file.
+     */
+    private static final class Key {
+        private final double[] coordinates;
+        private final int resolution;
+        private final long hash;
+
+        Key(List<Point> points, int resolution) {
+            this.coordinates = new double[points.size() * 2];
+            this.resolution = resolution;
+            long h = resolution;
+            for (int i = 0; i < points.size(); i++) {
+                coordinates[2 * i] = points.get(i).getX();
+                coordinates[2 * i + 1] = points.get(i).getY();
+                h = HashCommon.mix(h ^ Double.doubleToLongBits(coordinates[2 * i]));
+                h = HashCommon.mix(h ^ Double.doubleToLongBits(coordinates[2 * i + 1]));
+            }
+            this.hash = h;
+        }
+
+        String getFileName() {
+            return String.format("%016x-%d%s", hash, resolution, FILE_EXTENSION);
+        }
+
+        long getByteSize() {
+            return (long) coordinates.length * Double.BYTES;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && resolution == other.resolution &&
+                    Arrays.equals(coordinates, other.coordinates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+
+    private static final class Entry {
+        private final BitMatrix matrix;
+        private final CompressedBitMatrix compressedMatrix;
+        private final long byteSize;
+
+        Entry(Key key, BitMatrix matrix, boolean compressed) {
+            if (compressed) {
+                this.matrix = null;
+                this.compressedMatrix = CompressedBitMatrix.of(matrix);
+                this.byteSize = key.getByteSize() + compressedMatrix.getByteSize();
+            } else {
+                this.matrix = matrix;
+                this.compressedMatrix = null;
+                this.byteSize = key.getByteSize() + (long) LongBits.wordCount(matrix.getCount()) * Long.BYTES;
+            }
+        }
+
+        BitMatrix toBitMatrix() {
+            if (matrix == null) {
+                return compressedMatrix.toBitMatrix();
+            }
+            return new BitMatrix(matrix.getBound(), matrix.getFloorCount(), matrix.toLongArray());
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package pers.yzx.matrix;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Bulk resampling of a matrix onto another grid.
+ * <p>
+ * The target grid is given by a {@link Bound} and a floor mapping, {@code floorMapping[f]} being the
+ * source floor of the target floor {@code f}; a {@code null} mapping keeps the floors of the source.
+ * The source cells under each target row and column are computed once into index tables, then the
+ * target rows are produced in parallel, without any {@link Index} nor coordinate conversion per cell.
+ * <p>
+ * A source cell belongs to the footprint of a target cell when its centre lies inside the target cell,
+ * so the footprints of the aggregating methods partition the source. A target cell smaller than a source
+ * cell, whose footprint would be empty, takes the source cell under its centre. Target cells outside the
+ * source, or whose footprint holds no element, are {@code null}, or {@code NaN} in a {@link DoubleMatrix}.
+ */
+public final class Resampler {
+
+    public enum Method {
+        /**
+         * The source cell under the centre of the target cell.
+         */
+        NEAREST(true),
+        /**
+         * The most frequent element of the footprint, the first one met in row-major order on ties.
+         */
+        MODE(true),
+        MEAN(false),
+        MIN(false),
+        MAX(false),
+        SUM(false),
+        /**
+         * Interpolation of the four source cells whose centres surround the centre of the target cell,
+         * over the ones holding an element.
+         */
+        BILINEAR(false);
+
+        private final boolean categorical;
+
+        Method(boolean categorical) {
+            this.categorical = categorical;
+        }
+
+        /**
+         * Returns whether the method picks source elements as they are, so applies to any element type.
+         */
+        public boolean isCategorical() {
+            return categorical;
+        }
+    }
+
+    private Resampler() {
+    }
+
+    /**
+     * Resamples a matrix of any element type with a categorical method.
+     *
+     * @param source       the matrix to resample
+     * @param target       the bound of the result, at any resolution and origin
+     * @param floorMapping source floor of each target floor, or {@code null} to keep the source floors
+     * @param method       {@link Method#NEAREST} or {@link Method#MODE}
+     * @return a new matrix over the target bound
+     */
+    public static <E> ArrayMatrix<E> resample(Matrix<E> source, Bound target, int[] floorMapping, Method method) {
+        if (!method.isCategorical())
+            throw new IllegalArgumentException("Not a categorical method: " + method);
+        int[] floors = floors(source, floorMapping);
+        Axis rows = rowAxis(source, target);
+        Axis columns = columnAxis(source, target);
+        int sourceFloorSize = source.getRowCount() * source.getColumnCount();
+        int columnCount = target.getColumnCount();
+        Object[][] elementData = new Object[floors.length][target.getCount()];
+        int effectiveCount = IntStream.range(0, floors.length * target.getRowCount()).parallel().map(t -> {
+            int f = t / target.getRowCount();
+            int i = t % target.getRowCount();
+            Object[] floorData = elementData[f];
+            int base = floors[f] * sourceFloorSize;
+            int count = 0;
+            for (int j = 0, k = i * columnCount; j < columnCount; j++, k++) {
+                Object e = method == Method.NEAREST ? nearest(source, base, rows, columns, i, j) :
+                        mode(source, base, rows, columns, i, j);
+                if (e != null) {
+                    floorData[k] = e;
+                    count++;
+                }
+            }
+            return count;
+        }).sum();
+        return new ArrayMatrix<>(target, elementData, effectiveCount);
+    }
+
+    /**
+     * Resamples a numeric matrix with any method.
+     *
+     * @param source       the matrix to resample, whose {@code null} cells hold no value
+     * @param target       the bound of the result, at any resolution and origin
+     * @param floorMapping source floor of each target floor, or {@code null} to keep the source floors
+     * @param method       the resampling method
+     * @return a new matrix over the target bound, {@code NaN} where no source value applies
+     */
+    public static DoubleMatrix resampleDouble(Matrix<? extends Number> source, Bound target, int[] floorMapping,
+                                              Method method) {
+        Objects.requireNonNull(method);
+        int[] floors = floors(source, floorMapping);
+        Axis rows = rowAxis(source, target);
+        Axis columns = columnAxis(source, target);
+        int sourceFloorSize = source.getRowCount() * source.getColumnCount();
+        int columnCount = target.getColumnCount();
+        DoubleMatrix result = new DoubleMatrix(target, floors.length, Double.NaN);
+        IntStream.range(0, floors.length * target.getRowCount()).parallel().forEach(t -> {
+            int f = t / target.getRowCount();
+            int i = t % target.getRowCount();
+            int base = floors[f] * sourceFloorSize;
+            for (int j = 0, k = t * columnCount; j < columnCount; j++, k++) {
+                double value;
+                switch (method) {
+                    case NEAREST:
+                        value = value(source, nearest(source, base, rows, columns, i, j));
+                        break;
+                    case MODE:
+                        value = value(source, mode(source, base, rows, columns, i, j));
+                        break;
+                    case BILINEAR:
+                        value = bilinear(source, base, rows, columns, i, j);
+                        break;
+                    default:
+                        value = aggregate(source, base, rows, columns, i, j, method);
+                }
+                result.setDouble(k, value);
+            }
+        });
+        return result;
+    }
+
+    private static int[] floors(Matrix<?> source, int[] floorMapping) {
+        if (floorMapping == null) {
+            return IntStream.range(0, source.getFloorCount()).toArray();
+        }
+        for (int floor : floorMapping) {
+            if (floor < 0 || floor >= source.getFloorCount())
+                throw new IndexOutOfBoundsException("Floor index: " + floor + ", floor size: " +
+                        source.getFloorCount());
+        }
+        return floorMapping;
+    }
+
+    private static double value(Matrix<? extends Number> source, Object e) {
+        return e == null ? Double.NaN : ((Number) e).doubleValue();
+    }
+
+    private static <E> E nearest(Matrix<E> source, int base, Axis rows, Axis columns, int i, int j) {
+        int r = rows.nearest[i];
+        int c = columns.nearest[j];
+        return r < 0 || c < 0 ? null : source.get(base + r * source.getColumnCount() + c);
+    }
+
+    private static <E> E mode(Matrix<E> source, int base, Axis rows, Axis columns, int i, int j) {
+        int rowLow = rows.low[i], rowHigh = rows.high[i];
+        int columnLow = columns.low[j], columnHigh = columns.high[j];
+        if ((rowHigh - rowLow) * (columnHigh - columnLow) == 1) {
+            return source.get(base + rowLow * source.getColumnCount() + columnLow);
+        }
+        // the count of each element, and the order in which it was first met
+        Map<E, int[]> counts = new HashMap<>();
+        E mode = null;
+        int modeCount = 0;
+        int modeOrder = 0;
+        for (int r = rowLow; r < rowHigh; r++) {
+            for (int c = columnLow, k = base + r * source.getColumnCount() + c; c < columnHigh; c++, k++) {
+                E e = source.get(k);
+                if (e != null) {
+                    int order = counts.size();
+                    int[] count = counts.computeIfAbsent(e, key -> new int[]{0, order});
+                    count[0]++;
+                    if (count[0] > modeCount || count[0] == modeCount && count[1] < modeOrder) {
+                        mode = e;
+                        modeCount = count[0];
+                        modeOrder = count[1];
+                    }
+                }
+            }
+        }
+        return mode;
+    }
+
+    private static double aggregate(Matrix<? extends Number> source, int base, Axis rows, Axis columns, int i, int j,
+                                    Method method) {
+        int rowLow = rows.low[i], rowHigh = rows.high[i];
+        int columnLow = columns.low[j], columnHigh = columns.high[j];
+        AbstractPrimitiveMatrix<?> primitive = source instanceof AbstractPrimitiveMatrix ?
+                (AbstractPrimitiveMatrix<?>) source : null;
+        double result = method == Method.MIN ? Double.POSITIVE_INFINITY :
+                method == Method.MAX ? Double.NEGATIVE_INFINITY : 0;
+        int count = 0;
+        for (int r = rowLow; r < rowHigh; r++) {
+            for (int c = columnLow, k = base + r * source.getColumnCount() + c; c < columnHigh; c++, k++) {
+                double value;
+                if (primitive != null) {
+                    value = primitive.getDouble(k);
+                } else {
+                    Number e = source.get(k);
+                    if (e == null) {
+                        continue;
+                    }
+                    value = e.doubleValue();
+                }
+                switch (method) {
+                    case MIN:
+                        result = Math.min(result, value);
+                        break;
+                    case MAX:
+                        result = Math.max(result, value);
+                        break;
+                    default:
+                        result += value;
+                }
+                count++;
+            }
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return method == Method.MEAN ? result / count : result;
+    }
+
+    private static double bilinear(Matrix<? extends Number> source, int base, Axis rows, Axis columns, int i, int j) {
+        int r0 = rows.lower[i];
+        int c0 = columns.lower[j];
+        if (r0 < 0 || c0 < 0) {
+            return Double.NaN;
+        }
+        int r1 = rows.upper[i];
+        int c1 = columns.upper[j];
+        double wr = rows.weight[i];
+        double wc = columns.weight[j];
+        int columnCount = source.getColumnCount();
+        double sum = 0;
+        double weightSum = 0;
+        for (int n = 0; n < 4; n++) {
+            int r = (n & 2) == 0 ? r0 : r1;
+            int c = (n & 1) == 0 ? c0 : c1;
+            double weight = ((n & 2) == 0 ? 1 - wr : wr) * ((n & 1) == 0 ? 1 - wc : wc);
+            if (weight == 0) {
+                continue;
+            }
+            Number e = source.get(base + r * columnCount + c);
+            if (e != null) {
+                sum += weight * e.doubleValue();
+                weightSum += weight;
+            }
+        }
+        return weightSum == 0 ? Double.NaN : sum / weightSum;
+    }
+
+    private static Axis rowAxis(Matrix<?> source, Bound target) {
+        double scale = (double) target.getResolution() / source.getResolution();
+        double offset = (source.getTopLeftY() - target.getTopLeftY()) / source.getResolution();
+        return new Axis(offset, scale, target.getRowCount(), source.getRowCount());
+    }
+
+    private static Axis columnAxis(Matrix<?> source, Bound target) {
+        double scale = (double) target.getResolution() / source.getResolution();
+        double offset = (target.getTopLeftX() - source.getTopLeftX()) / source.getResolution();
+        return new Axis(offset, scale, target.getColumnCount(), source.getColumnCount());
+    }
+
+    /**
+     * Index tables of one axis: target cell {@code i} spans {@code [offset + i * scale,
+     * offset + (i + 1) * scale)} in source cell units.
+     */
+    private static class Axis {
+        private static final double EPSILON = 1e-9;
+        final int[] nearest; // source cell under the centre, -1 outside the source
+        final int[] low;     // first source cell of the footprint
+        final int[] high;    // one past the last source cell of the footprint
+        final int[] lower;   // source cell of the centre before the target centre, -1 outside the source
+        final int[] upper;   // source cell of the centre after the target centre
+        final double[] weight; // weight of the upper cell
+
+        Axis(double offset, double scale, int count, int sourceCount) {
+            nearest = new int[count];
+            low = new int[count];
+            high = new int[count];
+            lower = new int[count];
+            upper = new int[count];
+            weight = new double[count];
+            for (int i = 0; i < count; i++) {
+                double centre = offset + (i + 0.5) * scale;
+                nearest[i] = centre >= 0 && centre < sourceCount ? (int) Math.floor(centre) : -1;
+                int lo = clamp((int) Math.ceil(offset + i * scale - 0.5 - EPSILON), sourceCount);
+                int hi = clamp((int) Math.ceil(offset + (i + 1) * scale - 0.5 - EPSILON), sourceCount);
+                if (lo >= hi) {
+                    lo = nearest[i] < 0 ? 0 : nearest[i];
+                    hi = nearest[i] < 0 ? 0 : nearest[i] + 1;
+                }
+                low[i] = lo;
+                high[i] = hi;
+                if (nearest[i] < 0) {
+                    lower[i] = -1;
+                    continue;
+                }
+                double position = centre - 0.5;
+                int c = (int) Math.floor(position);
+                double w = position - c;
+                if (c < 0) {
+                    c = 0;
+                    w = 0;
+                } else if (c >= sourceCount - 1) {
+                    c = sourceCount - 1;
+                    w = 0;
+                }
+                lower[i] = c;
+                upper[i] = Math.min(c + 1, sourceCount - 1);
+                weight[i] = w;
+            }
+        }
+
+        private static int clamp(int index, int sourceCount) {
+            return Math.max(0, Math.min(index, sourceCount));
+        }
+    }
+}
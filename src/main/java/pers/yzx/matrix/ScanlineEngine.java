@@ -0,0 +1,197 @@
+package pers.yzx.matrix;
+
+import pers.yzx.geometry.Point;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Array-based scanline fill of polygon rings over the grid of a bound.
+ * <p>
+ * A cell is inside when its centre is, by a {@link FillRule} over all the rings added since the last
+ * {@link #reset(Bound)}, so that holes and the parts of a multipolygon share one edge table. An edge
+ * crosses the rows whose centre lies in {@code [yMin, yMax)}: a vertex between an edge going up and one
+ * going down is crossed twice or not at all, a vertex between two edges going the same way once, and
+ * horizontal edges are dropped, their neighbours accounting for them. A span covers the cells whose
+ * centre lies in {@code [xIn, xOut)}. The edges are held in parallel primitive arrays kept between
+ * polygons, so that one engine per thread rasterizes any number of polygons without allocating.
+ */
+final class ScanlineEngine {
+    private Bound bound;
+    private int edgeCount;
+    // x of an edge at the centre of its first row, and its change per row downwards
+    private double[] xs = new double[16];
+    private double[] dxs = new double[16];
+    private int[] firstRows = new int[16];
+    private int[] lastRows = new int[16];
+    // +1 for an edge going up, -1 for an edge going down
+    private int[] windings = new int[16];
+    private int[] order = new int[16];
+    private int[] active = new int[16];
+    private double[] crossings = new double[16];
+    private int[] bucketStarts = new int[0];
+    private int minRow;
+    private int maxRow;
+
+    interface SpanConsumer {
+        void accept(int rowIndex, int fromColumn, int toColumn);
+    }
+
+    void reset(Bound bound) {
+        this.bound = bound;
+        this.edgeCount = 0;
+        this.minRow = Integer.MAX_VALUE;
+        this.maxRow = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Returns the first row whose centre lies below {@code y}.
+     */
+    static int firstRow(Bound bound, double y) {
+        return (int) Math.floor((bound.getTopLeftY() - y) / bound.getResolution() - 0.5) + 1;
+    }
+
+    /**
+     * Returns the last row whose centre lies at or above {@code y}.
+     */
+    static int lastRow(Bound bound, double y) {
+        return (int) Math.floor((bound.getTopLeftY() - y) / bound.getResolution() - 0.5);
+    }
+
+    /**
+     * Returns the first column whose centre lies at or after {@code x}.
+     */
+    static int firstColumn(Bound bound, double x) {
+        return (int) Math.ceil((x - bound.getTopLeftX()) / bound.getResolution() - 0.5);
+    }
+
+    void addRing(List<Point> ring) {
+        int size = ring.size();
+        for (int k = 0; k < size; k++) {
+            Point p = ring.get(k);
+            Point q = ring.get((k + 1) % size);
+            addEdge(p.getX(), p.getY(), q.getX(), q.getY());
+        }
+    }
+
+    void addEdge(double x1, double y1, double x2, double y2) {
+        if (y1 == y2) {
+            return;
+        }
+        int first = firstRow(bound, Math.max(y1, y2));
+        int last = lastRow(bound, Math.min(y1, y2));
+        if (first > last) {
+            return;
+        }
+        if (edgeCount == xs.length) {
+            int capacity = edgeCount * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            dxs = Arrays.copyOf(dxs, capacity);
+            firstRows = Arrays.copyOf(firstRows, capacity);
+            lastRows = Arrays.copyOf(lastRows, capacity);
+            windings = Arrays.copyOf(windings, capacity);
+            order = new int[capacity];
+            active = new int[capacity];
+            crossings = new double[capacity];
+        }
+        double inverseSlope = (x2 - x1) / (y2 - y1);
+        double y = bound.getTopLeftY() - (first + 0.5) * bound.getResolution();
+        xs[edgeCount] = x1 + (y - y1) * inverseSlope;
+        dxs[edgeCount] = -inverseSlope * bound.getResolution();
+        firstRows[edgeCount] = first;
+        lastRows[edgeCount] = last;
+        windings[edgeCount] = y2 > y1 ? 1 : -1;
+        minRow = Math.min(minRow, first);
+        maxRow = Math.max(maxRow, last);
+        edgeCount++;
+    }
+
+    void fill(int fromRow, int toRow, SpanConsumer consumer) {
+        fill(fromRow, toRow, FillRule.EVEN_ODD, consumer);
+    }
+
+    /**
+     * Emits the spans of the rows {@code [fromRow, toRow)}, clipped to the bound, in row then column order.
+     * <p>
+     * The edges are bucketed by first row with a counting sort, and the active edges are kept sorted by
+     * their crossing from one row to the next with an insertion sort, which is linear on the nearly
+     * sorted order left by the previous row. The time is linear in the edges, the rows and the spans,
+     * apart from the crossings of edges between two rows.
+     */
+    void fill(int fromRow, int toRow, FillRule rule, SpanConsumer consumer) {
+        int startRow = Math.max(Math.max(fromRow, minRow), 0);
+        int endRow = Math.min(Math.min(toRow, maxRow + 1), bound.getRowCount());
+        if (startRow >= endRow) {
+            return;
+        }
+        int rowCount = endRow - startRow;
+        if (bucketStarts.length < rowCount + 1) {
+            bucketStarts = new int[rowCount + 1];
+        } else {
+            Arrays.fill(bucketStarts, 0, rowCount + 1, 0);
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            if (lastRows[e] >= startRow && firstRows[e] < endRow) {
+                bucketStarts[Math.max(firstRows[e] - startRow, 0) + 1]++;
+            }
+        }
+        for (int r = 0; r < rowCount; r++) {
+            bucketStarts[r + 1] += bucketStarts[r];
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            if (lastRows[e] >= startRow && firstRows[e] < endRow) {
+                order[bucketStarts[Math.max(firstRows[e] - startRow, 0)]++] = e;
+            }
+        }
+        // the starts have moved to the end of each bucket, that is the start of the next one
+        int columnCount = bound.getColumnCount();
+        int next = 0;
+        int activeCount = 0;
+        for (int row = startRow; row < endRow; row++) {
+            int count = 0;
+            for (int a = 0; a < activeCount; a++) {
+                int e = active[a];
+                if (lastRows[e] >= row) {
+                    active[count] = e;
+                    crossings[count++] = xs[e] + dxs[e] * (row - firstRows[e]);
+                }
+            }
+            for (int bucketEnd = bucketStarts[row - startRow]; next < bucketEnd; next++) {
+                int e = order[next];
+                active[count] = e;
+                crossings[count++] = xs[e] + dxs[e] * (row - firstRows[e]);
+            }
+            for (int k = 1; k < count; k++) {
+                double x = crossings[k];
+                int e = active[k];
+                int m = k;
+                while (m > 0 && crossings[m - 1] > x) {
+                    crossings[m] = crossings[m - 1];
+                    active[m] = active[m - 1];
+                    m--;
+                }
+                crossings[m] = x;
+                active[m] = e;
+            }
+            activeCount = count;
+            // walk the crossings left to right, a span opening when the winding leaves 0 (or its parity
+            // becomes odd) and closing when it comes back
+            int winding = 0;
+            double spanStart = 0;
+            for (int k = 0; k < count; k++) {
+                boolean wasInside = winding != 0;
+                winding = rule == FillRule.EVEN_ODD ? winding ^ 1 : winding + windings[active[k]];
+                boolean inside = winding != 0;
+                if (!wasInside && inside) {
+                    spanStart = crossings[k];
+                } else if (wasInside && !inside) {
+                    int fromColumn = Math.max(firstColumn(bound, spanStart), 0);
+                    int toColumn = Math.min(firstColumn(bound, crossings[k]), columnCount);
+                    if (fromColumn < toColumn) {
+                        consumer.accept(row, fromColumn, toColumn);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package pers.yzx.matrix;
+
+import java.util.Arrays;
+
+public class ShortMatrix extends AbstractPrimitiveMatrix<Short> {
+    private short[] elementData;
+
+    public ShortMatrix(Bound bound) {
+        this(bound, 1);
+    }
+
+    public ShortMatrix(Bound bound, int floorCount) {
+        super(bound, floorCount);
+        this.elementData = new short[getCount()];
+    }
+
+    public ShortMatrix(Bound bound, int floorCount, short defaultValue) {
+        this(bound, floorCount);
+        Arrays.fill(elementData, defaultValue);
+    }
+
+    public short getShort(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    public short getShort(int rowIndex, int columnIndex) {
+        return getShort(DEFAULT_FLOOR_INDEX, rowIndex, columnIndex);
+    }
+
+    public short getShort(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return elementData[getFlatIndex(floorIndex, rowIndex, columnIndex)];
+    }
+
+    public void setShort(int flatIndex, short value) {
+        elementData[flatIndex] = value;
+    }
+
+    public void setShort(int rowIndex, int columnIndex, short value) {
+        setShort(DEFAULT_FLOOR_INDEX, rowIndex, columnIndex, value);
+    }
+
+    public void setShort(int floorIndex, int rowIndex, int columnIndex, short value) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        elementData[getFlatIndex(floorIndex, rowIndex, columnIndex)] = value;
+    }
+
+    @Override
+    public double getDouble(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    @Override
+    public void setDouble(int flatIndex, double value) {
+        elementData[flatIndex] = (short) value;
+    }
+
+    @Override
+    public Short get(int flatIndex) {
+        return elementData[flatIndex];
+    }
+
+    @Override
+    public void set(int flatIndex, Short element) {
+        elementData[flatIndex] = element == null ? 0 : element;
+    }
+
+    @Override
+    public CellType getCellType() {
+        return CellType.SHORT;
+    }
+
+    @Override
+    public void clear() {
+        bound = new Bound(0, 0, 0, 0, 0);
+        elementData = new short[0];
+    }
+}
@@ -1,12 +1,19 @@
 package pers.yzx.matrix;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntIterator;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Objects;
 import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
 
 public class SparseMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
     ArrayList<MyInt2ObjectOpenHashMap<E>> elementData;
@@ -94,15 +101,178 @@ public class SparseMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
     }
 
     @Override
-    public Iterator<Integer> keyIterator() {
+    public IntIterator keyIterator() {
         return new mapKeyIterator();
     }
 
+    /**
+     * Performs the given action on every cell stored in the matrix, floor by floor, walking the
+     * backing hash tables directly. Within a floor the cells come in no particular order.
+     *
+     * @param action the action to be performed for each cell
+     */
     @Override
-    public Matrix<E> getFloorMatrix(int floorIndex) {
-        return null;
+    public void forEachCell(CellConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        int columnCount = bound.getColumnCount();
+        for (int f = 0; f < elementData.size(); f++) {
+            MyInt2ObjectOpenHashMap<E> floorData = elementData.get(f);
+            int[] key = floorData.getKey();
+            E[] value = floorData.getValue();
+            int n = floorData.getTableSize();
+            for (int i = 0; i < n; i++) {
+                int k = key[i];
+                if (k != 0) {
+                    action.accept(f, k / columnCount, k % columnCount, value[i]);
+                }
+            }
+            if (floorData.hasNullKey()) {
+                action.accept(f, 0, 0, value[n]);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The floors are filled in parallel; a non-null element makes every cell occupied.
+     */
+    @Override
+    public void fill(E element) {
+        int floorSize = bound.getCount();
+        IntStream.range(0, elementData.size()).parallel().forEach(f -> {
+            MyInt2ObjectOpenHashMap<E> floorData = elementData.get(f);
+            floorData.clear();
+            if (element != null) {
+                for (int k = 0; k < floorSize; k++) {
+                    floorData.put(k, element);
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the occupied cells are visited: the slots of the floor tables are processed in ranges on the
+     * fork/join pool, and the cells whose new element is {@code null} are removed afterwards.
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        int floorSize = bound.getCount();
+        IntArrayList removed = reduceSlots(null, (floorIndex, floorData, fromSlot, toSlot) -> {
+            int[] key = floorData.getKey();
+            E[] value = floorData.getValue();
+            int n = floorData.getTableSize();
+            IntArrayList nullKeys = null;
+            for (int i = fromSlot; i < toSlot; i++) {
+                if (i < n ? key[i] != 0 : floorData.hasNullKey()) {
+                    if (null == (value[i] = operator.apply(value[i]))) {
+                        if (nullKeys == null) {
+                            nullKeys = new IntArrayList();
+                        }
+                        nullKeys.add(floorIndex * floorSize + key[i]);
+                    }
+                }
+            }
+            return nullKeys;
+        }, (a, b) -> {
+            if (a == null) {
+                return b;
+            }
+            if (b != null) {
+                a.addAll(b);
+            }
+            return a;
+        });
+        if (removed != null) {
+            for (int i = 0; i < removed.size(); i++) {
+                int flatIndex = removed.getInt(i);
+                elementData.get(flatIndex / floorSize).remove(flatIndex % floorSize);
+            }
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the occupied cells are visited, in parallel when the target accepts concurrent writes.
+     */
+    @Override
+    public <R> void mapInto(Matrix<R> target, Function<? super E, ? extends R> function) {
+        Objects.requireNonNull(function);
+        checkShape(target);
+        if (!(target instanceof AbstractMatrix && ((AbstractMatrix<?>) target).isParallelWritable())) {
+            forEachCell((f, i, j, e) -> target.set(f, i, j, function.apply(e)));
+            return;
+        }
+        int columnCount = bound.getColumnCount();
+        reduceSlots(null, (floorIndex, floorData, fromSlot, toSlot) -> {
+            int[] key = floorData.getKey();
+            E[] value = floorData.getValue();
+            int n = floorData.getTableSize();
+            for (int i = fromSlot; i < toSlot; i++) {
+                if (i < n ? key[i] != 0 : floorData.hasNullKey()) {
+                    target.set(floorIndex, key[i] / columnCount, key[i] % columnCount, function.apply(value[i]));
+                }
+            }
+            return null;
+        }, (a, b) -> null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the occupied cells are visited: the slots of the floor tables are processed in ranges on the
+     * fork/join pool.
+     */
+    @Override
+    public <R> R reduce(R identity, BiFunction<R, ? super E, R> accumulator, BinaryOperator<R> combiner) {
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        return reduceSlots(identity, (floorIndex, floorData, fromSlot, toSlot) -> {
+            int[] key = floorData.getKey();
+            E[] value = floorData.getValue();
+            int n = floorData.getTableSize();
+            R result = identity;
+            for (int i = fromSlot; i < toSlot; i++) {
+                if (i < n ? key[i] != 0 : floorData.hasNullKey()) {
+                    result = accumulator.apply(result, value[i]);
+                }
+            }
+            return result;
+        }, combiner);
+    }
+
+    /**
+     * Applies the function to ranges of at most {@link MatrixTasks#BLOCK_SIZE} slots of every floor table
+     * on the fork/join pool, and merges the results.
+     */
+    private <R> R reduceSlots(R identity, SlotFunction<E, R> function, BinaryOperator<R> combiner) {
+        int taskCount = 0;
+        for (MyInt2ObjectOpenHashMap<E> floorData : elementData) {
+            taskCount += floorData.getTableSize() / MatrixTasks.BLOCK_SIZE + 1;
+        }
+        int[] taskFloors = new int[taskCount];
+        int[] taskSlots = new int[taskCount];
+        for (int f = 0, t = 0; f < elementData.size(); f++) {
+            int slotCount = elementData.get(f).getTableSize() + 1;
+            for (int slot = 0; slot < slotCount; slot += MatrixTasks.BLOCK_SIZE, t++) {
+                taskFloors[t] = f;
+                taskSlots[t] = slot;
+            }
+        }
+        return IntStream.range(0, taskCount).parallel().mapToObj(t -> {
+            MyInt2ObjectOpenHashMap<E> floorData = elementData.get(taskFloors[t]);
+            int toSlot = Math.min(taskSlots[t] + MatrixTasks.BLOCK_SIZE, floorData.getTableSize() + 1);
+            return function.apply(taskFloors[t], floorData, taskSlots[t], toSlot);
+        }).reduce(identity, combiner);
+    }
+
+    private interface SlotFunction<E, R> {
+        R apply(int floorIndex, MyInt2ObjectOpenHashMap<E> floorData, int fromSlot, int toSlot);
+    }
 
     protected class MapIndexItr implements Iterator<Index> {
         int floorCursor = 0;
@@ -121,6 +291,10 @@ public class SparseMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
             return true;
         }
 
+        int nextFlatIndex() {
+            return floorCursor * bound.getCount() + keyIterator.nextInt();
+        }
+
         @Override
         public Index next() {
             int floorFlatIndex = keyIterator.nextInt();
@@ -135,8 +309,8 @@ public class SparseMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
         }
     }
 
-    private class mapKeyIterator implements Iterator<Integer> {
-        private final Iterator<Index> mapIndexItr = new MapIndexItr();
+    private class mapKeyIterator implements IntIterator {
+        private final MapIndexItr mapIndexItr = new MapIndexItr();
 
         @Override
         public boolean hasNext() {
@@ -144,8 +318,8 @@ public class SparseMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
         }
 
         @Override
-        public Integer next() {
-            return getFlatIndex(mapIndexItr.next());
+        public int nextInt() {
+            return mapIndexItr.nextFlatIndex();
         }
 
         @Override
@@ -176,7 +350,7 @@ public class SparseMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
 
     @Override
     public Spliterator<Cursor<Index, E>> spliterator() {
-        return new SparseMatrixSpliterator(this, 0, -1);
+        return new SparseMatrixSpliterator(this, 0, floorCount);
     }
 
     static class MyInt2ObjectOpenHashMap<V> extends Int2ObjectOpenHashMap<V> {
@@ -187,82 +361,184 @@ public class SparseMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
         V[] getValue() {
             return value;
         }
+
+        /**
+         * Returns the number of regular slots; the slot at this position holds the value of key 0.
+         */
+        int getTableSize() {
+            return n;
+        }
+
+        boolean hasNullKey() {
+            return containsNullKey;
+        }
     }
 
+    /**
+     * Spliterator over the occupied slots of the floor hash tables.
+     * <p>
+     * A spliterator first covers a range of whole floors and is split between floors; a spliterator left
+     * with a single floor is split by ranges of hash table slots. The slot {@code n} of a floor table
+     * holds key 0, following {@link MyInt2ObjectOpenHashMap#getTableSize()}. While it covers whole floors
+     * the spliterator knows its exact size and reports {@link Spliterator#SIZED}; slot ranges only know
+     * an estimate proportional to their share of the table.
+     */
     class SparseMatrixSpliterator implements Spliterator<Cursor<Index, E>> {
+        private static final int WHOLE_FLOOR = -1;
         private final SparseMatrix<E> matrix;
-        private int index; // current index, modified on advance/split
-        private int fence; // -1 until used; then one past last index
-
-        SparseMatrixSpliterator(SparseMatrix<E> matrix, int original, int fence) {
+        private int floor;          // current floor, modified on advance/split
+        private final int floorFence; // one past last floor
+        private int slot;           // current slot in current floor, modified on advance/split
+        private int slotFence;      // one past last slot of the last floor, or WHOLE_FLOOR
+        private long remaining;     // exact number of remaining cells while slotFence is WHOLE_FLOOR
+        private int[] key;          // tables of the current floor, bound on first use
+        private E[] value;
+        private int tableSize;
+        private boolean hasNullKey;
+
+        SparseMatrixSpliterator(SparseMatrix<E> matrix, int floor, int floorFence) {
             this.matrix = matrix;
-            this.index = original;
-            this.fence = fence;
-        }
-
-        private int getFence() { // initialize fence to size on first use
-            int hi; // (a specialized variant appears in method forEach)
-            SparseMatrix<E> lst;
-            if ((hi = fence) < 0) {
-                if ((lst = matrix) == null)
-                    hi = fence = 0;
-                else {
-                    hi = fence = lst.elementData.stream().mapToInt(a -> a.getKey().length).sum();
-                }
+            this.floor = floor;
+            this.floorFence = floorFence;
+            this.slotFence = WHOLE_FLOOR;
+            this.remaining = 0;
+            for (int f = floor; f < floorFence; f++) {
+                remaining += matrix.elementData.get(f).size();
             }
-            return hi;
         }
 
+        private SparseMatrixSpliterator(SparseMatrix<E> matrix, int floor, int slot, int slotFence) {
+            this.matrix = matrix;
+            this.floor = floor;
+            this.floorFence = floor + 1;
+            this.slot = slot;
+            this.slotFence = slotFence;
+        }
+
+        private void bindFloor() {
+            MyInt2ObjectOpenHashMap<E> floorData = matrix.elementData.get(floor);
+            key = floorData.getKey();
+            value = floorData.getValue();
+            tableSize = floorData.getTableSize();
+            hasNullKey = floorData.hasNullKey();
+        }
+
+        private int getSlotFence() {
+            return slotFence == WHOLE_FLOOR || floor < floorFence - 1 ? tableSize + 1 : slotFence;
+        }
+
+        @Override
         public Spliterator<Cursor<Index, E>> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid) ? null : // divide range in half unless too small
-                    new SparseMatrixSpliterator(matrix, lo, index = mid);
+            if (floor >= floorFence) {
+                return null;
+            }
+            if (floorFence - floor > 1) {
+                int mid = (floor + floorFence) >>> 1;
+                SparseMatrixSpliterator prefix = new SparseMatrixSpliterator(matrix, floor, mid);
+                if (key != null) {
+                    // the current floor is partially consumed
+                    prefix.remaining = remaining;
+                    for (int f = mid; f < floorFence; f++) {
+                        prefix.remaining -= matrix.elementData.get(f).size();
+                    }
+                    prefix.slot = slot;
+                }
+                remaining -= prefix.remaining;
+                floor = mid;
+                slot = 0;
+                key = null;
+                return prefix;
+            }
+            if (key == null) {
+                bindFloor();
+            }
+            int lo = slot, hi = getSlotFence(), mid = (lo + hi) >>> 1;
+            if (lo >= mid) {
+                return null;
+            }
+            slotFence = hi;
+            slot = mid;
+            SparseMatrixSpliterator prefix = new SparseMatrixSpliterator(matrix, floor, lo, mid);
+            prefix.key = key;
+            prefix.value = value;
+            prefix.tableSize = tableSize;
+            prefix.hasNullKey = hasNullKey;
+            return prefix;
         }
 
         @Override
         public boolean tryAdvance(Consumer<? super Cursor<Index, E>> action) {
             if (action == null)
                 throw new NullPointerException();
-            int hi = getFence();
-            while (index < hi) {
-                int i = index;
-                index++;
-
-                E e = null;
-                int floorIndex = -1;
-                int floorFlatIndex = 0;
-                for (MyInt2ObjectOpenHashMap<E> elementDatum : matrix.elementData) {
-                    floorIndex++;
-                    int[] key = elementDatum.getKey();
-                    E[] value = elementDatum.getValue();
-                    if (i < key.length) {
-                        if (key[i] != 0 || (i == key.length - 1 && value[i] != null)) {
-                            floorFlatIndex = key[i];
-                            e = value[i];
-                        }
-                        break;
-                    } else {
-                        i -= key.length;
-                    }
+            while (floor < floorFence) {
+                if (key == null) {
+                    bindFloor();
                 }
-                if (e != null) {
-                    int rowIndex = floorFlatIndex / bound.getColumnCount();
-                    int columnIndex = floorFlatIndex % bound.getColumnCount();
-                    Index index = new Index(floorIndex, rowIndex, columnIndex);
-                    action.accept(new SimpleCursor<>(index, e));
-                    return true;
+                int hi = getSlotFence();
+                while (slot < hi) {
+                    int i = slot++;
+                    if (i < tableSize ? key[i] != 0 : hasNullKey) {
+                        remaining--;
+                        action.accept(cursor(floor, key[i], value[i]));
+                        return true;
+                    }
                 }
+                floor++;
+                slot = 0;
+                key = null;
             }
             return false;
         }
 
+        @Override
+        public void forEachRemaining(Consumer<? super Cursor<Index, E>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            for (; floor < floorFence; floor++, slot = 0, key = null) {
+                if (key == null) {
+                    bindFloor();
+                }
+                int[] k = key;
+                E[] v = value;
+                int n = tableSize;
+                int hi = getSlotFence();
+                for (int i = slot; i < hi && i < n; i++) {
+                    if (k[i] != 0) {
+                        action.accept(cursor(floor, k[i], v[i]));
+                    }
+                }
+                if (hi > n && hasNullKey && slot <= n) {
+                    action.accept(cursor(floor, 0, v[n]));
+                }
+            }
+            remaining = 0;
+        }
 
+        private Cursor<Index, E> cursor(int floorIndex, int floorFlatIndex, E e) {
+            int columnCount = bound.getColumnCount();
+            return new SimpleCursor<>(new Index(floorIndex, floorFlatIndex / columnCount,
+                    floorFlatIndex % columnCount), e);
+        }
+
+        @Override
         public long estimateSize() {
-            return getFence() - index;
+            if (slotFence == WHOLE_FLOOR) {
+                return remaining;
+            }
+            if (floor >= floorFence) {
+                return 0;
+            }
+            if (key == null) {
+                bindFloor();
+            }
+            int size = matrix.elementData.get(floor).size();
+            return (long) size * (getSlotFence() - slot) / (tableSize + 1);
         }
 
+        @Override
         public int characteristics() {
-            return Spliterator.DISTINCT;
+            return slotFence == WHOLE_FLOOR ? Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED :
+                    Spliterator.DISTINCT | Spliterator.NONNULL;
         }
     }
 }
@@ -0,0 +1,516 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * A matrix split into square tiles whose arrays are allocated on the first write of one of their cells
+ * and released when their last cell is emptied.
+ * <p>
+ * Access inside an allocated tile costs an array lookup, as in {@link ArrayMatrix}, while empty tiles
+ * cost a single {@code null} slot, so large and mostly empty rasters whose content is clustered take
+ * memory in proportion to their populated tiles. Tiles on the right and bottom edges are allocated at
+ * full size. Iteration, streams and the bulk operations visit the allocated tiles only, tile by tile
+ * and in row-major order inside a tile, which is not the order of the flat indices.
+ *
+ * @param <E> the type of the elements
+ */
+public class TiledMatrix<E> extends AbstractMatrix<E> implements Matrix<E> {
+    public static final int DEFAULT_TILE_SIZE = 256;
+    private final int tileShift;
+    private final int tileMask;
+    private final int tileRowCount;
+    private final int tileColumnCount;
+    /**
+     * Tiles of all floors, floor by floor and row-major inside a floor; a {@code null} tile has no
+     * element.
+     */
+    private final Object[][] tiles;
+    private final int[] occupancy;
+    private int effectiveCount;
+
+    public TiledMatrix(Bound bound) {
+        this(bound, 1, DEFAULT_TILE_SIZE);
+    }
+
+    public TiledMatrix(Bound bound, int floorCount) {
+        this(bound, floorCount, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * @param bound      bound of the matrix
+     * @param floorCount floor count of the matrix
+     * @param tileSize   row and column count of a tile, a power of two
+     */
+    public TiledMatrix(Bound bound, int floorCount, int tileSize) {
+        super(bound, floorCount);
+        if (tileSize <= 0 || (tileSize & (tileSize - 1)) != 0 || tileSize > 1 << 15)
+            throw new IllegalArgumentException("Illegal tile size: " + tileSize);
+        this.tileShift = Integer.numberOfTrailingZeros(tileSize);
+        this.tileMask = tileSize - 1;
+        this.tileRowCount = (bound.getRowCount() + tileMask) >>> tileShift;
+        this.tileColumnCount = (bound.getColumnCount() + tileMask) >>> tileShift;
+        this.tiles = new Object[floorCount * tileRowCount * tileColumnCount][];
+        this.occupancy = new int[tiles.length];
+    }
+
+    public int getTileSize() {
+        return 1 << tileShift;
+    }
+
+    /**
+     * Returns the number of tile rows of a floor.
+     */
+    public int getTileRowCount() {
+        return tileRowCount;
+    }
+
+    /**
+     * Returns the number of tile columns of a floor.
+     */
+    public int getTileColumnCount() {
+        return tileColumnCount;
+    }
+
+    /**
+     * Returns the number of non-null cells of a tile.
+     */
+    public int getTileOccupancy(int floorIndex, int tileRowIndex, int tileColumnIndex) {
+        if (floorIndex < 0 || floorIndex >= floorCount || tileRowIndex < 0 || tileRowIndex >= tileRowCount ||
+                tileColumnIndex < 0 || tileColumnIndex >= tileColumnCount)
+            throw new IndexOutOfBoundsException("Tile: " + floorIndex + ", " + tileRowIndex + ", " +
+                    tileColumnIndex + ", tiles: " + floorCount + "x" + tileRowCount + "x" + tileColumnCount);
+        return occupancy[(floorIndex * tileRowCount + tileRowIndex) * tileColumnCount + tileColumnIndex];
+    }
+
+    /**
+     * Returns the number of tiles holding at least one element.
+     */
+    public int getAllocatedTileCount() {
+        int count = 0;
+        for (Object[] tile : tiles) {
+            if (tile != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getEffectiveCount() {
+        return effectiveCount;
+    }
+
+    private int tileIndex(int floorIndex, int rowIndex, int columnIndex) {
+        return (floorIndex * tileRowCount + (rowIndex >>> tileShift)) * tileColumnCount + (columnIndex >>> tileShift);
+    }
+
+    private int cellIndex(int rowIndex, int columnIndex) {
+        return (rowIndex & tileMask) << tileShift | columnIndex & tileMask;
+    }
+
+    @Override
+    public E get(int floorIndex, int rowIndex, int columnIndex) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        return elementData(floorIndex, rowIndex, columnIndex);
+    }
+
+    @Override
+    public E get(int flatIndex) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        int columnCount = bound.getColumnCount();
+        int floorFlatIndex = flatIndex % floorSize;
+        return elementData(flatIndex / floorSize, floorFlatIndex / columnCount, floorFlatIndex % columnCount);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementData(int floorIndex, int rowIndex, int columnIndex) {
+        Object[] tile = tiles[tileIndex(floorIndex, rowIndex, columnIndex)];
+        return tile == null ? null : (E) tile[cellIndex(rowIndex, columnIndex)];
+    }
+
+    @Override
+    public void set(int floorIndex, int rowIndex, int columnIndex, E element) {
+        rangeCheck(floorIndex, rowIndex, columnIndex);
+        elementData(floorIndex, rowIndex, columnIndex, element);
+    }
+
+    @Override
+    public void set(int flatIndex, E element) {
+        rangeCheck(flatIndex);
+        int floorSize = bound.getCount();
+        int columnCount = bound.getColumnCount();
+        int floorFlatIndex = flatIndex % floorSize;
+        elementData(flatIndex / floorSize, floorFlatIndex / columnCount, floorFlatIndex % columnCount, element);
+    }
+
+    private void elementData(int floorIndex, int rowIndex, int columnIndex, E element) {
+        int t = tileIndex(floorIndex, rowIndex, columnIndex);
+        Object[] tile = tiles[t];
+        if (tile == null) {
+            if (element == null) {
+                return;
+            }
+            tile = tiles[t] = new Object[1 << (tileShift << 1)];
+        }
+        int k = cellIndex(rowIndex, columnIndex);
+        if (null == tile[k]) {
+            if (null != element) {
+                occupancy[t]++;
+                effectiveCount++;
+            }
+        } else if (null == element) {
+            effectiveCount--;
+            if (--occupancy[t] == 0) {
+                tiles[t] = null;
+                return;
+            }
+        }
+        tile[k] = element;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(tiles, null);
+        Arrays.fill(occupancy, 0);
+        bound = new Bound(0, 0, 0, 0, 0);
+        effectiveCount = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return effectiveCount == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Filling with {@code null} releases every tile; any other element allocates all of them.
+     */
+    @Override
+    public void fill(E element) {
+        if (element == null) {
+            Arrays.fill(tiles, null);
+            Arrays.fill(occupancy, 0);
+            effectiveCount = 0;
+            return;
+        }
+        int rowCount = bound.getRowCount();
+        int columnCount = bound.getColumnCount();
+        int tileSize = 1 << tileShift;
+        IntStream.range(0, tiles.length).parallel().forEach(t -> {
+            int tileRow = t / tileColumnCount % tileRowCount;
+            int tileColumn = t % tileColumnCount;
+            int rows = Math.min(tileSize, rowCount - (tileRow << tileShift));
+            int columns = Math.min(tileSize, columnCount - (tileColumn << tileShift));
+            Object[] tile = tiles[t] == null ? new Object[tileSize * tileSize] : tiles[t];
+            for (int i = 0; i < rows; i++) {
+                Arrays.fill(tile, i << tileShift, (i << tileShift) + columns, element);
+            }
+            tiles[t] = tile;
+            occupancy[t] = rows * columns;
+        });
+        effectiveCount = getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The allocated tiles are processed on the fork/join pool.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(UnaryOperator<E> operator) {
+        Objects.requireNonNull(operator);
+        int removed = IntStream.range(0, tiles.length).parallel().filter(t -> tiles[t] != null).map(t -> {
+            Object[] tile = tiles[t];
+            int count = 0;
+            for (int k = 0; k < tile.length; k++) {
+                Object e = tile[k];
+                if (e != null && null == (tile[k] = operator.apply((E) e))) {
+                    count++;
+                }
+            }
+            if ((occupancy[t] -= count) == 0) {
+                tiles[t] = null;
+            }
+            return count;
+        }).sum();
+        effectiveCount -= removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the allocated tiles are read, on the fork/join pool when the target accepts concurrent writes
+     * and in the calling thread otherwise.
+     */
+    @Override
+    public <R> void mapInto(Matrix<R> target, Function<? super E, ? extends R> function) {
+        Objects.requireNonNull(function);
+        checkShape(target);
+        IntStream tileIndices = IntStream.range(0, tiles.length);
+        if (target instanceof AbstractMatrix && ((AbstractMatrix<?>) target).isParallelWritable()) {
+            tileIndices = tileIndices.parallel();
+        }
+        tileIndices.filter(t -> tiles[t] != null)
+                .forEach(t -> forEachCell(t, (f, i, j, e) -> target.set(f, i, j, function.apply(e))));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The allocated tiles are folded on the fork/join pool.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R reduce(R identity, BiFunction<R, ? super E, R> accumulator, BinaryOperator<R> combiner) {
+        Objects.requireNonNull(accumulator);
+        Objects.requireNonNull(combiner);
+        return IntStream.range(0, tiles.length).parallel().filter(t -> tiles[t] != null).mapToObj(t -> {
+            R result = identity;
+            for (Object e : tiles[t]) {
+                if (e != null) {
+                    result = accumulator.apply(result, (E) e);
+                }
+            }
+            return result;
+        }).reduce(identity, combiner);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The cells are visited tile by tile.
+     */
+    @Override
+    public void forEachCell(CellConsumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (int t = 0; t < tiles.length; t++) {
+            if (tiles[t] != null) {
+                forEachCell(t, action);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEachCell(int tileIndex, CellConsumer<? super E> action) {
+        Object[] tile = tiles[tileIndex];
+        int floorTiles = tileRowCount * tileColumnCount;
+        int f = tileIndex / floorTiles;
+        int rowBase = (tileIndex % floorTiles / tileColumnCount) << tileShift;
+        int columnBase = (tileIndex % tileColumnCount) << tileShift;
+        for (int k = 0; k < tile.length; k++) {
+            Object e = tile[k];
+            if (e != null) {
+                action.accept(f, rowBase + (k >>> tileShift), columnBase + (k & tileMask), (E) e);
+            }
+        }
+    }
+
+    /**
+     * Returns the flat index of the cell {@code cellIndex} of the tile {@code tileIndex}.
+     */
+    private int flatIndex(int tileIndex, int cellIndex) {
+        int floorTiles = tileRowCount * tileColumnCount;
+        int rowIndex = (tileIndex % floorTiles / tileColumnCount) << tileShift | cellIndex >>> tileShift;
+        int columnIndex = (tileIndex % tileColumnCount) << tileShift | cellIndex & tileMask;
+        return tileIndex / floorTiles * bound.getCount() + rowIndex * bound.getColumnCount() + columnIndex;
+    }
+
+    @Override
+    public Iterator<Cursor<Index, E>> iterator() {
+        TileIndexItr indexItr = new TileIndexItr();
+        return new Iterator<Cursor<Index, E>>() {
+            @Override
+            public boolean hasNext() {
+                return indexItr.hasNext();
+            }
+
+            @Override
+            public Cursor<Index, E> next() {
+                int flatIndex = indexItr.nextFlatIndex();
+                return new SimpleCursor<>(getIndex(flatIndex), get(flatIndex));
+            }
+
+            @Override
+            public void remove() {
+                indexItr.remove();
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Index> indexIterator() {
+        return new TileIndexItr();
+    }
+
+    @Override
+    public IntIterator keyIterator() {
+        TileIndexItr indexItr = new TileIndexItr();
+        return new IntIterator() {
+            @Override
+            public boolean hasNext() {
+                return indexItr.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                return indexItr.nextFlatIndex();
+            }
+
+            @Override
+            public void remove() {
+                indexItr.remove();
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<Cursor<Index, E>> spliterator() {
+        return new TileSpliterator(0, tiles.length);
+    }
+
+    /**
+     * Walks the non-null cells of the allocated tiles, tile by tile.
+     */
+    private class TileIndexItr implements Iterator<Index> {
+        int tile = 0;         // tile of next cell to inspect
+        int cell = 0;         // position of next cell to inspect in its tile
+        int lastRet = -1;     // flat index of last cell returned; -1 if no such
+
+        @Override
+        public boolean hasNext() {
+            while (tile < tiles.length) {
+                Object[] data = tiles[tile];
+                if (data != null) {
+                    while (cell < data.length && data[cell] == null) {
+                        cell++;
+                    }
+                    if (cell < data.length) {
+                        return true;
+                    }
+                }
+                tile++;
+                cell = 0;
+            }
+            return false;
+        }
+
+        int nextFlatIndex() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastRet = flatIndex(tile, cell++);
+            return lastRet;
+        }
+
+        @Override
+        public Index next() {
+            return getIndex(nextFlatIndex());
+        }
+
+        @Override
+        public void remove() {
+            if (lastRet < 0) {
+                throw new IllegalStateException();
+            }
+            set(lastRet, null);
+            lastRet = -1;
+        }
+    }
+
+    /**
+     * Spliterator over a range of tiles, split between tiles.
+     */
+    private class TileSpliterator implements Spliterator<Cursor<Index, E>> {
+        private int tile;       // current tile, modified on advance/split
+        private final int fence; // one past last tile
+        private int cell;       // next cell of the current tile
+
+        TileSpliterator(int tile, int fence) {
+            this.tile = tile;
+            this.fence = fence;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super Cursor<Index, E>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            for (; tile < fence; tile++, cell = 0) {
+                Object[] data = tiles[tile];
+                if (data == null) {
+                    continue;
+                }
+                while (cell < data.length) {
+                    Object e = data[cell++];
+                    if (e != null) {
+                        action.accept(new SimpleCursor<>(getIndex(flatIndex(tile, cell - 1)), (E) e));
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super Cursor<Index, E>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            CellConsumer<E> cellAction = (f, i, j, e) -> action.accept(new SimpleCursor<>(new Index(f, i, j), e));
+            if (tile < fence && cell > 0) {
+                // finishes the tile left by tryAdvance
+                Object[] data = tiles[tile];
+                for (; data != null && cell < data.length; cell++) {
+                    if (data[cell] != null) {
+                        action.accept(new SimpleCursor<>(getIndex(flatIndex(tile, cell)), (E) data[cell]));
+                    }
+                }
+                tile++;
+            }
+            for (; tile < fence; tile++) {
+                if (tiles[tile] != null) {
+                    forEachCell(tile, cellAction);
+                }
+            }
+            cell = 0;
+        }
+
+        @Override
+        public Spliterator<Cursor<Index, E>> trySplit() {
+            int lo = cell == 0 ? tile : tile + 1, mid = (lo + fence) >>> 1;
+            if (lo >= mid) {
+                return null;
+            }
+            TileSpliterator prefix = new TileSpliterator(tile, mid);
+            prefix.cell = cell;
+            tile = mid;
+            cell = 0;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return tiles.length == 0 ? 0 : (long) effectiveCount * (fence - tile) / tiles.length;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package pers.yzx.geometry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PreparedPolygonTest {
+
+    @Test
+    public void againstIsInside() {
+        Random random = new Random(31);
+        List<Point> points = new ArrayList<>();
+        int vertexCount = 3000;
+        for (int v = 0; v < vertexCount; v++) {
+            double angle = 2 * Math.PI * v / vertexCount;
+            double radius = 50 + 20 * Math.sin(angle * 23) + random.nextDouble() * 5;
+            points.add(new Point(100 + radius * Math.cos(angle), 100 + radius * Math.sin(angle)));
+        }
+        List<Point> hole = new ArrayList<>();
+        for (int v = 0; v < 5; v++) {
+            double angle = 2 * Math.PI * v / 5;
+            hole.add(new Point(100 + 15 * Math.cos(angle), 100 + 15 * Math.sin(angle)));
+        }
+        Polygon polygon = new Polygon(points, Collections.singletonList(hole));
+        PreparedPolygon slabs = new PreparedPolygon(polygon);
+        PreparedPolygon raster = new PreparedPolygon(polygon, 64);
+
+        int n = 20000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int insideCount = 0;
+        for (int i = 0; i < n; i++) {
+            xs[i] = 20 + random.nextDouble() * 160;
+            ys[i] = 20 + random.nextDouble() * 160;
+            boolean expected = polygon.isInside(new Point(xs[i], ys[i]));
+            assertEquals(expected, slabs.contains(xs[i], ys[i]));
+            assertEquals(expected, raster.contains(xs[i], ys[i]));
+            insideCount += expected ? 1 : 0;
+        }
+        assertTrue(insideCount > 0 && insideCount < n);
+        boolean[] out = new boolean[n];
+        raster.contains(xs, ys, out);
+        for (int i = 0; i < n; i++) {
+            assertEquals(raster.contains(xs[i], ys[i]), out[i]);
+        }
+    }
+
+    @Test
+    public void vertexRays() {
+        // a ray through the vertices at y = 5 and y = 0 crosses the boundary twice on the left
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(0, 0));
+        points.add(new Point(10, 0));
+        points.add(new Point(10, 10));
+        points.add(new Point(5, 5));
+        points.add(new Point(0, 10));
+        PreparedPolygon prepared = new PreparedPolygon(new Polygon(points), 8);
+        assertTrue(prepared.contains(2, 5));
+        assertFalse(prepared.contains(5, 7));
+        assertTrue(prepared.contains(5, 0.5));
+        assertFalse(prepared.contains(-1, 5));
+        assertFalse(prepared.contains(11, 5));
+    }
+
+    @Test
+    public void horizontalEdges() {
+        // an L shape, the edge from (6, 2) to (2, 2) running through the inside of the raster
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(0, 0));
+        points.add(new Point(6, 0));
+        points.add(new Point(6, 2));
+        points.add(new Point(2, 2));
+        points.add(new Point(2, 6));
+        points.add(new Point(0, 6));
+        Polygon polygon = new Polygon(points);
+        PreparedPolygon slabs = new PreparedPolygon(polygon);
+        PreparedPolygon raster = new PreparedPolygon(polygon, 8);
+        assertFalse(raster.contains(4, 2.1));
+        assertTrue(raster.contains(4, 1.9));
+
+        Random random = new Random(37);
+        for (int i = 0; i < 100000; i++) {
+            double x = random.nextDouble() * 6;
+            double y = random.nextDouble() * 6;
+            assertEquals(x + ", " + y, slabs.contains(x, y), raster.contains(x, y));
+        }
+    }
+}
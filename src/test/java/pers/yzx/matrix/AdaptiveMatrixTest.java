@@ -0,0 +1,52 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveMatrixTest {
+
+    @Test
+    public void migration() {
+        Bound bound = new Bound(0.0, 0.0, 10, 10, 1);
+        AdaptiveMatrix<Integer> matrix = new AdaptiveMatrix<>(bound, 2, 0.2, 0.5);
+        for (int k = 0; k < 50; k++) {
+            matrix.set(1, k / 10, k % 10, k);
+        }
+        assertFalse(matrix.isDense(1));
+        matrix.set(1, 9, 9, 99);
+        assertTrue(matrix.isDense(1));
+        assertFalse(matrix.isDense(0));
+        assertEquals(Integer.valueOf(42), matrix.get(1, 4, 2));
+        assertEquals(51, matrix.getEffectiveCount());
+
+        // hysteresis: removals above the sparse threshold keep the floor dense
+        for (int k = 0; k < 31; k++) {
+            matrix.set(1, k / 10, k % 10, null);
+        }
+        assertTrue(matrix.isDense(1));
+        matrix.set(1, 3, 1, null);
+        assertFalse(matrix.isDense(1));
+        assertEquals(Integer.valueOf(42), matrix.get(1, 4, 2));
+        assertEquals(19, matrix.getEffectiveCount());
+
+        int previous = -1;
+        int count = 0;
+        for (IntIterator iterator = matrix.keyIterator(); iterator.hasNext(); count++) {
+            int flatIndex = iterator.nextInt();
+            assertTrue(flatIndex > previous);
+            previous = flatIndex;
+        }
+        assertEquals(19, count);
+        assertEquals(42 + 43 + 44 + 45 + 46 + 47 + 48 + 49 + 99 + 32 + 33 + 34 + 35 + 36 + 37 + 38 + 39 + 40 + 41,
+                (int) matrix.reduce(0, (sum, e) -> sum + e, Integer::sum));
+
+        matrix.fill(1);
+        assertTrue(matrix.isDense(0));
+        matrix.replaceAll(e -> null);
+        assertTrue(matrix.isEmpty());
+        assertFalse(matrix.isDense(0));
+        assertFalse(matrix.isDense(1));
+    }
+}
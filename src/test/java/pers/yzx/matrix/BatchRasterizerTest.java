@@ -0,0 +1,144 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+import pers.yzx.geometry.Point;
+import pers.yzx.geometry.Polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BatchRasterizerTest {
+
+    @Test
+    public void againstPointInPolygon() {
+        Random random = new Random(17);
+        // several bands of rows, and polygons reaching past the bound
+        Bound bound = new Bound(100.0, 600.0, 500, 100, 1);
+        List<Polygon> polygons = new ArrayList<>();
+        for (int p = 0; p < 60; p++) {
+            double cx = 90 + random.nextDouble() * 120;
+            double cy = 90 + random.nextDouble() * 520;
+            List<Point> points = new ArrayList<>();
+            int vertexCount = 3 + random.nextInt(6);
+            for (int v = 0; v < vertexCount; v++) {
+                double angle = 2 * Math.PI * v / vertexCount;
+                double radius = 5 + random.nextDouble() * 40;
+                points.add(new Point(cx + radius * Math.cos(angle), cy + radius * Math.sin(angle)));
+            }
+            polygons.add(new Polygon(points));
+        }
+
+        IntMatrix coverage = BatchRasterizer.coverage(polygons, bound);
+        BitMatrix union = BatchRasterizer.union(polygons, bound);
+        IntMatrix first = BatchRasterizer.label(polygons, bound, BatchRasterizer.OverlapRule.FIRST);
+        IntMatrix last = BatchRasterizer.label(polygons, bound, BatchRasterizer.OverlapRule.LAST);
+        IntMatrix smallest = BatchRasterizer.label(polygons, bound, BatchRasterizer.OverlapRule.SMALLEST);
+        double[] areas = new double[polygons.size()];
+        for (int p = 0; p < areas.length; p++) {
+            areas[p] = area(polygons.get(p));
+        }
+
+        int unionCount = 0;
+        for (int i = 0; i < bound.getRowCount(); i++) {
+            for (int j = 0; j < bound.getColumnCount(); j++) {
+                Point centre = new Point(bound.getTopLeftX() + j + 0.5, bound.getTopLeftY() - i - 0.5);
+                int count = 0;
+                int expectedFirst = 0;
+                int expectedLast = 0;
+                int expectedSmallest = 0;
+                for (int p = 0; p < polygons.size(); p++) {
+                    if (polygons.get(p).isInside(centre)) {
+                        count++;
+                        if (expectedFirst == 0) {
+                            expectedFirst = p + 1;
+                        }
+                        expectedLast = p + 1;
+                        if (expectedSmallest == 0 || areas[p] < areas[expectedSmallest - 1]) {
+                            expectedSmallest = p + 1;
+                        }
+                    }
+                }
+                String at = i + "," + j;
+                assertEquals(at, count, coverage.getInt(i, j));
+                assertEquals(at, count > 0, union.get(i, j));
+                assertEquals(at, expectedFirst, first.getInt(i, j));
+                assertEquals(at, expectedLast, last.getInt(i, j));
+                assertEquals(at, expectedSmallest, smallest.getInt(i, j));
+                unionCount += count > 0 ? 1 : 0;
+            }
+        }
+        assertTrue(unionCount > 0);
+        assertEquals(unionCount, union.getTrueElementsCount());
+    }
+
+    @Test
+    public void sharedEdges() {
+        // two squares sharing an edge along cell boundaries cover every cell once
+        Bound bound = new Bound(0.0, 10.0, 10, 10, 1);
+        Polygon left = new Polygon(Arrays.asList(new Point(0, 0), new Point(5, 0), new Point(5, 10), new Point(0, 10)));
+        Polygon right = new Polygon(Arrays.asList(new Point(5, 0), new Point(10, 0), new Point(10, 10), new Point(5, 10)));
+        IntMatrix coverage = BatchRasterizer.coverage(Arrays.asList(left, right), bound);
+        for (int k = 0; k < coverage.getCount(); k++) {
+            assertEquals(1, coverage.getInt(k));
+        }
+    }
+
+    @Test
+    public void smallestWithHoles() {
+        // a 20 x 20 frame, 76 once its 18 x 18 hole is cut out, over a solid 10 x 10 square
+        Bound bound = new Bound(0.0, 20.0, 20, 20, 1);
+        List<Point> hole = Arrays.asList(new Point(1, 1), new Point(19, 1), new Point(19, 19), new Point(1, 19));
+        Polygon frame = new Polygon(Arrays.asList(new Point(0, 0), new Point(20, 0), new Point(20, 20),
+                new Point(0, 20)), Collections.singletonList(hole));
+        Polygon square = new Polygon(Arrays.asList(new Point(0, 0), new Point(10, 0), new Point(10, 10),
+                new Point(0, 10)));
+        IntMatrix smallest = BatchRasterizer.label(Arrays.asList(square, frame), bound,
+                BatchRasterizer.OverlapRule.SMALLEST);
+        // on the frame and inside the square
+        assertEquals(2, smallest.getInt(19, 0));
+        // in the hole and inside the square
+        assertEquals(1, smallest.getInt(15, 5));
+        // on the frame only
+        assertEquals(2, smallest.getInt(0, 19));
+        // in the hole only
+        assertEquals(0, smallest.getInt(5, 15));
+    }
+
+    @Test
+    public void manyVertices() {
+        // a 100000-vertex star across every band, as one scanline fill of the factory rasterizes it
+        List<Point> points = new ArrayList<>();
+        int vertexCount = 100000;
+        for (int v = 0; v < vertexCount; v++) {
+            double angle = 2 * Math.PI * v / vertexCount;
+            double radius = 1200 + 300 * Math.sin(angle * 40) + (v % 2) * 7;
+            points.add(new Point(1500 + radius * Math.cos(angle), 1500 + radius * Math.sin(angle)));
+        }
+        Polygon polygon = new Polygon(points);
+        Bound bound = polygon.getBound(1);
+        BitMatrix expected = BitMatrixFactory.createByScanLine(polygon, 1, FillRule.EVEN_ODD);
+        BitMatrix union = BatchRasterizer.union(Collections.singletonList(polygon), bound);
+        assertTrue(expected.getTrueElementsCount() > 0);
+        assertEquals(0, union.xor(expected));
+        IntMatrix coverage = BatchRasterizer.coverage(Arrays.asList(polygon, polygon), bound);
+        for (int k = 0; k < coverage.getCount(); k += 97) {
+            assertEquals(expected.get(k) ? 2 : 0, coverage.getInt(k));
+        }
+    }
+
+    private static double area(Polygon polygon) {
+        List<Point> points = polygon.getPoints();
+        double doubleArea = 0;
+        for (int k = 0; k < points.size(); k++) {
+            Point a = points.get(k);
+            Point b = points.get((k + 1) % points.size());
+            doubleArea += a.getX() * b.getY() - b.getX() * a.getY();
+        }
+        return Math.abs(doubleArea) / 2;
+    }
+}
@@ -1,11 +1,15 @@
 package pers.yzx.matrix;
 
 import org.junit.Test;
+import pers.yzx.geometry.MultiPolygon;
 import pers.yzx.geometry.Point;
 import pers.yzx.geometry.Polygon;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -56,4 +60,73 @@ public class BitMatrixFactoryTest {
         bitMatrix4.print();
         assertEquals(10, bitMatrix4.getTrueElementsCount());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void createByScanLineWithRings() {
+        // a square with a hole of the same orientation, and an overlapping square
+        List<Point> hole = square(3, 3, 7, 7);
+        Polygon holed = new Polygon(square(0, 0, 10, 10), Collections.singletonList(hole));
+        Polygon overlapping = new Polygon(square(8, 2, 14, 6));
+        MultiPolygon multiPolygon = new MultiPolygon(Arrays.asList(holed, overlapping));
+
+        BitMatrix evenOdd = BitMatrixFactory.createByScanLine(multiPolygon, 1, FillRule.EVEN_ODD);
+        BitMatrix nonZero = BitMatrixFactory.createByScanLine(multiPolygon, 1, FillRule.NON_ZERO);
+        assertEquals(10 * 10 - 4 * 4 - 2 * 4 + 4 * 4, evenOdd.getTrueElementsCount());
+        assertEquals(10 * 10 + 4 * 4, nonZero.getTrueElementsCount());
+        for (int i = 0; i < evenOdd.getRowCount(); i++) {
+            for (int j = 0; j < evenOdd.getColumnCount(); j++) {
+                Point centre = new Point(evenOdd.getTopLeftX() + j + 0.5, evenOdd.getTopLeftY() - i - 0.5);
+                boolean inHole = centre.getX() > 3 && centre.getX() < 7 && centre.getY() > 3 && centre.getY() < 7;
+                boolean inOverlapping = centre.getX() > 8 && centre.getX() < 14 && centre.getY() > 2 && centre.getY() < 6;
+                boolean inOuter = centre.getX() < 10 && centre.getY() > 0 && centre.getY() < 10;
+                assertEquals((inOuter ^ inHole) ^ inOverlapping, evenOdd.get(i, j));
+                assertEquals(inOuter || inOverlapping, nonZero.get(i, j));
+            }
+        }
+
+        // a hole running opposite to its outer ring is cut by both rules
+        List<Point> reversed = new ArrayList<>(hole);
+        Collections.reverse(reversed);
+        Polygon polygon = new Polygon(square(0, 0, 10, 10), Collections.singletonList(reversed));
+        assertEquals(84, BitMatrixFactory.createByScanLine(polygon, 1, FillRule.NON_ZERO).getTrueElementsCount());
+        assertEquals(84, BitMatrixFactory.createByScanLine(polygon, 1, FillRule.EVEN_ODD).getTrueElementsCount());
+    }
+
+    @Test
+    public void createByScanLineWithManyVertices() {
+        // a star-shaped ring with many vertices, checked on a sample of cells
+        Random random = new Random(29);
+        List<Point> points = new ArrayList<>();
+        int vertexCount = 50000;
+        for (int v = 0; v < vertexCount; v++) {
+            double angle = 2 * Math.PI * v / vertexCount;
+            double radius = 100 + 40 * Math.sin(angle * 37) + random.nextDouble() * 10;
+            points.add(new Point(150 + radius * Math.cos(angle), 150 + radius * Math.sin(angle)));
+        }
+        Polygon polygon = new Polygon(points);
+        BitMatrix bitMatrix = BitMatrixFactory.createByScanLine(polygon, 1, FillRule.EVEN_ODD);
+        for (int n = 0; n < 2000; n++) {
+            int i = random.nextInt(bitMatrix.getRowCount());
+            int j = random.nextInt(bitMatrix.getColumnCount());
+            Point centre = new Point(bitMatrix.getTopLeftX() + j + 0.5, bitMatrix.getTopLeftY() - i - 0.5);
+            assertEquals(i + "," + j, polygon.isInside(centre), bitMatrix.get(i, j));
+        }
+    }
+
+    @Test
+    public void createByScanLineWithHorizontalEdges() {
+        // axis-aligned rings along cell boundaries cover exactly their area, whatever the vertices
+        Polygon l = new Polygon(Arrays.asList(new Point(0, 0), new Point(6, 0), new Point(6, 2),
+                new Point(2, 2), new Point(2, 6), new Point(0, 6)));
+        assertEquals(20, BitMatrixFactory.createByScanLine(l, 1, FillRule.NON_ZERO).getTrueElementsCount());
+        // collinear vertices along the top and a notch sharing its bottom with the base line
+        Polygon comb = new Polygon(Arrays.asList(new Point(0, 0), new Point(2, 0), new Point(2, 3),
+                new Point(3, 3), new Point(3, 0), new Point(6, 0), new Point(6, 4), new Point(4, 4),
+                new Point(2, 4), new Point(0, 4)));
+        assertEquals(6 * 4 - 3, BitMatrixFactory.createByScanLine(comb, 1, FillRule.EVEN_ODD).getTrueElementsCount());
+    }
+
+    private static List<Point> square(double minX, double minY, double maxX, double maxY) {
+        return Arrays.asList(new Point(minX, minY), new Point(maxX, minY), new Point(maxX, maxY), new Point(minX, maxY));
+    }
+}
@@ -0,0 +1,148 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BitMatrixTest {
+
+    @Test
+    public void bitOperations() {
+        Random random = new Random(7);
+        // origins shifted by a non-multiple of 64 columns, large enough to be split into bands
+        BitMatrix a = randomMatrix(new Bound(0.0, 0.0, 300, 203, 1), 2, random);
+        BitMatrix b = randomMatrix(new Bound(37.0, -11.0, 310, 190, 1), 1, random);
+        for (BitMatrix.BitOperation operation : BitMatrix.BitOperation.values()) {
+            BitMatrix result = a.combine(operation, b);
+            int expectedCount = 0;
+            for (int f = 0; f < a.getFloorCount(); f++) {
+                for (int i = 0; i < a.getRowCount(); i++) {
+                    for (int j = 0; j < a.getColumnCount(); j++) {
+                        int otherRow = i - 11;
+                        int otherColumn = j - 37;
+                        boolean other = f < b.getFloorCount() && otherRow >= 0 && otherRow < b.getRowCount() &&
+                                otherColumn >= 0 && otherColumn < b.getColumnCount() && b.get(f, otherRow, otherColumn);
+                        boolean value = a.get(f, i, j);
+                        boolean expected;
+                        switch (operation) {
+                            case AND:
+                                expected = value && other;
+                                break;
+                            case OR:
+                                expected = value || other;
+                                break;
+                            case XOR:
+                                expected = value ^ other;
+                                break;
+                            default:
+                                expected = value && !other;
+                        }
+                        assertEquals(operation + " at " + f + "," + i + "," + j, expected, result.get(f, i, j));
+                        expectedCount += expected ? 1 : 0;
+                    }
+                }
+            }
+            assertEquals(expectedCount, result.getTrueElementsCount());
+        }
+
+        BitMatrix copy = a.combine(BitMatrix.BitOperation.OR, a);
+        assertEquals(a.getTrueElementsCount(), copy.getTrueElementsCount());
+        assertEquals(0, copy.xor(copy));
+        assertEquals(a.getTrueElementsCount(), copy.or(a));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unalignedGrids() {
+        new BitMatrix(new Bound(0.0, 0.0, 4, 4, 2)).and(new BitMatrix(new Bound(1.0, 0.0, 4, 4, 2)));
+    }
+
+    @Test
+    public void trueCells() {
+        BitMatrix matrix = randomMatrix(new Bound(0.0, 0.0, 170, 331, 1), 2, new Random(3));
+        IntArrayList expected = new IntArrayList();
+        for (int k = 0; k < matrix.getCount(); k++) {
+            if (matrix.get(k)) {
+                expected.add(k);
+            }
+        }
+        IntArrayList iterated = new IntArrayList();
+        matrix.trueIndexIterator().forEachRemaining((int k) -> iterated.add(k));
+        assertEquals(expected, iterated);
+        assertArrayEquals(expected.toIntArray(), matrix.trueIndexStream().toArray());
+        assertArrayEquals(expected.toIntArray(), matrix.trueIndexStream().parallel().toArray());
+        assertEquals(matrix.getTrueElementsCount(), matrix.trueIndexStream().parallel().count());
+
+        IntArrayList visited = new IntArrayList();
+        matrix.forEachTrueCell((f, i, j) -> visited.add(matrix.getFlatIndex(f, i, j)));
+        assertEquals(expected, visited);
+
+        IntIterator iterator = matrix.trueIndexIterator();
+        while (iterator.hasNext()) {
+            if (iterator.nextInt() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        assertEquals(expected.stream().filter(k -> k % 2 != 0).count(), matrix.getTrueElementsCount());
+        assertTrue(matrix.trueIndexStream().allMatch(k -> k % 2 != 0));
+    }
+
+    @Test
+    public void spans() {
+        BitMatrix matrix = randomMatrix(new Bound(0.0, 0.0, 5, 150, 1), 2, new Random(13));
+        boolean[] expected = new boolean[matrix.getCount()];
+        for (int k = 0; k < expected.length; k++) {
+            expected[k] = matrix.get(k);
+        }
+        matrix.setRowRange(1, 2, 3, 140, true);
+        matrix.setRowRange(0, 4, 60, 70, false);
+        matrix.flipRowRange(1, 0, 10, 130);
+        matrix.setRange(200, 460, false);
+        matrix.setRange(700, 701, true);
+        int rowStart = matrix.getFlatIndex(1, 2, 0);
+        Arrays.fill(expected, rowStart + 3, rowStart + 140, true);
+        rowStart = matrix.getFlatIndex(0, 4, 0);
+        Arrays.fill(expected, rowStart + 60, rowStart + 70, false);
+        rowStart = matrix.getFlatIndex(1, 0, 0);
+        for (int k = rowStart + 10; k < rowStart + 130; k++) {
+            expected[k] = !expected[k];
+        }
+        Arrays.fill(expected, 200, 460, false);
+        expected[700] = true;
+
+        int count = 0;
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals("at " + k, expected[k], matrix.get(k));
+            count += expected[k] ? 1 : 0;
+        }
+        assertEquals(count, matrix.getTrueElementsCount());
+        for (int f = 0; f < matrix.getFloorCount(); f++) {
+            for (int i = 0; i < matrix.getRowCount(); i++) {
+                int rowCount = 0;
+                for (int j = 0; j < matrix.getColumnCount(); j++) {
+                    rowCount += expected[matrix.getFlatIndex(f, i, j)] ? 1 : 0;
+                }
+                assertEquals(rowCount, matrix.cardinalityInRow(f, i));
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void spanOutsideRow() {
+        new BitMatrix(new Bound(0.0, 0.0, 4, 4, 1)).setRowRange(0, 1, 2, 5, true);
+    }
+
+    private static BitMatrix randomMatrix(Bound bound, int floorCount, Random random) {
+        BitMatrix matrix = new BitMatrix(bound, floorCount);
+        for (int k = 0; k < matrix.getCount(); k++) {
+            if (random.nextInt(3) == 0) {
+                matrix.set(k, true);
+            }
+        }
+        return matrix;
+    }
+}
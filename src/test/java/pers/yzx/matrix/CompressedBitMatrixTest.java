@@ -0,0 +1,97 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressedBitMatrixTest {
+
+    @Test
+    public void compression() {
+        // a disk mask: one run per row
+        Bound bound = new Bound(0.0, 0.0, 1000, 700, 1);
+        BitMatrix mask = new BitMatrix(bound);
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j < 700; j++) {
+                if ((i - 500) * (i - 500) + (j - 350) * (j - 350) < 300 * 300) {
+                    mask.set(i, j, true);
+                }
+            }
+        }
+        CompressedBitMatrix compressed = CompressedBitMatrix.of(mask);
+        assertEquals(mask.getTrueElementsCount(), compressed.getTrueElementsCount());
+        assertTrue(compressed.getByteSize() * 10 < mask.getCount() / 8);
+        for (int k = 0; k < mask.getCount(); k += 7) {
+            assertEquals(mask.get(k), compressed.get(k));
+        }
+        int count = 0;
+        for (int k = compressed.nextSetBit(0); k >= 0; k = compressed.nextSetBit(k + 1)) {
+            assertTrue(mask.get(k));
+            count++;
+        }
+        assertEquals(mask.getTrueElementsCount(), count);
+
+        BitMatrix restored = compressed.toBitMatrix();
+        assertEquals(0, restored.xor(mask));
+    }
+
+    @Test
+    public void operations() {
+        Random random = new Random(3);
+        Bound bound = new Bound(0.0, 0.0, 400, 500, 1);
+        BitMatrix a = new BitMatrix(bound);
+        BitMatrix b = new BitMatrix(bound);
+        for (int k = 0; k < a.getCount(); k++) {
+            // sparse cells, dense cells and runs in different chunks
+            int chunk = k >>> 16;
+            a.set(k, chunk % 3 == 0 ? random.nextInt(50) == 0 : chunk % 3 == 1 ? random.nextBoolean() : k % 1000 < 600);
+            b.set(k, chunk % 2 == 0 ? random.nextInt(3) == 0 : k % 700 < 100);
+        }
+        for (BitMatrix.BitOperation operation : BitMatrix.BitOperation.values()) {
+            CompressedBitMatrix result = CompressedBitMatrix.of(a);
+            int count = result.apply(operation, CompressedBitMatrix.of(b));
+            BitMatrix expected = a.combine(operation, b);
+            assertEquals(operation.toString(), expected.getTrueElementsCount(), count);
+            assertEquals(operation.toString(), 0, result.toBitMatrix().xor(expected));
+        }
+
+        CompressedBitMatrix matrix = CompressedBitMatrix.of(a);
+        matrix.set(0, 499, true);
+        matrix.set(399, 499, false);
+        matrix.set(150, 0, true);
+        assertTrue(matrix.get(0, 499));
+        assertFalse(matrix.get(399, 499));
+        matrix.optimize();
+        assertTrue(matrix.get(150, 0));
+        matrix.replaceAll(e -> !e);
+        assertFalse(matrix.get(150, 0));
+        matrix.fill(true);
+        assertEquals(matrix.getCount(), matrix.getTrueElementsCount());
+        assertEquals(0, matrix.xor(matrix));
+    }
+
+    @Test
+    public void runOperations() {
+        // two overlapping disk masks, every chunk of both held as runs
+        Bound bound = new Bound(0.0, 0.0, 600, 500, 1);
+        BitMatrix a = new BitMatrix(bound);
+        BitMatrix b = new BitMatrix(bound);
+        for (int i = 0; i < 600; i++) {
+            for (int j = 0; j < 500; j++) {
+                a.set(i, j, (i - 250) * (i - 250) + (j - 250) * (j - 250) < 240 * 240);
+                b.set(i, j, (i - 350) * (i - 350) + (j - 200) * (j - 200) < 200 * 200);
+            }
+        }
+        for (BitMatrix.BitOperation operation : BitMatrix.BitOperation.values()) {
+            CompressedBitMatrix result = CompressedBitMatrix.of(a);
+            int count = result.apply(operation, CompressedBitMatrix.of(b));
+            BitMatrix expected = a.combine(operation, b);
+            assertEquals(operation.toString(), expected.getTrueElementsCount(), count);
+            assertEquals(operation.toString(), 0, result.toBitMatrix().xor(expected));
+            // the merged runs are as few as those found by compressing the result
+            assertEquals(operation.toString(), CompressedBitMatrix.of(expected).getByteSize(), result.getByteSize());
+        }
+    }
+}
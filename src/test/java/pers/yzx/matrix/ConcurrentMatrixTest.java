@@ -0,0 +1,66 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentMatrixTest {
+
+    @Test
+    public void concurrentMerge() throws Exception {
+        Bound bound = new Bound(0.0, 0.0, 40, 30, 1);
+        mergeCounts(new ConcurrentArrayMatrix<>(bound, 2));
+        mergeCounts(new ConcurrentSparseMatrix<>(bound, 2));
+        mergeCounts(new ConcurrentSparseMatrix<>(bound, 2, 1));
+    }
+
+    private void mergeCounts(ConcurrentMatrix<Integer> matrix) throws Exception {
+        int threads = 8;
+        int rounds = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                tasks.add(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        for (int f = 0; f < matrix.getFloorCount(); f++) {
+                            for (int r = 0; r < matrix.getRowCount(); r += 3) {
+                                for (int c = 0; c < matrix.getColumnCount(); c++) {
+                                    matrix.merge(f, r, c, 1, Integer::sum);
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int occupied = 2 * 14 * 30;
+        assertEquals(occupied, matrix.getEffectiveCount());
+        assertEquals(Integer.valueOf(threads * rounds), matrix.get(1, 3, 29));
+        assertNull(matrix.get(1, 4, 29));
+        assertEquals(occupied * threads * rounds, (int) matrix.reduce(0, (sum, e) -> sum + e, Integer::sum));
+        assertEquals(occupied, matrix.stream().count());
+        assertEquals(occupied, matrix.parallelStream().filter(cursor -> cursor.getIndex().getRowIndex() % 3 == 0).count());
+
+        assertEquals(Integer.valueOf(threads * rounds), matrix.putIfAbsent(0, 0, 0, -1));
+        assertNull(matrix.putIfAbsent(0, 1, 0, -1));
+        assertNull(matrix.compute(0, 1, 0, e -> null));
+        matrix.replaceAll(e -> e % 2 == 0 ? null : e);
+        assertEquals(0, matrix.getEffectiveCount());
+        assertTrue(matrix.isEmpty());
+    }
+}
@@ -0,0 +1,124 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ConnectedComponentsTest {
+
+    @Test
+    public void againstFloodFill() {
+        Random random = new Random(5);
+        // taller than a band, so that components cross the band edges
+        BitMatrix mask = new BitMatrix(new Bound(0.0, 0.0, 300, 90, 1), 3);
+        for (int f = 0; f < mask.getFloorCount(); f++) {
+            for (int i = 0; i < mask.getRowCount(); i++) {
+                for (int j = 0; j < mask.getColumnCount(); j++) {
+                    mask.set(f, i, j, random.nextInt(100) < 45);
+                }
+            }
+        }
+        for (ConnectedComponents.Connectivity connectivity : ConnectedComponents.Connectivity.values()) {
+            ConnectedComponents components = ConnectedComponents.label(mask, connectivity);
+            int[][][] expected = floodFill(mask, connectivity);
+            IntMatrix labels = components.getLabels();
+            // the labelling is the same up to a renumbering, and the sizes agree
+            Map<Integer, Integer> mapping = new HashMap<>();
+            Map<Integer, Integer> sizes = new HashMap<>();
+            for (int f = 0; f < mask.getFloorCount(); f++) {
+                for (int i = 0; i < mask.getRowCount(); i++) {
+                    for (int j = 0; j < mask.getColumnCount(); j++) {
+                        int label = labels.getInt(f, i, j);
+                        assertEquals(expected[f][i][j] == 0, label == 0);
+                        if (label != 0) {
+                            Integer previous = mapping.putIfAbsent(expected[f][i][j], label);
+                            assertEquals(connectivity + " at " + f + "," + i + "," + j,
+                                    previous == null ? label : previous, label);
+                            sizes.merge(label, 1, Integer::sum);
+                            ConnectedComponents.Component component = components.getComponent(label);
+                            assertTrue(component.getMinIndex().getRowIndex() <= i);
+                            assertTrue(component.getMaxIndex().getRowIndex() >= i);
+                            assertTrue(component.getMinIndex().getColumnIndex() <= j);
+                            assertTrue(component.getMaxIndex().getColumnIndex() >= j);
+                            assertTrue(component.getMinIndex().getFloorIndex() <= f);
+                        }
+                    }
+                }
+            }
+            assertEquals(connectivity.toString(), mapping.size(), components.getComponentCount());
+            assertEquals(mapping.size(), sizes.size());
+            for (ConnectedComponents.Component component : components.getComponents()) {
+                assertEquals(sizes.get(component.getLabel()).intValue(), component.getSize());
+            }
+        }
+    }
+
+    @Test
+    public void largeRegion() {
+        // a serpentine path through the whole matrix, which a recursive fill could not follow
+        BitMatrix mask = new BitMatrix(new Bound(0.0, 0.0, 1001, 1000, 1));
+        int size = 0;
+        for (int i = 0; i < mask.getRowCount(); i += 2) {
+            for (int j = 0; j < mask.getColumnCount(); j++) {
+                mask.set(i, j, true);
+                size++;
+            }
+            if (i + 1 < mask.getRowCount()) {
+                mask.set(i + 1, (i / 2) % 2 == 0 ? mask.getColumnCount() - 1 : 0, true);
+                size++;
+            }
+        }
+        ConnectedComponents components = ConnectedComponents.label(mask, ConnectedComponents.Connectivity.FOUR);
+        assertEquals(1, components.getComponentCount());
+        assertEquals(size, components.getComponent(1).getSize());
+        assertEquals(1000, components.getComponent(1).getMaxIndex().getRowIndex());
+    }
+
+    private static int[][][] floodFill(BitMatrix mask, ConnectedComponents.Connectivity connectivity) {
+        int floors = mask.getFloorCount();
+        int rows = mask.getRowCount();
+        int columns = mask.getColumnCount();
+        int[][][] labels = new int[floors][rows][columns];
+        int count = 0;
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int f = 0; f < floors; f++) {
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < columns; j++) {
+                    if (!mask.get(f, i, j) || labels[f][i][j] != 0) {
+                        continue;
+                    }
+                    labels[f][i][j] = ++count;
+                    queue.add(new int[]{f, i, j});
+                    while (!queue.isEmpty()) {
+                        int[] cell = queue.poll();
+                        int floorRange = connectivity.isAcrossFloors() ? 1 : 0;
+                        for (int df = -floorRange; df <= floorRange; df++) {
+                            for (int di = -1; di <= 1; di++) {
+                                for (int dj = -1; dj <= 1; dj++) {
+                                    int steps = Math.abs(df) + Math.abs(di) + Math.abs(dj);
+                                    if (steps == 0 || !connectivity.isDiagonal() && steps > 1) {
+                                        continue;
+                                    }
+                                    int nf = cell[0] + df;
+                                    int ni = cell[1] + di;
+                                    int nj = cell[2] + dj;
+                                    if (nf >= 0 && nf < floors && ni >= 0 && ni < rows && nj >= 0 && nj < columns &&
+                                            mask.get(nf, ni, nj) && labels[nf][ni][nj] == 0) {
+                                        labels[nf][ni][nj] = count;
+                                        queue.add(new int[]{nf, ni, nj});
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return labels;
+    }
+}
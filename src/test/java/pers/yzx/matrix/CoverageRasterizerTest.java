@@ -0,0 +1,112 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+import pers.yzx.geometry.Point;
+import pers.yzx.geometry.Polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CoverageRasterizerTest {
+
+    @Test
+    public void againstCellClipping() {
+        Random random = new Random(23);
+        for (int n = 0; n < 20; n++) {
+            // star-shaped, so concave, polygons in either orientation
+            List<Point> points = new ArrayList<>();
+            int vertexCount = 3 + random.nextInt(8);
+            for (int v = 0; v < vertexCount; v++) {
+                double angle = 2 * Math.PI * v / vertexCount * (n % 2 == 0 ? 1 : -1);
+                double radius = 2 + random.nextDouble() * 12;
+                points.add(new Point(20 + radius * Math.cos(angle), 20 + radius * Math.sin(angle)));
+            }
+            Polygon polygon = new Polygon(points);
+            // the bound cuts the polygon on every side
+            Bound bound = new Bound(10.0, 30.0, 20, 20, 1);
+            FloatMatrix coverage = CoverageRasterizer.rasterize(polygon, bound);
+            for (int i = 0; i < bound.getRowCount(); i++) {
+                for (int j = 0; j < bound.getColumnCount(); j++) {
+                    double x = bound.getTopLeftX() + j;
+                    double y = bound.getTopLeftY() - i - 1;
+                    assertEquals(n + " at " + i + "," + j, clippedArea(points, x, y, x + 1, y + 1),
+                            coverage.getFloat(i, j), 1e-4);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resolution() {
+        // a 3 x 2 rectangle shifted by a quarter cell, at 2 m resolution
+        Polygon polygon = new Polygon(Arrays.asList(new Point(0.5, 0.5), new Point(6.5, 0.5),
+                new Point(6.5, 4.5), new Point(0.5, 4.5)));
+        Bound bound = new Bound(0.0, 6.0, 3, 4, 2);
+        FloatMatrix coverage = CoverageRasterizer.rasterize(polygon, bound);
+        double total = 0;
+        for (int k = 0; k < coverage.getCount(); k++) {
+            total += coverage.getFloat(k) * 4;
+        }
+        assertEquals(24, total, 1e-4);
+        assertEquals(0.25f * 0.75f, coverage.getFloat(0, 0), 1e-6);
+        assertEquals(0.75f, coverage.getFloat(1, 0), 1e-6);
+        assertEquals(1f, coverage.getFloat(1, 1), 1e-6);
+        assertEquals(0.75f * 0.25f, coverage.getFloat(2, 3), 1e-6);
+    }
+
+    @Test
+    public void edgeEndingOnLeftSide() {
+        // the edge from (5, 6.9) to (0, 6.6) steps x down to just below the left side of the bound
+        List<Point> points = Arrays.asList(new Point(0.0, 6.6), new Point(7.7, 4.5), new Point(5.0, 6.9));
+        FloatMatrix coverage = CoverageRasterizer.rasterize(new Polygon(points), 1);
+        double total = 0;
+        for (int k = 0; k < coverage.getCount(); k++) {
+            total += coverage.getFloat(k);
+        }
+        // (7.7 * (6.9 - 6.6) + 5.0 * (6.6 - 4.5)) / 2
+        assertEquals(6.405, total, 1e-4);
+    }
+
+    /**
+     * Area of a polygon clipped to a box, by Sutherland-Hodgman.
+     */
+    private static double clippedArea(List<Point> points, double minX, double minY, double maxX, double maxY) {
+        List<double[]> ring = new ArrayList<>();
+        for (Point point : points) {
+            ring.add(new double[]{point.getX(), point.getY()});
+        }
+        ring = clip(ring, 0, minX, true);
+        ring = clip(ring, 0, maxX, false);
+        ring = clip(ring, 1, minY, true);
+        ring = clip(ring, 1, maxY, false);
+        double doubleArea = 0;
+        for (int k = 0; k < ring.size(); k++) {
+            double[] a = ring.get(k);
+            double[] b = ring.get((k + 1) % ring.size());
+            doubleArea += a[0] * b[1] - b[0] * a[1];
+        }
+        return Math.abs(doubleArea) / 2;
+    }
+
+    private static List<double[]> clip(List<double[]> ring, int axis, double limit, boolean above) {
+        List<double[]> result = new ArrayList<>();
+        for (int k = 0; k < ring.size(); k++) {
+            double[] a = ring.get(k);
+            double[] b = ring.get((k + 1) % ring.size());
+            boolean aInside = above ? a[axis] >= limit : a[axis] <= limit;
+            boolean bInside = above ? b[axis] >= limit : b[axis] <= limit;
+            if (aInside) {
+                result.add(a);
+            }
+            if (aInside != bInside) {
+                double t = (limit - a[axis]) / (b[axis] - a[axis]);
+                result.add(new double[]{a[0] + (b[0] - a[0]) * t, a[1] + (b[1] - a[1]) * t});
+            }
+        }
+        return result;
+    }
+}
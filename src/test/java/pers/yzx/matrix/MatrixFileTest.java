@@ -0,0 +1,102 @@
+package pers.yzx.matrix;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+public class MatrixFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndMap() throws IOException {
+        Bound bound = new Bound(10.0, 20.0, 5, 6, 2);
+        DoubleMatrix matrix = new DoubleMatrix(bound, 2);
+        for (int i = 0; i < matrix.getCount(); i++) {
+            matrix.setDouble(i, i * 0.5);
+        }
+        Path path = folder.newFile("elevation.mtx").toPath();
+        MatrixFile.write(matrix, path);
+
+        MatrixFile.Header header = MatrixFile.readHeader(path);
+        assertEquals(CellType.DOUBLE, header.getCellType());
+        assertEquals(2, header.getFloorCount());
+        assertEquals(5, header.getBound().getRowCount());
+        assertEquals(6, header.getBound().getColumnCount());
+        assertEquals(2, header.getBound().getResolution());
+        assertEquals(20.0, header.getBound().getTopLeftY(), 0.0);
+
+        try (MappedMatrix<Double> mapped = MatrixFile.map(path, false)) {
+            assertFalse(mapped.isWritable());
+            assertEquals(matrix.getCount(), mapped.getCount());
+            for (int i = 0; i < matrix.getCount(); i++) {
+                assertEquals(matrix.getDouble(i), mapped.getDouble(i), 0.0);
+            }
+            assertEquals(Double.valueOf(matrix.getDouble(1, 4, 5)), mapped.get(1, 4, 5));
+        }
+    }
+
+    @Test
+    public void createAndForce() throws IOException {
+        Bound bound = new Bound(0.0, 0.0, 3, 4, 1);
+        Path path = folder.getRoot().toPath().resolve("signal.mtx");
+        try (MappedMatrix<Integer> mapped = MatrixFile.create(path, bound, 1, CellType.INT)) {
+            mapped.set(2, 3, 7);
+            mapped.force();
+        }
+        try (MappedMatrix<Integer> mapped = MatrixFile.map(path, false)) {
+            assertEquals(Integer.valueOf(7), mapped.get(2, 3));
+            assertEquals(Integer.valueOf(0), mapped.get(0, 0));
+        }
+    }
+
+    @Test
+    public void bitMatrix() throws IOException {
+        BitMatrix bitMatrix = new BitMatrix(new Bound(0.0, 0.0, 9, 11, 1));
+        bitMatrix.set(0, 1, true);
+        bitMatrix.set(4, 10, true);
+        bitMatrix.set(8, 10, true);
+        Path path = folder.newFile("mask.mtx").toPath();
+        MatrixFile.write(bitMatrix, path);
+
+        try (MappedBitMatrix mapped = MatrixFile.mapBitMatrix(path, true)) {
+            assertEquals(3, mapped.getTrueElementsCount());
+            for (int i = 0; i < bitMatrix.getCount(); i++) {
+                assertEquals(bitMatrix.get(i), mapped.get(i));
+            }
+            mapped.set(0, 1, false);
+            mapped.force();
+        }
+        try (MappedBitMatrix mapped = MatrixFile.mapBitMatrix(path, false)) {
+            assertFalse(mapped.get(0, 1));
+            assertEquals(2, mapped.getTrueElementsCount());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongType() throws IOException {
+        Path path = folder.newFile("mask.mtx").toPath();
+        MatrixFile.write(new BitMatrix(new Bound(0.0, 0.0, 2, 2, 1)), path);
+        MatrixFile.map(path, false);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptHeader() throws IOException {
+        Path path = folder.newFile("corrupt.mtx").toPath();
+        MatrixFile.write(new BitMatrix(new Bound(0.0, 0.0, 2, 2, 1)), path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            // a negative row count
+            channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, -1), 16);
+        }
+        MatrixFile.readHeader(path);
+    }
+}
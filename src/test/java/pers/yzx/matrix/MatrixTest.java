@@ -1,5 +1,6 @@
 package pers.yzx.matrix;
 
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import org.junit.Before;
 import org.junit.Test;
 import pers.yzx.geometry.Point;
@@ -8,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.function.Predicate;
 
 import static java.util.stream.Collectors.toList;
@@ -176,6 +178,27 @@ public class MatrixTest {
         assertEquals(true, bitMatrix.get(3, 3));
     }
 
+    @Test
+    public void arrayMatrixFloors() throws Exception {
+        ArrayMatrix<String> matrix = new ArrayMatrix<>(new Bound(0.0, 0.0, 5, 6, 1), 2);
+        assertEquals(2, matrix.getFloorCount());
+        assertEquals(60, matrix.getCount());
+        matrix.set(1, 2, 3, "f1_r2_c3");
+        assertEquals("f1_r2_c3", matrix.get(matrix.getFlatIndex(1, 2, 3)));
+        matrix.set(matrix.getFlatIndex(1, 4, 5), "f1_r4_c5");
+        assertEquals("f1_r4_c5", matrix.get(1, 4, 5));
+        assertEquals(2, matrix.getEffectiveCount());
+
+        Iterator<Index> indexIterator = matrix.indexIterator();
+        Index index = indexIterator.next();
+        assertEquals(1, index.getFloorIndex());
+        assertEquals(2, index.getRowIndex());
+        assertEquals(3, index.getColumnIndex());
+        indexIterator.remove();
+        assertEquals(1, matrix.getEffectiveCount());
+        assertNull(matrix.get(1, 2, 3));
+    }
+
     @Test
     public void isEmpty() throws Exception {
         assertTrue(!sparseMatrix.isEmpty());
@@ -241,9 +264,9 @@ public class MatrixTest {
     @Test
     public void keyIterator() throws Exception {
         int num = 0;
-        Iterator<Integer> keyIterator = sparseMatrix.keyIterator();
+        IntIterator keyIterator = sparseMatrix.keyIterator();
         while (keyIterator.hasNext()) {
-            Integer flatIndex = keyIterator.next();
+            int flatIndex = keyIterator.nextInt();
             String s = sparseMatrix.get(flatIndex);
             assertNotNull(s);
             num++;
@@ -253,7 +276,7 @@ public class MatrixTest {
         num = 0;
         keyIterator = arrayMatrix.keyIterator();
         while (keyIterator.hasNext()) {
-            Integer flatIndex = keyIterator.next();
+            int flatIndex = keyIterator.nextInt();
             String s = arrayMatrix.get(flatIndex);
             assertNotNull(s);
             num++;
@@ -263,7 +286,7 @@ public class MatrixTest {
         num = 0;
         keyIterator = bitMatrix.keyIterator();
         while (keyIterator.hasNext()) {
-            Integer flatIndex = keyIterator.next();
+            int flatIndex = keyIterator.nextInt();
             Boolean s = bitMatrix.get(flatIndex);
             assertNotNull(s);
             num++;
@@ -271,6 +294,28 @@ public class MatrixTest {
         assertEquals(bitMatrix.getEffectiveCount(), num);
     }
 
+    @Test
+    public void forEachCell() throws Exception {
+        List<String> cells = new ArrayList<>();
+        CellConsumer<String> consumer = (f, i, j, e) -> {
+            assertEquals("r" + i + "_c" + j, e);
+            cells.add(e);
+        };
+        sparseMatrix.forEachCell(consumer);
+        assertEquals(sparseMatrix.getEffectiveCount(), cells.size());
+        cells.clear();
+        arrayMatrix.forEachCell(consumer);
+        assertEquals(arrayMatrix.getEffectiveCount(), cells.size());
+
+        int[] counts = new int[2];
+        bitMatrix.forEachCell((f, i, j, e) -> {
+            assertEquals(bitMatrix.get(i, j), e);
+            counts[e ? 1 : 0]++;
+        });
+        assertEquals(3, counts[1]);
+        assertEquals(bitMatrix.getCount() - 3, counts[0]);
+    }
+
     @Test
     public void getStartRow() throws Exception {
         assertEquals(0, sparseMatrix.getStartRow(arrayMatrix));
@@ -325,6 +370,101 @@ public class MatrixTest {
         stream(matrix);
     }
 
+    @Test
+    public void denseSpliterator() {
+        Bound bound = new Bound(0.0, 0.0, 300, 200, 1);
+        BitMatrix matrix = new BitMatrix(bound, 2);
+        for (int i = 0; i < matrix.getRowCount(); i++) {
+            matrix.set(1, i, (i * 7) % matrix.getColumnCount(), true);
+        }
+        Spliterator<Matrix.Cursor<Index, Boolean>> spliterator = matrix.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        assertEquals(matrix.getCount(), spliterator.getExactSizeIfKnown());
+        Spliterator<Matrix.Cursor<Index, Boolean>> prefix = spliterator.trySplit();
+        assertEquals(bound.getCount(), prefix.estimateSize());
+        Spliterator<Matrix.Cursor<Index, Boolean>> rows = spliterator.trySplit();
+        assertEquals(0, rows.estimateSize() % bound.getColumnCount());
+
+        assertEquals(matrix.getCount(), matrix.parallelStream().count());
+        assertEquals(matrix.getRowCount(), matrix.parallelStream().filter(Matrix.Cursor::getElement).count());
+        matrix.parallelStream().forEach(cursor -> assertEquals(matrix.get(cursor.getIndex()), cursor.getElement()));
+
+        assertFalse(arrayMatrix.spliterator().hasCharacteristics(Spliterator.SIZED));
+        assertEquals(arrayMatrix.getEffectiveCount(), arrayMatrix.parallelStream().count());
+    }
+
+    @Test
+    public void bulkOperations() {
+        Bound bound = new Bound(0.0, 0.0, 400, 300, 1);
+        ArrayMatrix<Integer> array = new ArrayMatrix<>(bound, 2);
+        SparseMatrix<Integer> sparse = new SparseMatrix<>(bound, 2);
+        DoubleMatrix doubles = new DoubleMatrix(bound, 2);
+        for (int i = 0; i < array.getCount(); i += 7) {
+            array.set(i, i % 100);
+            sparse.set(i, i % 100);
+        }
+        long expected = 0;
+        for (int i = 0; i < array.getCount(); i += 7) {
+            expected += i % 100;
+        }
+        assertEquals(expected, (long) array.reduce(0L, (r, e) -> r + e, Long::sum));
+        assertEquals(expected, (long) sparse.reduce(0L, (r, e) -> r + e, Long::sum));
+
+        // drop the zeros, double the rest
+        array.replaceAll(e -> e == 0 ? null : e * 2);
+        sparse.replaceAll(e -> e == 0 ? null : e * 2);
+        assertEquals(sparse.getEffectiveCount(), array.getEffectiveCount());
+        assertEquals(2 * expected, (long) array.reduce(0L, (r, e) -> r + e, Long::sum));
+        assertEquals(2 * expected, (long) sparse.reduce(0L, (r, e) -> r + e, Long::sum));
+        assertNull(sparse.get(0));
+        assertEquals(Integer.valueOf(14), sparse.get(7));
+
+        sparse.mapInto(doubles, e -> e / 2.0);
+        assertEquals(expected, doubles.reduce(0.0, (r, e) -> r + e, Double::sum), 0.0);
+        ArrayMatrix<String> strings = new ArrayMatrix<>(bound, 2);
+        array.mapInto(strings, String::valueOf);
+        assertEquals(array.getEffectiveCount(), strings.getEffectiveCount());
+        assertEquals("14", strings.get(7));
+
+        doubles.replaceAllDouble(v -> v + 1);
+        assertEquals(1.0, doubles.getDouble(1), 0.0);
+        doubles.fill(3.0);
+        assertEquals(3.0 * doubles.getCount(), doubles.reduce(0.0, (r, e) -> r + e, Double::sum), 0.0);
+
+        array.fill(1);
+        assertEquals(array.getCount(), array.getEffectiveCount());
+        array.fill(null);
+        assertTrue(array.isEmpty());
+
+        BitMatrix bits = new BitMatrix(bound, 2);
+        bits.set(0, 5, 5, true);
+        bits.replaceAll(b -> !b);
+        assertEquals(bits.getCount() - 1, bits.getTrueElementsCount());
+        assertEquals(bits.getCount() - 1, (int) bits.reduce(0, (r, e) -> e ? r + 1 : r, Integer::sum));
+        bits.fill(false);
+        assertEquals(0, bits.getTrueElementsCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mapIntoShapeMismatch() {
+        arrayMatrix.mapInto(new ArrayMatrix<String>(new Bound(0.0, 0.0, 2, 2, 1)), e -> e);
+    }
+
+    @Test
+    public void bulkOperationsOnSmallFloors() {
+        // below the block size, the blocks must still stop at the end of each floor
+        ArrayMatrix<Integer> array = new ArrayMatrix<>(new Bound(0.0, 0.0, 5, 6, 1), 2);
+        array.fill(1);
+        assertEquals(60, array.getEffectiveCount());
+        assertEquals(Integer.valueOf(1), array.get(1, 4, 5));
+        array.replaceAll(e -> e + 1);
+        assertEquals(120, (int) array.reduce(0, (r, e) -> r + e, Integer::sum));
+        ArrayMatrix<String> strings = new ArrayMatrix<>(array.getBound(), 2);
+        array.mapInto(strings, String::valueOf);
+        assertEquals("2", strings.get(1, 4, 5));
+        assertEquals(60, strings.getEffectiveCount());
+    }
+
     private void setDiagonalMatrix(Matrix<String> matrix) {
         System.out.println("diagonal matrix");
         int n = Math.min(matrix.getRowCount(), matrix.getColumnCount());
@@ -393,4 +533,33 @@ public class MatrixTest {
         assertEquals(filterList, parallelFilterList);
         assertEquals(filterList, foreachFilterList);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void views() {
+        // rows 3 and 4, columns 1 to 5, the window being clipped to the matrix
+        Matrix<String> view = arrayMatrix.view(new Bound(1.0, -3.0, 4, 8, 1));
+        assertEquals(2, view.getRowCount());
+        assertEquals(5, view.getColumnCount());
+        assertEquals(1.0, view.getTopLeftX(), 0.0);
+        assertEquals(-3.0, view.getTopLeftY(), 0.0);
+        assertEquals("r4_c1", view.get(1, 0));
+        assertEquals("r3_c5", view.get(0, 4));
+        assertEquals(2, view.getEffectiveCount());
+        assertEquals(2, view.stream().count());
+
+        Matrix<String> cell = view.view(new Bound(5.0, -3.0, 1, 1, 1));
+        assertEquals(1, cell.getCount());
+        assertEquals("r3_c5", cell.get(0));
+        cell.set(0, "changed");
+        assertEquals("changed", arrayMatrix.get(3, 5));
+        assertNull(sparseMatrix.view(new Bound(10.0, 0.0, 2, 2, 1)));
+
+        Matrix<String> floor = sparseMatrix.getFloorMatrix(0);
+        assertEquals(3, floor.getEffectiveCount());
+        floor.set(2, 2, "r2_c2");
+        assertEquals("r2_c2", sparseMatrix.get(2, 2));
+        view.clear();
+        assertEquals(1, arrayMatrix.getEffectiveCount());
+        assertEquals(Boolean.TRUE, bitMatrix.getFloorMatrix(0).get(3, 5));
+    }
+}
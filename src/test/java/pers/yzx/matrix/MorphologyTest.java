@@ -0,0 +1,106 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MorphologyTest {
+
+    @Test
+    public void againstBruteForce() {
+        Random random = new Random(11);
+        // more than one word per row and a partial last word
+        BitMatrix matrix = new BitMatrix(new Bound(0.0, 0.0, 70, 150, 1), 2);
+        for (int f = 0; f < matrix.getFloorCount(); f++) {
+            for (int i = 0; i < matrix.getRowCount(); i++) {
+                for (int j = 0; j < matrix.getColumnCount(); j++) {
+                    matrix.set(f, i, j, random.nextInt(5) == 0);
+                }
+            }
+        }
+        // sparse seeds and wide blobs for the distance transform
+        BitMatrix blobs = new BitMatrix(new Bound(0.0, 0.0, 90, 130, 1));
+        for (int i = 20; i < 75; i++) {
+            for (int j = 30; j < 110; j++) {
+                blobs.set(i, j, true);
+            }
+        }
+        blobs.set(5, 5, true);
+        blobs.set(40, 60, false);
+
+        for (Morphology.Element element : Morphology.Element.values()) {
+            for (int radius : new int[]{0, 1, 3, 6}) {
+                check(matrix, element, radius);
+            }
+        }
+        check(blobs, Morphology.Element.DISK, Morphology.DISK_TRANSFORM_RADIUS);
+        check(blobs, Morphology.Element.DISK, 30);
+    }
+
+    @Test
+    public void openAndClose() {
+        BitMatrix matrix = new BitMatrix(new Bound(0.0, 0.0, 20, 20, 1));
+        for (int i = 5; i < 15; i++) {
+            for (int j = 5; j < 15; j++) {
+                matrix.set(i, j, true);
+            }
+        }
+        matrix.set(10, 10, false);
+        matrix.set(1, 1, true);
+        BitMatrix closed = Morphology.close(matrix, Morphology.Element.SQUARE, 1);
+        assertTrue(closed.get(10, 10));
+        assertTrue(closed.get(1, 1));
+        BitMatrix opened = Morphology.open(closed, Morphology.Element.SQUARE, 1);
+        assertFalse(opened.get(1, 1));
+        assertEquals(100, opened.getTrueElementsCount());
+    }
+
+    private static void check(BitMatrix matrix, Morphology.Element element, int radius) {
+        BitMatrix dilated = Morphology.dilate(matrix, element, radius);
+        BitMatrix eroded = Morphology.erode(matrix, element, radius);
+        assertEquals(matrix.getFloorCount(), dilated.getFloorCount());
+        int dilatedCount = 0;
+        int erodedCount = 0;
+        for (int f = 0; f < matrix.getFloorCount(); f++) {
+            for (int i = 0; i < matrix.getRowCount(); i++) {
+                for (int j = 0; j < matrix.getColumnCount(); j++) {
+                    boolean any = false;
+                    boolean all = true;
+                    for (int di = -radius; di <= radius; di++) {
+                        for (int dj = -radius; dj <= radius; dj++) {
+                            if (!contains(element, radius, di, dj)) {
+                                continue;
+                            }
+                            int row = i + di;
+                            int column = j + dj;
+                            boolean value = row >= 0 && row < matrix.getRowCount() && column >= 0 &&
+                                    column < matrix.getColumnCount() && matrix.get(f, row, column);
+                            any |= value;
+                            all &= value;
+                        }
+                    }
+                    String at = element + " " + radius + " at " + f + "," + i + "," + j;
+                    assertEquals("dilate " + at, any, dilated.get(f, i, j));
+                    assertEquals("erode " + at, all, eroded.get(f, i, j));
+                    dilatedCount += any ? 1 : 0;
+                    erodedCount += all ? 1 : 0;
+                }
+            }
+        }
+        assertEquals(dilatedCount, dilated.getTrueElementsCount());
+        assertEquals(erodedCount, eroded.getTrueElementsCount());
+    }
+
+    private static boolean contains(Morphology.Element element, int radius, int di, int dj) {
+        switch (element) {
+            case SQUARE:
+                return true;
+            case CROSS:
+                return di == 0 || dj == 0;
+            default:
+                return di * di + dj * dj <= radius * radius;
+        }
+    }
+}
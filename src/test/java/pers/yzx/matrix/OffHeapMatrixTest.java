@@ -0,0 +1,44 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OffHeapMatrixTest {
+
+    @Test
+    public void getAndSet() {
+        try (OffHeapMatrix<Double> matrix = OffHeapMatrix.ofDouble(new Bound(0.0, 0.0, 5, 6, 1), 2)) {
+            assertEquals(60, matrix.getCount());
+            assertEquals(480, matrix.getByteSize());
+            matrix.setDouble(1, 4, 5, 3.5);
+            assertEquals(3.5, matrix.getDouble(59), 0.0);
+            matrix.set(0, 2, 1, 1.25);
+            assertEquals(Double.valueOf(1.25), matrix.get(matrix.getFlatIndex(0, 2, 1)));
+            assertEquals(0.0, matrix.getDouble(0, 0), 0.0);
+        }
+    }
+
+    @Test
+    public void chunks() {
+        Bound bound = new Bound(0.0, 0.0, 7, 9, 1);
+        OffHeapMatrix<Integer> matrix = new OffHeapMatrix<>(bound, 3, CellType.INT, 5);
+        assertEquals(24, matrix.chunks.length);
+        for (int i = 0; i < matrix.getCount(); i++) {
+            matrix.set(i, i * 3);
+        }
+        for (int i = 0; i < matrix.getCount(); i++) {
+            assertEquals(i * 3, matrix.getDouble(i), 0.0);
+        }
+        matrix.close();
+        assertEquals(0, matrix.getCount());
+        assertTrue(matrix.isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void closed() {
+        OffHeapMatrix<Float> matrix = OffHeapMatrix.ofFloat(new Bound(0.0, 0.0, 2, 2, 1), 1);
+        matrix.close();
+        matrix.getDouble(0);
+    }
+}
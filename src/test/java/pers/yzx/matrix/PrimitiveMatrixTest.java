@@ -0,0 +1,79 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveMatrixTest {
+
+    @Test
+    public void doubleMatrix() {
+        DoubleMatrix matrix = new DoubleMatrix(new Bound(0.0, 0.0, 5, 6, 1), 2);
+        assertEquals(60, matrix.getCount());
+        assertEquals(60, matrix.getEffectiveCount());
+        matrix.setDouble(1, 3, 4, 2.5);
+        assertEquals(2.5, matrix.getDouble(1, 3, 4), 0.0);
+        assertEquals(2.5, matrix.getDouble(matrix.getFlatIndex(1, 3, 4)), 0.0);
+        assertEquals(Double.valueOf(2.5), matrix.get(1, 3, 4));
+        assertEquals(0.0, matrix.getDouble(3, 4), 0.0);
+
+        matrix.set(0, 0, 0, 7.0);
+        assertEquals(7.0, matrix.getDouble(0), 0.0);
+        matrix.set(0, 0, 0, null);
+        assertEquals(0.0, matrix.getDouble(0), 0.0);
+    }
+
+    @Test
+    public void intMatrix() {
+        IntMatrix matrix = new IntMatrix(new Bound(0.0, 0.0, 3, 4, 1), 1, -1);
+        assertEquals(-1, matrix.getInt(2, 3));
+        matrix.setInt(2, 3, 42);
+        assertEquals(Integer.valueOf(42), matrix.get(11));
+        matrix.setDouble(0, 1.9);
+        assertEquals(1, matrix.getInt(0));
+        assertEquals(1.0, matrix.getDouble(0, 0), 0.0);
+    }
+
+    @Test
+    public void floatAndShortMatrix() {
+        Bound bound = new Bound(0.0, 0.0, 2, 2, 1);
+        FloatMatrix floatMatrix = new FloatMatrix(bound);
+        floatMatrix.setFloat(1, 1, 0.5f);
+        assertEquals(0.5f, floatMatrix.getFloat(3), 0.0f);
+
+        ShortMatrix shortMatrix = new ShortMatrix(bound);
+        shortMatrix.setShort(1, 0, (short) 300);
+        assertEquals(300, shortMatrix.getShort(2));
+        assertEquals(Short.valueOf((short) 300), shortMatrix.get(1, 0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rangeCheck() {
+        new DoubleMatrix(new Bound(0.0, 0.0, 2, 2, 1)).getDouble(0, 2);
+    }
+
+    @Test
+    public void iterator() {
+        IntMatrix matrix = new IntMatrix(new Bound(0.0, 0.0, 3, 4, 1));
+        matrix.setInt(1, 2, 5);
+        int num = 0;
+        int sum = 0;
+        Iterator<Matrix.Cursor<Index, Integer>> iterator = matrix.iterator();
+        while (iterator.hasNext()) {
+            sum += iterator.next().getElement();
+            num++;
+        }
+        assertEquals(matrix.getEffectiveCount(), num);
+        assertEquals(5, sum);
+    }
+
+    @Test
+    public void clear() {
+        DoubleMatrix matrix = new DoubleMatrix(new Bound(0.0, 0.0, 3, 4, 1));
+        matrix.clear();
+        assertEquals(0, matrix.getCount());
+        assertTrue(matrix.isEmpty());
+    }
+}
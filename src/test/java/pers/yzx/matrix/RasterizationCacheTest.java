@@ -0,0 +1,158 @@
+package pers.yzx.matrix;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pers.yzx.geometry.Point;
+import pers.yzx.geometry.Polygon;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class RasterizationCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hitsAndEvictions() {
+        Polygon polygon = triangle(0);
+        BitMatrix expected = BitMatrixFactory.createByScanLine(polygon, 1);
+        RasterizationCache cache = new RasterizationCache(1 << 20);
+        BitMatrix first = cache.get(polygon, 1);
+        assertSameCells(expected, first, "first");
+        // equal vertices in another polygon hit the same entry, and the result is a copy
+        first.fill(false);
+        assertSameCells(expected, cache.get(triangle(0), 1), "copy");
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        cache.get(polygon, 2);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+
+        // room for a single entry
+        long entrySize = cache.getByteSize() / 2;
+        RasterizationCache small = new RasterizationCache(entrySize + entrySize / 2, true, null);
+        small.get(triangle(0), 1);
+        small.get(triangle(100), 1);
+        assertEquals(1, small.size());
+        assertEquals(1, small.getEvictionCount());
+        assertSameCells(BitMatrixFactory.createByScanLine(triangle(100), 1), small.get(triangle(100), 1),
+                "compressed");
+        assertEquals(1, small.getHitCount());
+    }
+
+    @Test
+    public void singleFlight() throws Exception {
+        RasterizationCache cache = new RasterizationCache(1 << 24);
+        List<Point> points = new ArrayList<>();
+        for (int v = 0; v < 20000; v++) {
+            double angle = 2 * Math.PI * v / 20000;
+            points.add(new Point(500 + 400 * Math.cos(angle), 500 + 400 * Math.sin(angle)));
+        }
+        Polygon polygon = new Polygon(points);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<BitMatrix>> tasks = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                tasks.add(() -> cache.get(polygon, 1));
+            }
+            int count = -1;
+            for (Future<BitMatrix> future : executor.invokeAll(tasks)) {
+                int trueCount = future.get().getTrueElementsCount();
+                assertTrue(count < 0 || count == trueCount);
+                count = trueCount;
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(15, cache.getHitCount());
+    }
+
+    @Test
+    public void spill() throws IOException {
+        Path directory = folder.newFolder("rasters").toPath();
+        Polygon polygon = triangle(0);
+        new RasterizationCache(1 << 20, false, directory).get(polygon, 1);
+
+        RasterizationCache restarted = new RasterizationCache(1 << 20, false, directory);
+        assertSameCells(BitMatrixFactory.createByScanLine(polygon, 1), restarted.get(polygon, 1), "restarted");
+        assertEquals(1, restarted.getMissCount());
+        assertEquals(1, restarted.getDiskHitCount());
+    }
+
+    @Test
+    public void unreadableSpill() throws IOException {
+        Path directory = folder.newFolder("rasters").toPath();
+        Polygon polygon = triangle(0);
+        new RasterizationCache(1 << 20, false, directory).get(polygon, 1);
+        Path path = spillFiles(directory).get(0);
+        // cut short, as by a crash while writing it
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(MatrixFile.HEADER_SIZE + 8);
+        }
+
+        RasterizationCache restarted = new RasterizationCache(1 << 20, false, directory);
+        assertSameCells(BitMatrixFactory.createByScanLine(polygon, 1), restarted.get(polygon, 1), "truncated");
+        assertEquals(0, restarted.getDiskHitCount());
+        // written again
+        RasterizationCache again = new RasterizationCache(1 << 20, false, directory);
+        again.get(polygon, 1);
+        assertEquals(1, again.getDiskHitCount());
+        assertEquals(1, spillFiles(directory).size());
+    }
+
+    @Test
+    public void spillOfOtherVertices() throws IOException {
+        Path directory = folder.newFolder("rasters").toPath();
+        // a triangle and a square over the same bound
+        Polygon polygon = triangle(0);
+        Polygon other = new Polygon(Arrays.asList(new Point(0, 0), new Point(60, 0), new Point(60, 60),
+                new Point(0, 60)));
+        new RasterizationCache(1 << 20, false, directory).get(polygon, 1);
+        Path path = spillFiles(directory).get(0);
+        new RasterizationCache(1 << 20, false, directory).get(other, 1);
+        List<Path> paths = spillFiles(directory);
+        paths.remove(path);
+        // as if the square had the hash of the triangle
+        Files.copy(paths.get(0), path, StandardCopyOption.REPLACE_EXISTING);
+
+        RasterizationCache restarted = new RasterizationCache(1 << 20, false, directory);
+        assertSameCells(BitMatrixFactory.createByScanLine(polygon, 1), restarted.get(polygon, 1), "collision");
+        assertEquals(0, restarted.getDiskHitCount());
+    }
+
+    private static List<Path> spillFiles(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(paths::add);
+        }
+        return paths;
+    }
+
+    private static Polygon triangle(double offset) {
+        return new Polygon(Arrays.asList(new Point(offset, 0), new Point(offset + 60, 0), new Point(offset, 60)));
+    }
+
+    private static void assertSameCells(BitMatrix expected, BitMatrix actual, String message) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getTrueElementsCount(), actual.getTrueElementsCount());
+        for (int k = 0; k < expected.getCount(); k++) {
+            assertEquals(message, expected.get(k), actual.get(k));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package pers.yzx.matrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResamplerTest {
+
+    @Test
+    public void downsample() {
+        Matrix<Integer> source = new ArrayMatrix<>(new Bound(0.0, 0.0, 4, 4, 1), 2);
+        for (int k = 0; k < 16; k++) {
+            source.set(1, k / 4, k % 4, k);
+        }
+        source.set(1, 3, 3, null);
+        Bound target = new Bound(0.0, 0.0, 2, 2, 2);
+        int[] floors = {1};
+
+        assertEquals(2.5, Resampler.resampleDouble(source, target, floors, Resampler.Method.MEAN).getDouble(0, 0), 0.0);
+        assertEquals(10.0, Resampler.resampleDouble(source, target, floors, Resampler.Method.SUM).getDouble(0, 0), 0.0);
+        assertEquals(8.0, Resampler.resampleDouble(source, target, floors, Resampler.Method.MIN).getDouble(1, 0), 0.0);
+        assertEquals(14.0, Resampler.resampleDouble(source, target, floors, Resampler.Method.MAX).getDouble(1, 1), 0.0);
+
+        ArrayMatrix<Integer> nearest = Resampler.resample(source, target, floors, Resampler.Method.NEAREST);
+        assertEquals(1, nearest.getFloorCount());
+        assertEquals(Integer.valueOf(5), nearest.get(0, 0));
+        assertEquals(3, nearest.getEffectiveCount());
+        assertNull(nearest.get(1, 1));
+
+        // the target overhangs the source on the right
+        DoubleMatrix shifted = Resampler.resampleDouble(source, new Bound(3.0, 0.0, 1, 2, 2), floors,
+                Resampler.Method.SUM);
+        assertEquals(3.0 + 7.0, shifted.getDouble(0, 0), 0.0);
+        assertTrue(Double.isNaN(shifted.getDouble(0, 1)));
+    }
+
+    @Test
+    public void mode() {
+        Matrix<String> source = new SparseMatrix<>(new Bound(0.0, 0.0, 3, 3, 1));
+        source.set(0, 0, "forest");
+        source.set(0, 1, "water");
+        source.set(1, 0, "water");
+        source.set(2, 2, "urban");
+        Matrix<String> target = Resampler.resample(source, new Bound(0.0, 0.0, 1, 1, 3), null, Resampler.Method.MODE);
+        assertEquals("water", target.get(0, 0));
+    }
+
+    @Test
+    public void modeTie() {
+        // forest and water both cover two cells, forest being met first in row-major order
+        Matrix<String> source = new SparseMatrix<>(new Bound(0.0, 0.0, 2, 2, 1));
+        source.set(0, 0, "forest");
+        source.set(0, 1, "water");
+        source.set(1, 0, "water");
+        source.set(1, 1, "forest");
+        Matrix<String> target = Resampler.resample(source, new Bound(0.0, 0.0, 1, 1, 2), null, Resampler.Method.MODE);
+        assertEquals("forest", target.get(0, 0));
+    }
+
+    @Test
+    public void upsample() {
+        Matrix<Double> source = new ArrayMatrix<>(new Bound(0.0, 0.0, 2, 2, 2));
+        source.set(0, 0, 0.0);
+        source.set(0, 1, 2.0);
+        source.set(1, 0, 4.0);
+        source.set(1, 1, 6.0);
+        Bound target = new Bound(0.0, 0.0, 4, 4, 1);
+        DoubleMatrix bilinear = Resampler.resampleDouble(source, target, null, Resampler.Method.BILINEAR);
+        assertEquals(0.0, bilinear.getDouble(0, 0), 1e-12);
+        assertEquals(1.5, bilinear.getDouble(1, 1), 1e-12);
+        assertEquals(6.0, bilinear.getDouble(3, 3), 1e-12);
+        DoubleMatrix mean = Resampler.resampleDouble(source, target, null, Resampler.Method.MEAN);
+        assertEquals(2.0, mean.getDouble(1, 2), 0.0);
+    }
+
+    @Test
+    public void indexAcrossMatrices() {
+        Matrix<String> coarse = new SparseMatrix<>(new Bound(0.0, 0.0, 5, 6, 2));
+        Matrix<String> fine = new SparseMatrix<>(new Bound(0.0, 0.0, 10, 12, 1));
+        Index index = coarse.getIndex(fine, new Index(7, 2));
+        assertEquals(3, index.getRowIndex());
+        assertEquals(1, index.getColumnIndex());
+    }
+}
@@ -2,8 +2,13 @@ package pers.yzx.matrix;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
 
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.*;
@@ -29,4 +34,54 @@ public class SparseMatrixTest {
         System.out.println("stream sorted takes " + (endTime - startTime));
         assertEquals(matrix.getCount(), sortedList.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void parallelSpliterator() {
+        Bound bound = new Bound(0.0, 0.0, 100, 80, 1);
+        SparseMatrix<Integer> matrix = new SparseMatrix<>(bound, 3);
+        Random random = new Random(7);
+        long expectedSum = 0;
+        for (int f = 0; f < matrix.getFloorCount(); f++) {
+            matrix.set(f, 0, 0, f + 1);
+            expectedSum += f + 1;
+            for (int k = 0; k < 500; k++) {
+                int i = random.nextInt(matrix.getRowCount());
+                int j = 1 + random.nextInt(matrix.getColumnCount() - 1);
+                Integer old = matrix.get(f, i, j);
+                int value = random.nextInt(1000);
+                matrix.set(f, i, j, value);
+                expectedSum += value - (old == null ? 0 : old);
+            }
+        }
+
+        Spliterator<Matrix.Cursor<Index, Integer>> spliterator = matrix.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(matrix.getEffectiveCount(), spliterator.estimateSize());
+
+        long sum = matrix.parallelStream().mapToLong(Matrix.Cursor::getElement).sum();
+        assertEquals(expectedSum, sum);
+        assertEquals(matrix.getEffectiveCount(), matrix.parallelStream().count());
+        matrix.parallelStream().forEach(cursor -> assertEquals(matrix.get(cursor.getIndex()), cursor.getElement()));
+
+        // split all the way down and make sure every cell is visited exactly once
+        List<Spliterator<Matrix.Cursor<Index, Integer>>> parts = new ArrayList<>();
+        parts.add(matrix.spliterator());
+        for (int round = 0; round < 6; round++) {
+            List<Spliterator<Matrix.Cursor<Index, Integer>>> next = new ArrayList<>();
+            for (Spliterator<Matrix.Cursor<Index, Integer>> part : parts) {
+                Spliterator<Matrix.Cursor<Index, Integer>> prefix = part.trySplit();
+                if (prefix != null) {
+                    next.add(prefix);
+                }
+                next.add(part);
+            }
+            parts = next;
+        }
+        Set<Integer> keys = new HashSet<>();
+        for (Spliterator<Matrix.Cursor<Index, Integer>> part : parts) {
+            part.tryAdvance(cursor -> assertTrue(keys.add(matrix.getFlatIndex(cursor.getIndex()))));
+            part.forEachRemaining(cursor -> assertTrue(keys.add(matrix.getFlatIndex(cursor.getIndex()))));
+        }
+        assertEquals(matrix.getEffectiveCount(), keys.size());
+    }
+}
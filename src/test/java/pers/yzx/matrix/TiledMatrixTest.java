@@ -0,0 +1,60 @@
+package pers.yzx.matrix;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TiledMatrixTest {
+
+    @Test
+    public void lazyTiles() {
+        Bound bound = new Bound(0.0, 0.0, 50, 70, 1);
+        TiledMatrix<Integer> matrix = new TiledMatrix<>(bound, 2, 16);
+        assertEquals(4, matrix.getTileRowCount());
+        assertEquals(5, matrix.getTileColumnCount());
+        assertEquals(0, matrix.getAllocatedTileCount());
+
+        matrix.set(0, 0, 0, 1);
+        matrix.set(0, 15, 15, 2);
+        matrix.set(1, 49, 69, 3);
+        matrix.set(1, 20, 33, null);
+        assertEquals(2, matrix.getAllocatedTileCount());
+        assertEquals(2, matrix.getTileOccupancy(0, 0, 0));
+        assertEquals(1, matrix.getTileOccupancy(1, 3, 4));
+        assertEquals(3, matrix.getEffectiveCount());
+        assertEquals(Integer.valueOf(3), matrix.get(matrix.getFlatIndex(1, 49, 69)));
+        assertNull(matrix.get(1, 48, 69));
+
+        Set<Integer> keys = new HashSet<>();
+        for (IntIterator iterator = matrix.keyIterator(); iterator.hasNext(); ) {
+            keys.add(matrix.get(iterator.nextInt()));
+        }
+        assertEquals(3, keys.size());
+        assertEquals(3, matrix.stream().count());
+        assertEquals(6, (int) matrix.reduce(0, (sum, e) -> sum + e, Integer::sum));
+
+        matrix.set(0, 0, 0, null);
+        matrix.replaceAll(e -> e == 2 ? null : e);
+        assertEquals(1, matrix.getAllocatedTileCount());
+        assertEquals(0, matrix.getTileOccupancy(0, 0, 0));
+        assertEquals(1, matrix.getEffectiveCount());
+
+        matrix.fill(7);
+        assertEquals(matrix.getCount(), matrix.getEffectiveCount());
+        assertEquals(16 * 6, matrix.getTileOccupancy(0, 0, 4));
+        assertEquals(2 * 6, matrix.getTileOccupancy(0, 3, 4));
+        assertEquals(matrix.getCount(), matrix.parallelStream().filter(cursor -> cursor.getElement() == 7).count());
+        Matrix<Integer> copy = new ArrayMatrix<>(bound, 2);
+        matrix.mapInto(copy, e -> e + 1);
+        assertEquals(Integer.valueOf(8), copy.get(1, 49, 69));
+        assertEquals(copy.getCount(), copy.getEffectiveCount());
+
+        matrix.fill(null);
+        assertTrue(matrix.isEmpty());
+        assertEquals(0, matrix.getAllocatedTileCount());
+    }
+}